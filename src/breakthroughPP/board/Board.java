@@ -8,6 +8,12 @@ import java.util.*;
  * Board provides parameters for
  * an initial gaming board.
  * <p>
+ * The representation of the tokens (tokens, tokenCount, goalCount, moveTargets, dirtyWords and
+ * moveSets) belongs to this class only. A {@link SmallBoard} keeps its tokens in a layout of its
+ * own and leaves these fields null, so it overrides every public or protected method which
+ * reads or writes them. The private helpers which use them assert that they exist, see
+ * {@link #hasBitboards()}; a method added here which uses them has to be overridden there too.
+ * <p>
  * Georg-August University Goettingen
  * APP breakthroughPP
  * SoSe 2016
@@ -23,9 +29,81 @@ public class Board implements Setting, Viewable {
     private Status status;
 
     /**
-     * The board data itself
+     * The board data itself: one bitboard per player color (index RED and BLUE). Every number
+     * (row) of the board occupies ROW_STRIDE bits, so two numbers share one long. The letters
+     * beyond the board width are padding bits which are never set, so that shifting by a whole
+     * row plus or minus one letter never wraps a token into a neighbouring row.
+     */
+    private long[][] tokens;
+
+    /**
+     * Number of longs per bitboard
+     */
+    private int words;
+
+    /**
+     * Precomputed tables of this board size
+     */
+    private Geometry geometry;
+
+    /**
+     * Bits of all fields which are on the board
+     */
+    private long[] boardMask;
+
+    /**
+     * Bits of the opponent's home row each color has to reach (index RED and BLUE)
+     */
+    private long[][] goalMask;
+
+    /**
+     * Number of tokens of each color (index RED and BLUE), kept up to date on every change of the
+     * bitboards
+     */
+    private int[] tokenCount;
+
+    /**
+     * Number of tokens of each color (index RED and BLUE) on the opponent's home row, kept up to
+     * date on every change of the bitboards
+     */
+    private int[] goalCount;
+
+    /**
+     * Cache of the target fields of the valid moves of each color, indexed by
+     * [color][direction][long]. Direction 0 is the diagonal move to the lower letter, 1 the
+     * straight move and 2 the diagonal move to the higher letter. Only the longs marked in
+     * dirtyWords are outdated.
+     */
+    private long[][][] moveTargets;
+
+    /**
+     * Longs of moveTargets which have to be recalculated for each color, one bit per long. A
+     * change of a field only affects its own long and the neighbouring ones.
      */
-    private int[][] fields;
+    private int[] dirtyWords;
+
+    /**
+     * Version of the valid moves of each color, counted up whenever they change
+     */
+    private long[] movesVersion = new long[2];
+
+    /**
+     * Read-only views of the valid moves handed out for each color, null if outdated
+     */
+    private ValidMoveSet[] moveSets;
+
+    /**
+     * If set, every move cross-checks the counters, the status and the Zobrist key against a full
+     * scan of the bitboards. Enabled by default if assertions are enabled (java -ea).
+     */
+    private boolean verifyStatus = Board.class.desiredAssertionStatus();
+
+    /**
+     * Bits reserved for one number (row) of the board in the bitboards, at least the maximal
+     * number of letters plus one padding letter. The bit of a field equals the square index of
+     * its position (see {@link breakthroughPP.preset.Position#getSquare()}).
+     */
+    public static final int ROW_STRIDE = Position.SQUARES_PER_NUMBER;
 
     /**
      * The height of the board
@@ -40,7 +118,7 @@ public class Board implements Setting, Viewable {
     /**
      * Whose turn is it currently
      */
-    private int whosTurn;
+    protected int whosTurn;
 
     /**
      * Accessor implementing the Viewer pattern for view access to the board
@@ -48,9 +126,48 @@ public class Board implements Setting, Viewable {
     private BoardStorage boardStorage;
 
     /**
-     * store the last change on the board
+     * store the last change on the board, packed by {@link breakthroughPP.preset.Move#encode(Move)},
+     * NO_MOVE if there is none
+     */
+    protected int lastChange;
+
+    /**
+     * Packed value of a missing move
+     */
+    public static final int NO_MOVE = -1;
+
+    /**
+     * Zobrist key of the current position, see {@link #getHashKey()}
+     */
+    protected long hashKey;
+
+    /**
+     * Random keys of the Zobrist hashing for every color (index RED and BLUE) and square. The
+     * seed is fixed, so the keys of a position are the same in every run of the program.
      */
-    private Move lastChange;
+    protected static final long[][] ZOBRIST_SQUARES = new long[2][26 * ROW_STRIDE];
+
+    /**
+     * Random key of the Zobrist hashing which is added if it is BLUE's turn
+     */
+    protected static final long ZOBRIST_BLUE_TURN;
+
+    static {
+        Random random = new Random(0x42726561L);
+        for (long[] keys : ZOBRIST_SQUARES) {
+            for (int square = 0; square < keys.length; square++) {
+                keys[square] = random.nextLong();
+            }
+        }
+        ZOBRIST_BLUE_TURN = random.nextLong();
+    }
+
+    // Bit layout of an undo record returned by makeMove
+    protected static final long UNDO_MOVE_MASK = (1L << 20) - 1;
+    protected static final int UNDO_CAPTURED = 20;
+    protected static final int UNDO_STATUS = 22;
+    protected static final int UNDO_TURN = 25;
+    protected static final int UNDO_LAST_CHANGE = 26;
 
     // ==== Constructor ====================================================================================
     /**
@@ -76,7 +193,7 @@ public class Board implements Setting, Viewable {
         status = new Status(OK);
         whosTurn = RED;
         boardStorage = new BoardStorage(this);
-        lastChange = null;
+        lastChange = NO_MOVE;
 
         if (newnumbers > 5 && newnumbers < 27 && newletters > 1 && newletters < 27) {
             numbers = newnumbers;
@@ -85,6 +202,7 @@ public class Board implements Setting, Viewable {
             throw new PresetException("Field dimensions out of range!");
         }
 
+        initializeMasks();
         initializeFields();
     }
 
@@ -96,7 +214,7 @@ public class Board implements Setting, Viewable {
         status = new Status(newboard.getStatus());
         whosTurn = newboard.whosTurn;
         boardStorage = new BoardStorage(this);
-        lastChange = null;
+        lastChange = NO_MOVE;
 
         if (newboard.getNumbers() > 5 && newboard.getNumbers() < 27 && newboard.getLetters() > 1 && newboard.getLetters() < 27) {
             numbers = newboard.getNumbers();
@@ -105,16 +223,56 @@ public class Board implements Setting, Viewable {
             throw new PresetException("Field dimensions out of range!");
         }
 
-        fields = new int[numbers][letters];
-
-        for (int i = 0; i < newboard.fields.length; i++) {
-            for (int j = 0; j < newboard.fields[i].length; j++) {
-                fields[i][j] = newboard.getColor(i, j);
-
+        initializeMasks();
+        if (newboard instanceof SmallBoard) {
+            // A small board keeps its tokens in a layout of its own
+            tokens = new long[2][words];
+            for (int num = 0; num < numbers; num++) {
+                for (int let = 0; let < letters; let++) {
+                    int color = newboard.getColor(num, let);
+                    if (color != NONE) {
+                        int square = num * ROW_STRIDE + let;
+                        tokens[color][square >>> 6] |= 1L << square;
+                    }
+                }
             }
+            tokenCount = new int[2];
+            goalCount = new int[2];
+            countTokens(tokenCount, goalCount);
+        } else {
+            tokens = new long[][]{newboard.tokens[RED].clone(), newboard.tokens[BLUE].clone()};
+            tokenCount = newboard.tokenCount.clone();
+            goalCount = newboard.goalCount.clone();
+        }
+        hashKey = newboard.hashKey;
+        resetMoveCache();
+        verifyStatus = newboard.verifyStatus;
+    }
 
+    /**
+     * Creates a board and its initial status and tokens. If all fields fit into one long, a
+     * {@link SmallBoard} is created, which behaves identically but is faster.
+     *
+     * @param letters number of columns
+     * @param numbers number of rows
+     * @return the new board
+     * @throws PresetException if the parameters are out of the range of {@link #Board(int, int)}
+     */
+    public static Board create(int letters, int numbers) throws PresetException {
+        if (letters * numbers <= Long.SIZE) {
+            return new SmallBoard(letters, numbers);
         }
+        return new Board(letters, numbers);
+    }
 
+    /**
+     * Copies this board like the copy constructor, keeping the class of the board.
+     *
+     * @return a copy of this board
+     * @throws PresetException if the copy constructor throws one
+     */
+    public Board copy() throws PresetException {
+        return new Board(this);
     }
 
     // ==== Getter ====================================================================================
@@ -128,17 +286,47 @@ public class Board implements Setting, Viewable {
     }
 
     public Move getLastChange() {
-        return lastChange;
+        if (lastChange == NO_MOVE) {
+            return null;
+        }
+        try {
+            return Move.decode(lastChange);
+        } catch (PresetException pe) {
+            // Only moves on the board are stored
+            return null;
+        }
     }
 
     public int getTurn() {
         return whosTurn;
     }
 
+    /**
+     * @return the precomputed successor and attacker tables of this board size
+     */
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
     public Status getStatus() {
         return status;
     }
 
+    /**
+     * Returns the 64 bit Zobrist key of the position: the tokens on the board and whose turn it
+     * is. Equal positions have equal keys, on boards of the same size also across copies and runs
+     * of the program. It is updated in constant time on every change of the board.
+     *
+     * @return the Zobrist key of the current position
+     */
+    public long getHashKey() {
+        return hashKey;
+    }
+
+    public boolean isVerifyStatus() {
+        return verifyStatus;
+    }
+
     /**
      * Returns the color of the specified field. It will not be checked of num and let are on the
      * board.
@@ -148,13 +336,188 @@ public class Board implements Setting, Viewable {
      * @return the color of the field defined by (let,num)
      */
     public int getColor(int num, int let) {
-        return fields[num][let];
+        return getColor(num * ROW_STRIDE + let);
     }
 
+    /**
+     * Returns the color of the field with a square index. It will not be checked if the square is
+     * on the board.
+     *
+     * @param square the square index of the field (see {@link breakthroughPP.preset.Position#getSquare()})
+     * @return the color of the field
+     */
+    public int getColor(int square) {
+        long bit = 1L << square;
+        if ((tokens[RED][square >>> 6] & bit) != 0) return RED;
+        if ((tokens[BLUE][square >>> 6] & bit) != 0) return BLUE;
+        return NONE;
+    }
+
+    /**
+     * Returns the colors of all fields. The array is produced from the bitboards on every call,
+     * changing it does not change the board.
+     *
+     * @return array of colors indexed by [number][letter]
+     */
     public int[][] getFields() {
+        int[][] fields = new int[numbers][letters];
+        for (int num = 0; num < numbers; num++) {
+            for (int let = 0; let < letters; let++) {
+                fields[num][let] = getColor(num, let);
+            }
+        }
         return fields;
     }
 
+    /**
+     * Counts the tokens of one color on the board
+     *
+     * @param color the color of the tokens (see {@link breakthroughPP.preset.Setting}), NONE counts
+     *              the empty fields
+     * @return the number of tokens of this color
+     */
+    public int getTokenCount(int color) {
+        if (color != RED && color != BLUE) {
+            return letters * numbers - tokenCount[RED] - tokenCount[BLUE];
+        }
+        return tokenCount[color];
+    }
+
+    /**
+     * Returns the letters (columns) in which at least one token of a color is placed
+     *
+     * @param color the color of the tokens (see {@link breakthroughPP.preset.Setting})
+     * @return a mask in which bit l is set if letter l contains a token of this color
+     */
+    public int getOccupiedLetters(int color) {
+        long folded = 0L;
+        for (long word : tokens[color]) {
+            folded |= word;
+        }
+        return (int) (folded | (folded >>> ROW_STRIDE));
+    }
+
+    /**
+     * Returns the number (row) of the token of a color which is nearest to the opponent's home
+     * row. This is the highest number for RED and the lowest number for BLUE.
+     *
+     * @param color the color of the tokens (see {@link breakthroughPP.preset.Setting})
+     * @return the number of the most advanced token or -1 if there are no tokens of this color
+     */
+    public int getFrontNumber(int color) {
+        long[] own = tokens[color];
+        if (color == RED) {
+            for (int i = words - 1; i >= 0; i--) {
+                if (own[i] != 0) return (i * 64 + 63 - Long.numberOfLeadingZeros(own[i])) / ROW_STRIDE;
+            }
+        } else {
+            for (int i = 0; i < words; i++) {
+                if (own[i] != 0) return (i * 64 + Long.numberOfTrailingZeros(own[i])) / ROW_STRIDE;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns how far the tokens of a color have advanced in total: the sum over all tokens of
+     * the numbers (rows) between the token and the own home row.
+     *
+     * @param color the color of the tokens, RED or BLUE
+     * @return the advancement of the tokens, 0 if all tokens are on the home row
+     */
+    public int getAdvancement(int color) {
+        long[] own = tokens[color];
+        int sum = 0;
+        for (int num = 1; num < numbers; num++) {
+            int count = Long.bitCount((own[num >>> 1] >>> ((num & 1) * ROW_STRIDE)) & 0xFFFFFFFFL);
+            sum += count * num;
+        }
+        if (color == BLUE) {
+            sum = getTokenCount(BLUE) * (numbers - 1) - sum;
+        }
+        return sum;
+    }
+
+    /**
+     * Writes the tokens of a color into a bitboard whose fields are numbered densely
+     * (number * letters + letter) as those of a {@link SmallBoard}. Used by {@link Playout}.
+     *
+     * @param color the color of the tokens, RED or BLUE
+     * @param dense the bitboard, at least (letters * numbers + 63) / 64 longs, it is overwritten
+     */
+    void getDenseTokens(int color, long[] dense) {
+        long[] own = tokens[color];
+        long rowMask = (1L << letters) - 1;
+        for (int i = 0; i < dense.length; i++) {
+            dense[i] = 0L;
+        }
+        for (int num = 0; num < numbers; num++) {
+            long row = (own[num >>> 1] >>> ((num & 1) * ROW_STRIDE)) & rowMask;
+            int d = num * letters;
+            dense[d >>> 6] |= row << (d & 63);
+            if ((d & 63) + letters > 64) {
+                dense[(d >>> 6) + 1] |= row >>> (64 - (d & 63));
+            }
+        }
+    }
+
+    /**
+     * Looks for a runner of a color: a token which can not be stopped any more, see {@link
+     * Geometry#isRunner(int, boolean, int, long[], long[])}, and which reaches the opponent's home
+     * row before the opponent can reach the own one. Only the numbers (rows) the opponent needs
+     * longer for are looked at, nearest to the goal first, so this costs little in most positions.
+     * The test is sound but not complete.
+     *
+     * @param color the color of the runner, RED or BLUE
+     * @return the square index of the runner nearest to the goal, -1 if none is found or the game
+     * is over
+     */
+    public int getRunner(int color) {
+        if (!getStatus().isOk()) {
+            return -1;
+        }
+        int opponent = 1 - color;
+        boolean ownTurn = whosTurn == color;
+        int opponentFront = getFrontNumber(opponent);
+        int limit = opponentFront < 0 ? numbers : (opponent == RED ? numbers - 1 - opponentFront : opponentFront);
+        // If the opponent is to move, it wins a race of the same length
+        if (!ownTurn) {
+            limit--;
+        }
+        limit = Math.min(limit, numbers - 1);
+        for (int distance = 1; distance <= limit; distance++) {
+            int num = color == RED ? numbers - 1 - distance : distance;
+            int row = getRowTokens(color, num);
+            while (row != 0) {
+                int square = num * ROW_STRIDE + Integer.numberOfTrailingZeros(row);
+                row &= row - 1;
+                if (isRunner(color, ownTurn, square)) {
+                    return square;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param color the color of the tokens, RED or BLUE
+     * @param num   the number (row)
+     * @return the tokens of a color on a number, bit l set for a token on letter l
+     */
+    protected int getRowTokens(int color, int num) {
+        return (int) (tokens[color][num >>> 1] >>> ((num & 1) * ROW_STRIDE));
+    }
+
+    /**
+     * @param color   the color of the token, RED or BLUE
+     * @param ownTurn whether the player of the token is to move
+     * @param square  the square index of the token
+     * @return whether the token can not be stopped, see {@link #getRunner(int)}
+     */
+    protected boolean isRunner(int color, boolean ownTurn, int square) {
+        return geometry.isRunner(color, ownTurn, square, tokens[color], tokens[1 - color]);
+    }
+
     /**
      * Returns the color of the specified position. It will not be checked if position is on the
      * board.
@@ -177,6 +540,9 @@ public class Board implements Setting, Viewable {
         if (turn != RED && turn != BLUE) {
             throw new PresetException("setTurn can only work on RED and BLUE defined in Setting");
         }
+        if (turn != whosTurn) {
+            hashKey ^= ZOBRIST_BLUE_TURN;
+        }
         whosTurn = turn;
     }
 
@@ -195,6 +561,17 @@ public class Board implements Setting, Viewable {
         }
     }
 
+    /**
+     * Switches the verification mode on or off. In verification mode every move made or taken
+     * back cross-checks the incrementally updated token counters and status against a full scan
+     * of the board and throws an IllegalStateException if they differ.
+     *
+     * @param verify true to verify every move
+     */
+    public void setVerifyStatus(boolean verify) {
+        verifyStatus = verify;
+    }
+
     /**
      * Set the color of the specified field
      *
@@ -205,6 +582,35 @@ public class Board implements Setting, Viewable {
      *                         board.
      */
     public void setColor(int num, int let, int newcolor) throws PresetException {
+        checkField(num, let, newcolor);
+        int square = num * ROW_STRIDE + let;
+        long bit = 1L << square;
+        int oldcolor = getColor(num, let);
+        touch(square);
+        if (oldcolor != NONE) {
+            tokens[oldcolor][square >>> 6] &= ~bit;
+            hashKey ^= ZOBRIST_SQUARES[oldcolor][square];
+            tokenCount[oldcolor]--;
+            if ((goalMask[oldcolor][square >>> 6] & bit) != 0) goalCount[oldcolor]--;
+        }
+        if (newcolor == RED || newcolor == BLUE) {
+            tokens[newcolor][square >>> 6] |= bit;
+            hashKey ^= ZOBRIST_SQUARES[newcolor][square];
+            tokenCount[newcolor]++;
+            if ((goalMask[newcolor][square >>> 6] & bit) != 0) goalCount[newcolor]++;
+        }
+    }
+
+    /**
+     * Checks the parameters of {@link #setColor(int, int, int)}.
+     *
+     * @param num      field position in y direction
+     * @param let      field position in x direction
+     * @param newcolor color to be set
+     * @throws PresetException if the color is not valid or the Position (let,num) is not on the
+     *                         board.
+     */
+    protected void checkField(int num, int let, int newcolor) throws PresetException {
         if (newcolor < RED || newcolor >= GRAY) {
             throw new PresetException("The color " + newcolor + " you want to set is not " +
                     "specified in Setting");
@@ -213,29 +619,140 @@ public class Board implements Setting, Viewable {
             throw new PresetException("The Postion (" + let + "/" + num + ") where your want to " +
                     "change the color on the board is not on the board");
         }
-        fields[num][let] = newcolor;
     }
 
     // ==== Instancemethods ====================================================================================
     /**
-     * Initialize fields array with the tokens colors depending on board
+     * Initialize the bitboards with the tokens colors depending on board
      * width (letters) and board height (numbers).
      */
     public void initializeFields() {
-        fields = new int[numbers][letters];
+        tokens = new long[2][words];
         int k = (3 + numbers) / 4;
-        for (int h = 0; h < fields.length; h++) {
-            for (int l = 0; l < fields[0].length; l++) {
+        for (int h = 0; h < numbers; h++) {
+            for (int l = 0; l < letters; l++) {
+                int square = h * ROW_STRIDE + l;
                 if (h < k)
-                    fields[h][l] = RED;
-                else if (h >= fields.length - k)
-                    fields[h][l] = BLUE;
-                else
-                    fields[h][l] = NONE;
+                    tokens[RED][square >>> 6] |= 1L << square;
+                else if (h >= numbers - k)
+                    tokens[BLUE][square >>> 6] |= 1L << square;
+            }
+        }
+        hashKey = computeHashKey();
+        resetMoveCache();
+        tokenCount = new int[2];
+        goalCount = new int[2];
+        countTokens(tokenCount, goalCount);
+    }
+
+    /**
+     * @return whether the tokens are kept in the bitboards of this class, false for a {@link
+     * SmallBoard}, which must not reach the methods using them
+     */
+    private boolean hasBitboards() {
+        return tokens != null;
+    }
+
+    /**
+     * Drops all cached valid moves, they are recalculated when they are needed next.
+     */
+    private void resetMoveCache() {
+        assert hasBitboards() : "Board method called on a " + getClass().getSimpleName();
+        moveTargets = new long[2][3][words];
+        dirtyWords = new int[]{-1, -1};
+        moveSets = new ValidMoveSet[2];
+    }
+
+    /**
+     * Marks the cached valid moves of both colors which may be affected by a change of a field as
+     * outdated: moves to the field itself and moves from the fields one number (row) before or
+     * behind it. These lie in the long of the field or in one of its neighbours.
+     *
+     * @param square the square index of the changed field
+     */
+    private void touch(int square) {
+        assert hasBitboards() : "Board method called on a " + getClass().getSimpleName();
+        int affected = (7 << (square >>> 6)) >>> 1;
+        dirtyWords[RED] |= affected;
+        dirtyWords[BLUE] |= affected;
+    }
+
+    /**
+     * Recalculates the outdated longs of the cached valid moves of a color. If the moves have
+     * changed, their version is counted up.
+     *
+     * @param color color of the player, RED or BLUE
+     */
+    private void refreshMoves(int color) {
+        assert hasBitboards() : "Board method called on a " + getClass().getSimpleName();
+        int dirty = dirtyWords[color];
+        if (dirty == 0) {
+            return;
+        }
+        dirtyWords[color] = 0;
+
+        long[] own = tokens[color];
+        long[] opponent = tokens[1 - color];
+        long[][] targets = moveTargets[color];
+        int forward = color == RED ? ROW_STRIDE : -ROW_STRIDE;
+        boolean changed = false;
+
+        for (int i = 0; i < words; i++) {
+            if ((dirty & (1 << i)) == 0) {
+                continue;
+            }
+
+            // Fields the tokens may move to: diagonal moves may also capture an opponent's token
+            long free = boardMask[i] & ~own[i];
+            long empty = free & ~opponent[i];
+
+            long left = shift(own, i, forward - 1) & free;
+            long straight = shift(own, i, forward) & empty;
+            long right = shift(own, i, forward + 1) & free;
+            changed |= targets[0][i] != left || targets[1][i] != straight || targets[2][i] != right;
+            targets[0][i] = left;
+            targets[1][i] = straight;
+            targets[2][i] = right;
+        }
+
+        if (changed) {
+            movesVersion[color]++;
+            moveSets[color] = null;
+        }
+    }
+
+    /**
+     * Counts the tokens of both colors and the tokens on the opponent's home row by scanning the
+     * bitboards.
+     *
+     * @param tokenCounts array the number of tokens is written to (index RED and BLUE)
+     * @param goalCounts  array the number of tokens on the opponent's home row is written to
+     */
+    private void countTokens(int[] tokenCounts, int[] goalCounts) {
+        assert hasBitboards() : "Board method called on a " + getClass().getSimpleName();
+        for (int color = RED; color <= BLUE; color++) {
+            tokenCounts[color] = 0;
+            goalCounts[color] = 0;
+            for (int i = 0; i < words; i++) {
+                tokenCounts[color] += Long.bitCount(tokens[color][i]);
+                goalCounts[color] += Long.bitCount(tokens[color][i] & goalMask[color][i]);
             }
         }
     }
 
+    /**
+     * Takes the masks of the fields on the board and of both home rows from the geometry of the
+     * board width (letters) and board height (numbers).
+     *
+     * @throws PresetException if the board size is out of range
+     */
+    private void initializeMasks() throws PresetException {
+        geometry = Geometry.of(letters, numbers);
+        words = geometry.getWords();
+        boardMask = geometry.getBoardMask();
+        goalMask = new long[][]{geometry.getGoalMask(RED), geometry.getGoalMask(BLUE)};
+    }
+
     /**
      * Sets a Move object on the board, verifies its validity, updates whosTurn variable to set next
      * player and returns the new status.
@@ -247,7 +764,7 @@ public class Board implements Setting, Viewable {
     public Status move(Move move) throws PresetException {
         // Check if opponent is surrendering
         if (move == null) {
-            lastChange = null;
+            lastChange = NO_MOVE;
             if (getTurn() == RED) {
                 return new Status(BLUE_WIN);
             } else {
@@ -256,24 +773,229 @@ public class Board implements Setting, Viewable {
         }
 
         // Check if the move is not valid --> on board
-        if (!getValidMoves(getTurn()).contains(move)) {
+        if (!isLegal(move)) {
             throw new PresetException("Move " + move + " is not valid!");
         }
 
-        // Set the last change
-        lastChange = new Move(move);
-
         // Everything OK: Set the move on the board
-        Position start = move.getStart();
-        Position end = move.getEnd();
+        makeMove(Move.encode(move));
 
-        fields[end.getNumber()][end.getLetter()] = fields[start.getNumber()][start.getLetter()];
-        fields[start.getNumber()][start.getLetter()] = NONE;
+        return status;
+    }
 
-        updateStatus();
-        updateTurn();
+    /**
+     * Checks if a move is valid for the player in turn, see {@link #isLegal(int, Move)}.
+     *
+     * @param move the move to be checked
+     * @return true if the player in turn may do the move
+     */
+    public boolean isLegal(Move move) {
+        return isLegal(whosTurn, move);
+    }
 
-        return status;
+    /**
+     * Checks if a move is valid for a player without generating any other moves: only the start
+     * field, the direction and the end field are looked at.
+     *
+     * @param color the color of the player, RED or BLUE
+     * @param move  the move to be checked
+     * @return true if both positions are on the board, the start field holds a token of the
+     *         player and the end field is the empty field in front of it or a field diagonally in
+     *         front of it which does not hold a token of the player
+     */
+    public boolean isLegal(int color, Move move) {
+        if (move == null || (color != RED && color != BLUE)) {
+            return false;
+        }
+        if (!isOnBoard(move.getStart()) || !isOnBoard(move.getEnd())) {
+            return false;
+        }
+
+        int startSquare = move.getStart().getSquare();
+        int endSquare = move.getEnd().getSquare();
+        if (getColor(startSquare) != color) {
+            return false;
+        }
+        switch (endSquare - startSquare - (color == RED ? ROW_STRIDE : -ROW_STRIDE)) {
+            case 0:
+                return getColor(endSquare) == NONE;
+            case -1:
+            case 1:
+                return getColor(endSquare) != color;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Checks if a position is on the board. Positions received from the network are not
+     * necessarily checked by their setters, so all bounds are tested.
+     *
+     * @param position the position to be checked, may be null
+     * @return true if the position is on the board
+     */
+    private boolean isOnBoard(Position position) {
+        return position != null && position.getLetter() >= 0 && position.getLetter() < letters
+                && position.getNumber() >= 0 && position.getNumber() < numbers;
+    }
+
+    /**
+     * Sets a packed move of the player in turn on the board without verifying it, updates status,
+     * whosTurn and the last change. This is meant for searching: the returned undo record allows
+     * {@link #unmakeMove(long)} to restore the previous position instead of copying the board.
+     *
+     * @param move a valid move packed by {@link breakthroughPP.preset.Move#encode(Move)}, e.g.
+     *             generated by {@link #generateMoves(int, int[])}
+     * @return the undo record of the move
+     */
+    public long makeMove(int move) {
+        int color = whosTurn;
+        int startSquare = Move.getStartSquare(move);
+        int endSquare = Move.getEndSquare(move);
+        long endBit = 1L << endSquare;
+
+        // The undo record: move, captured color, previous status, turn and last change
+        int captured = (tokens[1 - color][endSquare >>> 6] & endBit) != 0 ? 1 - color : NONE;
+        long undo = move
+                | (long) captured << UNDO_CAPTURED
+                | (long) status.getStatus() << UNDO_STATUS
+                | (long) color << UNDO_TURN
+                | (long) (lastChange + 1) << UNDO_LAST_CHANGE;
+
+        tokens[color][startSquare >>> 6] &= ~(1L << startSquare);
+        tokens[color][endSquare >>> 6] |= endBit;
+        touch(startSquare);
+        touch(endSquare);
+        if (captured != NONE) {
+            tokens[captured][endSquare >>> 6] &= ~endBit;
+            tokenCount[captured]--;
+            if ((goalMask[captured][endSquare >>> 6] & endBit) != 0) goalCount[captured]--;
+        }
+        if ((goalMask[color][endSquare >>> 6] & endBit) != 0) goalCount[color]++;
+        hashKey ^= moveKey(color, startSquare, endSquare, captured);
+
+        lastChange = move;
+        whosTurn = 1 - color;
+        if (verifyStatus) {
+            verifyStatus();
+        }
+        setStatusFromCounters();
+
+        return undo;
+    }
+
+    /**
+     * Takes back a move set by {@link #makeMove(int)}. Moves have to be taken back in the reverse
+     * order they have been made.
+     *
+     * @param undo the undo record returned by makeMove
+     */
+    public void unmakeMove(long undo) {
+        int move = (int) (undo & UNDO_MOVE_MASK);
+        int captured = (int) (undo >>> UNDO_CAPTURED) & 3;
+        int color = (int) (undo >>> UNDO_TURN) & 1;
+        int startSquare = Move.getStartSquare(move);
+        int endSquare = Move.getEndSquare(move);
+        long endBit = 1L << endSquare;
+
+        tokens[color][endSquare >>> 6] &= ~endBit;
+        tokens[color][startSquare >>> 6] |= 1L << startSquare;
+        touch(startSquare);
+        touch(endSquare);
+        if ((goalMask[color][endSquare >>> 6] & endBit) != 0) goalCount[color]--;
+        if (captured != NONE) {
+            tokens[captured][endSquare >>> 6] |= endBit;
+            tokenCount[captured]++;
+            if ((goalMask[captured][endSquare >>> 6] & endBit) != 0) goalCount[captured]++;
+        }
+
+        hashKey ^= moveKey(color, startSquare, endSquare, captured);
+        status.setStatus((int) (undo >>> UNDO_STATUS) & 7);
+        whosTurn = color;
+        lastChange = (int) (undo >>> UNDO_LAST_CHANGE) - 1;
+        if (verifyStatus) {
+            verifyStatus();
+        }
+    }
+
+
+    /**
+     * Calculates the Zobrist key of the current position from scratch.
+     *
+     * @return the Zobrist key of the tokens on the board and whose turn it is
+     */
+    private long computeHashKey() {
+        long key = whosTurn == BLUE ? ZOBRIST_BLUE_TURN : 0L;
+        for (int color = RED; color <= BLUE; color++) {
+            for (int i = 0; i < words; i++) {
+                for (long word = tokens[color][i]; word != 0; word &= word - 1) {
+                    key ^= ZOBRIST_SQUARES[color][i * 64 + Long.numberOfTrailingZeros(word)];
+                }
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Calculates the change of the Zobrist key by a move, including the change of the turn.
+     *
+     * @param color       color of the moving token
+     * @param startSquare square the token moves from
+     * @param endSquare   square the token moves to
+     * @param captured    color of the captured token or NONE
+     * @return the key to be xored to the Zobrist key to make or unmake the move
+     */
+    protected static long moveKey(int color, int startSquare, int endSquare, int captured) {
+        long key = ZOBRIST_SQUARES[color][startSquare] ^ ZOBRIST_SQUARES[color][endSquare] ^ ZOBRIST_BLUE_TURN;
+        if (captured != NONE) {
+            key ^= ZOBRIST_SQUARES[captured][endSquare];
+        }
+        return key;
+    }
+
+    /**
+     * Sets the status from the token counters in constant time. It gives the same result as
+     * {@link #updateStatus()}.
+     */
+    private void setStatusFromCounters() {
+        assert hasBitboards() : "Board method called on a " + getClass().getSimpleName();
+        if (goalCount[BLUE] > 0) status.setStatus(BLUE_WIN);
+        if (goalCount[RED] > 0) status.setStatus(RED_WIN);
+        if (tokenCount[BLUE] == 0) status.setStatus(RED_WIN);
+        if (tokenCount[RED] == 0) status.setStatus(BLUE_WIN);
+    }
+
+    /**
+     * Cross-checks the token counters, the status they lead to and the Zobrist key against a full
+     * scan of the bitboards.
+     *
+     * @throws IllegalStateException if the counters or the key differ from the bitboards
+     */
+    private void verifyStatus() {
+        int[] scannedTokens = new int[2];
+        int[] scannedGoals = new int[2];
+        countTokens(scannedTokens, scannedGoals);
+        if (!Arrays.equals(scannedTokens, tokenCount) || !Arrays.equals(scannedGoals, goalCount)) {
+            throw new IllegalStateException("Token counters " + Arrays.toString(tokenCount) + "/"
+                    + Arrays.toString(goalCount) + " differ from the board "
+                    + Arrays.toString(scannedTokens) + "/" + Arrays.toString(scannedGoals));
+        }
+
+        // Let both ways decide on copies of the status, the shared status object stays untouched
+        Status shared = status;
+        status = new Status(shared);
+        updateStatus();
+        Status scanned = status;
+        status = new Status(shared);
+        setStatusFromCounters();
+        Status counted = status;
+        status = shared;
+        if (scanned.getStatus() != counted.getStatus()) {
+            throw new IllegalStateException("Status " + counted + " differs from the board " + scanned);
+        }
+        if (computeHashKey() != hashKey) {
+            throw new IllegalStateException("Zobrist key differs from the board");
+        }
     }
 
     /**
@@ -287,13 +1009,11 @@ public class Board implements Setting, Viewable {
         boolean redDead = true;
         boolean blueDead = true;
 
-        for (int i = 0; i < letters; i++) {
-            if (fields[0][i] == BLUE) status.setStatus(BLUE_WIN);
-            if (fields[numbers - 1][i] == RED) status.setStatus(RED_WIN);
-            for (int j = 0; j < numbers; j++) {
-                if (fields[j][i] == BLUE) blueDead = false;
-                if (fields[j][i] == RED) redDead = false;
-            }
+        for (int i = 0; i < words; i++) {
+            if ((tokens[BLUE][i] & goalMask[BLUE][i]) != 0) status.setStatus(BLUE_WIN);
+            if ((tokens[RED][i] & goalMask[RED][i]) != 0) status.setStatus(RED_WIN);
+            if (tokens[BLUE][i] != 0) blueDead = false;
+            if (tokens[RED][i] != 0) redDead = false;
         }
 
         if (blueDead){
@@ -329,113 +1049,152 @@ public class Board implements Setting, Viewable {
      * @return a set containing all valid moves for the color.
      * @throws PresetException if a Position in this function throws one or if the color is not
      *                         specified as the color of a Player in {@link breakthroughPP.preset.Setting}
+     * @see #generateMoves(int, int[])
      */
     public HashSet<Move> getValidMoves(int color) throws PresetException {
 
-        int direction;
-        if (color == BLUE) {
-            direction = -1;
-        } else if (color == RED) {
-            direction = 1;
-        } else {
+        if (color != RED && color != BLUE) {
             throw new PresetException("The color you are calling getValidMoves with is not specified" +
                     " in Setting");
         }
 
+        int[] moves = new int[3 * getTokenCount(color)];
+        int count = generateMoves(color, moves);
+
         // Hashset containing the results
         HashSet<Move> validMoves = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            validMoves.add(Move.decode(moves[i]));
+        }
 
-        for (int y = 0; y < fields.length; y++) {
-            for (int x = 0; x < fields[0].length; x++) {
-
-                // Check if the current field is interesting (if there is a token
-                // of the players color on that field)
-                if (fields[y][x] != color) continue;
-
-
-                // ---- Step 1: Create all possible moves -----------------------------------------
-                // 3 possible moves (diagonal to the left, vertical, diagonal to the right)
-
-                HashSet<Move> validMovesForCurrentToken = new HashSet<Move>();
-                Position start = new Position(x, y);
-
-                // diagonal left
-                try {
-                    validMovesForCurrentToken.add(new Move(start, new Position(x - 1, y + 1 * direction)));
-                } catch (PresetException exception) {
-                    // Exceptions is thrown when invalid end position of move. Handling of exception
-                    // is not needed because we want to ignore that invalid moves anyways.
-                }
-
-                // vertical
-                try {
-                    validMovesForCurrentToken.add(new Move(start, new Position(x, y + 1 * direction)));
-                } catch (PresetException exception) {
-                    // Exceptions is thrown when invalid end position of move. Handling of exception
-                    // is not needed because we want to ignore that invalid moves anyways.
-                }
-
-                // diagonal right
-                try {
-                    validMovesForCurrentToken.add(new Move(start, new Position(x + 1, y + 1 * direction)));
-                } catch (PresetException exception) {
-                    // Exceptions is thrown when invalid end position of move. Handling of exception
-                    // is not needed because we want to ignore that invalid moves anyways.
-                }
-
-                // ---- Step 2: Remove all invalid moves from the possible moves ------------------
-                // Check which of the three move options for the current token are valid
-                Iterator<Move> iterator = validMovesForCurrentToken.iterator();
-
-                while (iterator.hasNext()) {
-
-                    Move move = iterator.next();
-
-                    // Check valid position of the move regarding the board size
-
-                    if (move.getEnd().getLetter() < 0 || move.getEnd().getLetter() >= getLetters()) {
-                        iterator.remove();
-                        continue;
-                    }
-
-                    if (move.getEnd().getNumber() < 0 || move.getEnd().getNumber() >= getNumbers()) {
-                        iterator.remove();
-                        continue;
-                    }
-
-                    // Check whether the move is valid according to the rules
+        return validMoves;
+    }
 
-                    // Color of where the move is targeted to
-                    int endColor = getColor(move.getEnd());
+    /**
+     * Returns a read-only view of the valid moves for a player with a certain color. The view is
+     * cached: it is only created again after the moves of this color have changed, and only the
+     * moves of tokens near the fields changed since the last call are recalculated.
+     *
+     * @param color color of the player whose valid moves are to be returned (see {@link
+     *              breakthroughPP.preset.Setting})
+     * @return the valid moves for the color, stamped with the version of the moves
+     * @throws PresetException if the color is not specified as the color of a Player in {@link
+     *                         breakthroughPP.preset.Setting}
+     */
+    public ValidMoveSet getValidMoveSet(int color) throws PresetException {
+        if (color != RED && color != BLUE) {
+            throw new PresetException("The color you are calling getValidMoveSet with is not specified" +
+                    " in Setting");
+        }
 
-                    // Is the move a diagonal move?
-                    boolean isDiagonal = move.getStart().getLetter() != move.getEnd().getLetter();
+        refreshMoves(color);
+        if (moveSets[color] == null) {
+            int forward = color == RED ? ROW_STRIDE : -ROW_STRIDE;
+            long[][] targets = moveTargets[color];
+            moveSets[color] = new ValidMoveSet(
+                    new long[][]{targets[0].clone(), targets[1].clone(), targets[2].clone()},
+                    new int[]{forward - 1, forward, forward + 1}, movesVersion[color]);
+        }
+        return moveSets[color];
+    }
 
-                    // Is the target position of the move already occupied by another piece?
-                    boolean isEndOccupied = (endColor == BLUE) || (endColor == RED);
+    /**
+     * Returns the version of the valid moves of a color. It is counted up whenever the moves
+     * change, so a {@link ValidMoveSet} with the same version is still up to date.
+     *
+     * @param color color of the player, RED or BLUE
+     * @return the version of the valid moves of this color
+     */
+    public long getMovesVersion(int color) {
+        refreshMoves(color);
+        return movesVersion[color];
+    }
 
-                    // Cannot move forward vertically if the target field is already occupied
-                    if (!isDiagonal && isEndOccupied) {
-                        iterator.remove();
-                        continue;
-                    }
+    /**
+     * Writes all valid moves for a player with a certain color into a buffer without allocating
+     * any objects. The moves are packed by {@link breakthroughPP.preset.Move#encode(int, int)}.
+     * The target fields of all tokens are calculated at once for every long of the bitboards by
+     * shifting the tokens one row forward (and one letter to the left or right for the diagonal
+     * moves). They are cached, so only the longs near the fields changed since the last call
+     * are calculated again.
+     *
+     * @param color color of the player whose valid moves are to be calculated, RED or BLUE
+     * @param moves buffer the moves are written to starting at index 0. It has to hold at least
+     *              {@link #getMaxMoves()} or three times the number of tokens of color moves.
+     * @return the number of moves written to the buffer
+     */
+    public int generateMoves(int color, int[] moves) {
+        refreshMoves(color);
+        long[][] targets = moveTargets[color];
+        int forward = color == RED ? ROW_STRIDE : -ROW_STRIDE;
+        int count = 0;
+
+        for (int i = 0; i < words; i++) {
+            count = addMoves(targets[0][i], i, forward - 1, moves, count);
+            count = addMoves(targets[1][i], i, forward, moves, count);
+            count = addMoves(targets[2][i], i, forward + 1, moves, count);
+        }
 
-                    // Diagonal move is note valid when the target position is occupied by a
-                    // token of my color
-                    if (isDiagonal && isEndOccupied && endColor == color) {
-                        iterator.remove();
-                        continue;
-                    }
+        return count;
+    }
 
-                }
+    /**
+     * Counts the valid moves for a player with a certain color without writing them anywhere.
+     *
+     * @param color color of the player, RED or BLUE
+     * @return the number of moves {@link #generateMoves(int, int[])} would produce
+     */
+    public int countMoves(int color) {
+        refreshMoves(color);
+        long[][] targets = moveTargets[color];
+        int count = 0;
+        for (int i = 0; i < words; i++) {
+            count += Long.bitCount(targets[0][i]) + Long.bitCount(targets[1][i]) + Long.bitCount(targets[2][i]);
+        }
+        return count;
+    }
 
-                // ---- Step 3: add the valid moves for this token, to the set of possible moves ----
-                validMoves.addAll(validMovesForCurrentToken);
+    /**
+     * The maximal number of moves {@link #generateMoves(int, int[])} can produce on this board.
+     *
+     * @return three moves for every field
+     */
+    public int getMaxMoves() {
+        return 3 * letters * numbers;
+    }
 
-            }
+    /**
+     * Packs the moves to the target fields of one long of a bitboard into a buffer.
+     *
+     * @param targets bits of the target fields
+     * @param i       index of the long of the target fields
+     * @param shift   distance from the start to the target field in bits
+     * @param moves   buffer the moves are written to
+     * @param count   number of moves in the buffer so far
+     * @return the number of moves in the buffer
+     */
+    private static int addMoves(long targets, int i, int shift, int[] moves, int count) {
+        while (targets != 0) {
+            int end = i * 64 + Long.numberOfTrailingZeros(targets);
+            moves[count++] = Move.encode(end - shift, end);
+            targets &= targets - 1;
         }
+        return count;
+    }
 
-        return validMoves;
+    /**
+     * Calculates one long of a bitboard which has been shifted as a whole.
+     *
+     * @param board the bitboard to be shifted
+     * @param i     the index of the long to be calculated
+     * @param shift the shift distance in bits, positive towards higher numbers, |shift| < 64
+     * @return the long with index i of the shifted bitboard
+     */
+    private long shift(long[] board, int i, int shift) {
+        if (shift > 0) {
+            return (board[i] << shift) | (i > 0 ? board[i - 1] >>> (64 - shift) : 0L);
+        }
+        return (board[i] >>> -shift) | (i + 1 < words ? board[i + 1] << (64 + shift) : 0L);
     }
 
     /**
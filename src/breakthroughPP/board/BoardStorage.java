@@ -103,4 +103,42 @@ public class BoardStorage implements Viewer {
 	public HashSet<Move> getValidMoves(int color) throws PresetException{
 		return board.getValidMoves(color);
 	}
+	
+	/**
+	 * @param color color of the player specified in {@link breakthroughPP.preset.Setting} whos
+	 * valid moves should be returned
+	 * @return the cached read-only set of the valid moves for the specified color, stamped with
+	 * a version
+	 * @see breakthroughPP.preset.Viewer
+	 */
+	public ValidMoveSet getValidMoveSet(int color) throws PresetException{
+		return board.getValidMoveSet(color);
+	}
+	
+	/**
+	 * @param color color of the player specified in {@link breakthroughPP.preset.Setting}
+	 * @return the version of the valid moves for the specified color
+	 * @see breakthroughPP.preset.Viewer
+	 */
+	public long getMovesVersion(int color){
+		return board.getMovesVersion(color);
+	}
+	
+	/**
+	 * @param color color of the player specified in {@link breakthroughPP.preset.Setting}
+	 * @param move the move to be checked
+	 * @return true if the move is valid for the specified color
+	 * @see breakthroughPP.preset.Viewer
+	 */
+	public boolean isLegal(int color, Move move){
+		return board.isLegal(color, move);
+	}
+	
+	/**
+	 * @return the Zobrist key of the current position on the board
+	 * @see breakthroughPP.preset.Viewer
+	 */
+	public long getHashKey(){
+		return board.getHashKey();
+	}
 }
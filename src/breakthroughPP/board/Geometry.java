@@ -0,0 +1,305 @@
+package breakthroughPP.board;
+
+import breakthroughPP.preset.*;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed tables of a board size: the fields a token can move to and the fields it can be
+ * captured from, for every square and both colors, the bit masks of the board and the home
+ * rows, and the forward cones which tell whether a token can still be stopped (see
+ * {@link #isRunner(int, boolean, int, long[], long[])}). Squares are the square indices of {@link breakthroughPP.preset.Position#getSquare()}.
+ * The tables hold only fields on the board, so no border checks are needed when using them.
+ * There is one shared instance per board size, see {@link #of(int, int)}.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author Fabiola Buschendorf
+ * @author H.A.
+ */
+public final class Geometry implements Setting {
+
+    /**
+     * Shared instances by letters * 32 + numbers
+     */
+    private static final ConcurrentHashMap<Integer, Geometry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * The width of the board
+     */
+    private final int letters;
+
+    /**
+     * The height of the board
+     */
+    private final int numbers;
+
+    /**
+     * Number of longs per bitboard
+     */
+    private final int words;
+
+    /**
+     * Bits of all fields which are on the board
+     */
+    private final long[] boardMask;
+
+    /**
+     * Bits of the opponent's home row each color has to reach (index RED and BLUE)
+     */
+    private final long[][] goalMask;
+
+    /**
+     * Fields a token can move to, indexed by [color][square]: the diagonal field to the lower
+     * letter, the straight field and the diagonal field to the higher letter, as far as they are
+     * on the board
+     */
+    private final int[][][] successors;
+
+    /**
+     * Fields an opponent's token can capture a token from, indexed by [color][square] of the
+     * captured token: the fields one number (row) in front of it to the lower and the higher
+     * letter, as far as they are on the board
+     */
+    private final int[][][] attackers;
+
+    /**
+     * Fields in front of a token from which an opponent's token may still stop it, indexed by
+     * [color][0 if the player of the token is to move, else 1][square], see {@link #getConeWidth}
+     */
+    private final long[][][][] cones;
+
+    /**
+     * Fields straight in front of a token up to the opponent's home row, indexed by
+     * [color][square]
+     */
+    private final long[][][] paths;
+
+    // ==== Constructor ====================================================================================
+    /**
+     * Calculates the tables of a board size.
+     *
+     * @param newletters number of columns
+     * @param newnumbers number of rows
+     */
+    private Geometry(int newletters, int newnumbers) {
+        letters = newletters;
+        numbers = newnumbers;
+        words = (numbers * Board.ROW_STRIDE + 63) / 64;
+        boardMask = new long[words];
+        goalMask = new long[2][words];
+        successors = new int[2][numbers * Board.ROW_STRIDE][];
+        attackers = new int[2][numbers * Board.ROW_STRIDE][];
+        cones = new long[2][2][numbers * Board.ROW_STRIDE][];
+        paths = new long[2][numbers * Board.ROW_STRIDE][];
+
+        int[] none = new int[0];
+        for (int color = RED; color <= BLUE; color++) {
+            Arrays.fill(successors[color], none);
+            Arrays.fill(attackers[color], none);
+        }
+
+        for (int h = 0; h < numbers; h++) {
+            for (int l = 0; l < letters; l++) {
+                int square = h * Board.ROW_STRIDE + l;
+                boardMask[square >>> 6] |= 1L << square;
+                if (h == numbers - 1) goalMask[RED][square >>> 6] |= 1L << square;
+                if (h == 0) goalMask[BLUE][square >>> 6] |= 1L << square;
+
+                for (int color = RED; color <= BLUE; color++) {
+                    int front = h + (color == RED ? 1 : -1);
+                    if (front < 0 || front >= numbers) {
+                        continue;
+                    }
+                    successors[color][square] = squares(front, l - 1, l, l + 1);
+                    attackers[color][square] = squares(front, l - 1, l + 1);
+                }
+            }
+        }
+
+        for (int h = 0; h < numbers; h++) {
+            for (int l = 0; l < letters; l++) {
+                int square = h * Board.ROW_STRIDE + l;
+                for (int color = RED; color <= BLUE; color++) {
+                    int distance = color == RED ? numbers - 1 - h : h;
+                    int forward = color == RED ? 1 : -1;
+                    paths[color][square] = new long[words];
+                    for (int turn = 0; turn < 2; turn++) {
+                        cones[color][turn][square] = new long[words];
+                    }
+                    for (int i = 1; i <= distance; i++) {
+                        int row = (h + i * forward) * Board.ROW_STRIDE;
+                        paths[color][square][(row + l) >>> 6] |= 1L << (row + l);
+                        for (int turn = 0; turn < 2; turn++) {
+                            int width = getConeWidth(turn == 0, i);
+                            for (int x = Math.max(0, l - width); x <= Math.min(letters - 1, l + width); x++) {
+                                cones[color][turn][square][(row + x) >>> 6] |= 1L << (row + x);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the shared tables of a board size.
+     *
+     * @param letters number of columns
+     * @param numbers number of rows
+     * @return the geometry of a board with this size
+     * @throws PresetException if the size is not in the range of {@link Board#Board(int, int)}
+     */
+    public static Geometry of(int letters, int numbers) throws PresetException {
+        if (numbers < 6 || numbers > 26 || letters < 2 || letters > 26) {
+            throw new PresetException("Field dimensions out of range!");
+        }
+        Integer key = letters * Board.ROW_STRIDE + numbers;
+        Geometry geometry = cache.get(key);
+        if (geometry == null) {
+            geometry = new Geometry(letters, numbers);
+            Geometry known = cache.putIfAbsent(key, geometry);
+            if (known != null) {
+                geometry = known;
+            }
+        }
+        return geometry;
+    }
+
+    /**
+     * Collects the squares of some letters on one number, leaving out letters beyond the board.
+     *
+     * @param number     the number (row) of the squares
+     * @param candidates the letters of the squares in ascending order
+     * @return the square indices of the letters on the board
+     */
+    private int[] squares(int number, int... candidates) {
+        int[] result = new int[candidates.length];
+        int count = 0;
+        for (int l : candidates) {
+            if (l >= 0 && l < letters) {
+                result[count++] = number * Board.ROW_STRIDE + l;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // ==== Getter ====================================================================================
+
+    public int getLetters() {
+        return letters;
+    }
+
+    public int getNumbers() {
+        return numbers;
+    }
+
+    /**
+     * @return the number of longs per bitboard of this board size
+     */
+    public int getWords() {
+        return words;
+    }
+
+    /**
+     * Returns the bits of all fields on the board. The array is shared and must not be changed.
+     *
+     * @return the board mask
+     */
+    public long[] getBoardMask() {
+        return boardMask;
+    }
+
+    /**
+     * Returns the bits of the home row a color has to reach. The array is shared and must not be
+     * changed.
+     *
+     * @param color the color of the player, RED or BLUE
+     * @return the goal mask of the color
+     */
+    public long[] getGoalMask(int color) {
+        return goalMask[color];
+    }
+
+    /**
+     * Returns the fields a token can move to, ignoring the other tokens: the diagonal field to the
+     * lower letter, the straight field and the diagonal field to the higher letter, as far as they
+     * are on the board. The array is shared and must not be changed.
+     *
+     * @param color  the color of the token, RED or BLUE
+     * @param square the square index of the token
+     * @return the square indices of the fields, empty on the opponent's home row
+     */
+    public int[] getSuccessors(int color, int square) {
+        return successors[color][square];
+    }
+
+    /**
+     * Returns the fields an opponent's token can capture a token from: the fields one number
+     * (row) in front of it to the lower and the higher letter, as far as they are on the board.
+     * The array is shared and must not be changed.
+     *
+     * @param color  the color of the token which may be captured, RED or BLUE
+     * @param square the square index of the token
+     * @return the square indices of the fields, empty on the opponent's home row
+     */
+    public int[] getAttackers(int color, int square) {
+        return attackers[color][square];
+    }
+
+    /**
+     * Distance of the square indices of a field and the field in front of it.
+     *
+     * @param color the color of the token, RED or BLUE
+     * @return ROW_STRIDE for RED and -ROW_STRIDE for BLUE
+     */
+    public int getForward(int color) {
+        return color == RED ? Board.ROW_STRIDE : -Board.ROW_STRIDE;
+    }
+
+    /**
+     * Half width of the forward cone of a token on a number (row) in front of it. A token which
+     * walks straight to the goal and an opponent's token i numbers in front of it close the gap
+     * together, and every letter the opponent's token moves sideways costs it one number of the
+     * gap. To stop the token it must block the field straight in front of it or capture it from
+     * a diagonal field, so it can only close about half of the gap in letters: i / 2 rounded down
+     * if the player of the token is to move, rounded up if the opponent is to move.
+     *
+     * @param ownTurn  whether the player of the token is to move
+     * @param distance the number of numbers (rows) in front of the token, at least 1
+     * @return the number of letters on each side of the token's letter which belong to the cone
+     */
+    public static int getConeWidth(boolean ownTurn, int distance) {
+        return ownTurn ? distance / 2 : (distance + 1) / 2;
+    }
+
+    /**
+     * Tells whether a token is a runner which can not be stopped any more: no opponent's token
+     * lies in its forward cone and no own token straight in front of it, so it walks straight to
+     * the opponent's home row in as many moves as it has numbers (rows) to go. The test is sound
+     * but not complete, some tokens which can not be stopped either are not found. Whether the
+     * opponent reaches its goal first has to be checked by the caller.
+     *
+     * @param color    the color of the token, RED or BLUE
+     * @param ownTurn  whether the player of the token is to move
+     * @param square   the square index of the token
+     * @param own      the tokens of the color as bitboard of square indices
+     * @param opponent the tokens of the opponent as bitboard of square indices
+     * @return whether the token can not be stopped
+     */
+    public boolean isRunner(int color, boolean ownTurn, int square, long[] own, long[] opponent) {
+        long[] cone = cones[color][ownTurn ? 0 : 1][square];
+        long[] path = paths[color][square];
+        int from = color == RED ? square >>> 6 : 0;
+        int to = color == RED ? words : (square >>> 6) + 1;
+        for (int i = from; i < to; i++) {
+            if ((cone[i] & opponent[i]) != 0 || (path[i] & own[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
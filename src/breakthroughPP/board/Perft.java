@@ -0,0 +1,165 @@
+package breakthroughPP.board;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import breakthroughPP.preset.*;
+
+/**
+ * Counts the positions reachable from the initial position up to a given depth (perft). It is
+ * used to check the move generation and make/unmake of the boards against each other and to
+ * measure their speed. A position in which the game has ended is counted as a leaf. Random games
+ * with the verification of the board switched on check the incremental updates of a board
+ * against a full scan, see {@link Board#setVerifyStatus(boolean)}.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author Fabiola Buschendorf
+ * @author H.A.
+ */
+public class Perft implements Setting {
+
+    /**
+     * The board the moves are made on
+     */
+    private final Board board;
+
+    /**
+     * One move buffer per ply
+     */
+    private final int[][] moves;
+
+    /**
+     * The board sizes the test main plays random games on: the narrowest, wide and high ones, and
+     * sizes with a number of fields below, at and above 64
+     */
+    private static final int[][] VERIFY_SIZES = {{2, 6}, {8, 8}, {9, 7}, {5, 12}, {26, 26}};
+
+    // ==== Constructor ====================================================================================
+    /**
+     * @param newboard the board the positions are counted on, it is restored after counting
+     * @param maxdepth the maximal depth which will be counted
+     */
+    public Perft(Board newboard, int maxdepth) {
+        board = newboard;
+        moves = new int[maxdepth][board.getMaxMoves()];
+    }
+
+    // ==== Instancemethods ====================================================================================
+    /**
+     * Counts the leaf positions of the game tree of the board up to a depth.
+     *
+     * @param depth the depth, at most the maximal depth given to the constructor
+     * @return the number of positions after depth moves or in which the game ended before
+     */
+    public long count(int depth) {
+        if (depth == 0 || !board.getStatus().isOk()) {
+            return 1;
+        }
+        if (depth == 1) {
+            return board.countMoves(board.getTurn());
+        }
+        int[] buffer = moves[depth - 1];
+        int count = board.generateMoves(board.getTurn(), buffer);
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            long undo = board.makeMove(buffer[i]);
+            nodes += count(depth - 1);
+            board.unmakeMove(undo);
+        }
+        return nodes;
+    }
+
+    /**
+     * Plays random games to the end with the verification of the board switched on and takes
+     * all their moves back.
+     *
+     * @param games  the number of games
+     * @param random chooses the moves
+     * @return the number of moves made
+     * @throws IllegalStateException if a move leaves the board inconsistent or the moves taken
+     *                               back do not restore the position
+     */
+    public long playRandomGames(int games, Random random) throws IllegalStateException {
+        boolean verify = board.isVerifyStatus();
+        board.setVerifyStatus(true);
+        long key = board.getHashKey();
+        int status = board.getStatus().getStatus();
+        int turn = board.getTurn();
+        int[] buffer = new int[board.getMaxMoves()];
+        long[] undos = new long[board.getLetters() * board.getNumbers()];
+        long moves = 0;
+        try {
+            for (int game = 0; game < games; game++) {
+                int plies = 0;
+                while (board.getStatus().isOk()) {
+                    int count = board.generateMoves(board.getTurn(), buffer);
+                    if (count == 0) {
+                        break;
+                    }
+                    if (plies == undos.length) {
+                        undos = Arrays.copyOf(undos, 2 * plies);
+                    }
+                    undos[plies++] = board.makeMove(buffer[random.nextInt(count)]);
+                }
+                moves += plies;
+                while (plies > 0) {
+                    board.unmakeMove(undos[--plies]);
+                }
+                if (board.getHashKey() != key || board.getStatus().getStatus() != status || board.getTurn() != turn) {
+                    throw new IllegalStateException("The moves taken back do not restore the position");
+                }
+            }
+        } finally {
+            board.setVerifyStatus(verify);
+        }
+        return moves;
+    }
+
+    // ==== Test main ==============================================================================
+    /**
+     * Plays random games with verification on {@link Board} and {@link Board#create(int, int)} of
+     * the {@link #VERIFY_SIZES} and the given size, then compares the perft counts and speed of
+     * {@link Board} and {@link SmallBoard}.
+     *
+     * @param args letters, numbers, depth and number of random games per board, default 8 8 5 20
+     * @throws PresetException if the board size is not valid
+     */
+    public static void main(String[] args) throws PresetException {
+        int letters = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int numbers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int games = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+        Random random = new Random(1);
+        int[][] sizes = Arrays.copyOf(VERIFY_SIZES, VERIFY_SIZES.length + 1);
+        sizes[VERIFY_SIZES.length] = new int[]{letters, numbers};
+        for (int[] size : sizes) {
+            for (Board board : new Board[]{new Board(size[0], size[1]), Board.create(size[0], size[1])}) {
+                long moves = new Perft(board, 0).playRandomGames(games, random);
+                System.out.println(board.getClass().getSimpleName() + " " + size[0] + "x" + size[1] + ": " + games
+                        + " verified random games, " + moves + " moves");
+            }
+        }
+
+        Board[] boards = {new Board(letters, numbers), Board.create(letters, numbers)};
+        long[] counts = new long[boards.length];
+        for (int b = 0; b < boards.length; b++) {
+            Perft perft = new Perft(boards[b], depth);
+            for (int d = 1; d <= depth; d++) {
+                long start = System.nanoTime();
+                counts[b] = perft.count(d);
+                long time = Math.max(1, (System.nanoTime() - start) / 1000000);
+                System.out.println(boards[b].getClass().getSimpleName() + " " + letters + "x" + numbers
+                        + " depth " + d + ": " + counts[b] + " positions in " + time + " ms ("
+                        + counts[b] / time + " per ms)");
+            }
+        }
+        if (counts[0] != counts[1]) {
+            System.out.println("Counts differ!");
+            System.exit(1);
+        }
+    }
+}
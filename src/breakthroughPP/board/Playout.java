@@ -0,0 +1,479 @@
+package breakthroughPP.board;
+
+import breakthroughPP.preset.*;
+
+/**
+ * Plays games from a position to the end with random moves, for the Monte Carlo search and for
+ * statistics. The tokens are copied into bitboards of its own with densely numbered fields
+ * (number * letters + letter, as in {@link SmallBoard}), so the board itself is not changed and
+ * no undo records are needed. Each move is drawn uniformly from the target fields of the three
+ * directions, counted with bitCount, and nothing is allocated during a playout. Boards with at
+ * most 64 fields are played in single longs held in local variables.
+ * <p>
+ * With decisive moves a player who can reach the opponent's home row always does so, which
+ * makes the results of the playouts more realistic at little cost.
+ * <p>
+ * A playout is used by one thread only, each thread needs one of its own.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author H.A.
+ */
+public class Playout implements Setting {
+
+    /**
+     * Size of the board the bitboards are prepared for, 0 before the first playout
+     */
+    private int letters;
+    private int numbers;
+    private int words;
+
+    /**
+     * The fields of the board and the fields which are not on the first or last letter
+     */
+    private long[] boardMask;
+    private long[] notFirstLetter;
+    private long[] notLastLetter;
+
+    /**
+     * The home rows each color has to reach (index RED and BLUE), for boards with at most 64
+     * fields
+     */
+    private final long[] goalMask = new long[2];
+
+    /**
+     * The tokens of each color (index RED and BLUE)
+     */
+    private long[][] pieces;
+
+    /**
+     * Target fields of the moves to the left, straight and to the right, the longs of one
+     * direction after another
+     */
+    private long[] targets;
+
+    /**
+     * Number of tokens of each color
+     */
+    private final int[] tokenCount = new int[2];
+
+    /**
+     * State of the xorshift random number generator, never 0
+     */
+    private long seed;
+
+    /**
+     * Whether a player who can reach the opponent's home row does so
+     */
+    private boolean decisive;
+
+    /**
+     * Number of moves of the last playout
+     */
+    private int plies;
+
+    // ==== Constructor ====================================================================================
+
+    public Playout() {
+        this(System.nanoTime() ^ System.identityHashCode(new Object()));
+    }
+
+    /**
+     * @param newseed start value of the random numbers, the same seed gives the same playouts
+     */
+    public Playout(long newseed) {
+        seed = newseed == 0 ? 0x9E3779B97F4A7C15L : newseed;
+    }
+
+    // ==== Getter ====================================================================================
+
+    public boolean isDecisive() {
+        return decisive;
+    }
+
+    /**
+     * @return the number of moves of the last playout
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    // ==== Setter ====================================================================================
+
+    /**
+     * @param newdecisive whether a player who can reach the opponent's home row always does so,
+     *                    else all moves are equally likely
+     */
+    public void setDecisive(boolean newdecisive) {
+        decisive = newdecisive;
+    }
+
+    // ==== Instancemethods ====================================================================================
+    /**
+     * Plays the game from a position to the end with random moves. The board is not changed.
+     * A player who can not move loses, as in the searches.
+     *
+     * @param board the position
+     * @return the color of the winner, RED or BLUE
+     */
+    public int play(Board board) {
+        plies = 0;
+        if (!board.getStatus().isOk()) {
+            return board.getStatus().isRedWin() ? RED : BLUE;
+        }
+        prepare(board.getLetters(), board.getNumbers());
+        for (int color = RED; color <= BLUE; color++) {
+            board.getDenseTokens(color, pieces[color]);
+            tokenCount[color] = 0;
+            for (int i = 0; i < words; i++) {
+                tokenCount[color] += Long.bitCount(pieces[color][i]);
+            }
+        }
+
+        if (words == 1) {
+            return playSmall(board.getTurn());
+        }
+        int goalStart = (numbers - 1) * letters;
+        int color = board.getTurn();
+        while (true) {
+            long[] own = pieces[color];
+            long[] opponent = pieces[1 - color];
+            int forward = color == RED ? letters : -letters;
+
+            // Target fields of the three directions, diagonal moves may also capture
+            int total = 0;
+            for (int i = 0; i < words; i++) {
+                long free = boardMask[i] & ~own[i];
+                long left = shift(own, notFirstLetter, i, forward - 1) & free;
+                long straight = shift(own, boardMask, i, forward) & free & ~opponent[i];
+                long right = shift(own, notLastLetter, i, forward + 1) & free;
+                targets[i] = left;
+                targets[words + i] = straight;
+                targets[2 * words + i] = right;
+                total += Long.bitCount(left) + Long.bitCount(straight) + Long.bitCount(right);
+            }
+            if (total == 0) {
+                return 1 - color;
+            }
+            if (decisive && reachesGoal(color, goalStart)) {
+                plies++;
+                return color;
+            }
+
+            // The index of the drawn move among all target fields
+            int r = (int) (((nextLong() >>> 32) * total) >>> 32);
+            int k = 0;
+            int bits = Long.bitCount(targets[0]);
+            while (r >= bits) {
+                r -= bits;
+                bits = Long.bitCount(targets[++k]);
+            }
+            int end = (k % words) * 64 + select(targets[k], r);
+            int start = end - forward - (k / words - 1);
+            long endBit = 1L << end;
+
+            own[start >>> 6] &= ~(1L << start);
+            own[end >>> 6] |= endBit;
+            plies++;
+            if ((opponent[end >>> 6] & endBit) != 0) {
+                opponent[end >>> 6] &= ~endBit;
+                if (--tokenCount[1 - color] == 0) {
+                    return color;
+                }
+            }
+            if (color == RED ? end >= goalStart : end < letters) {
+                return color;
+            }
+            color = 1 - color;
+        }
+    }
+
+    /**
+     * Plays the game on a board with at most 64 fields: the tokens are kept in two longs, and
+     * a move to the opponent's home row is found among the target fields with one mask.
+     *
+     * @param color the color of the player to move
+     * @return the color of the winner
+     */
+    private int playSmall(int color) {
+        long mask = boardMask[0];
+        long notFirst = notFirstLetter[0];
+        long notLast = notLastLetter[0];
+        long own = pieces[color][0];
+        long opponent = pieces[1 - color][0];
+        int opponentCount = tokenCount[1 - color];
+        int ownCount = tokenCount[color];
+        while (true) {
+            // Target fields of the three directions, diagonal moves may also capture
+            long free = mask & ~own;
+            long left;
+            long straight;
+            long right;
+            int forward;
+            if (color == RED) {
+                left = (own & notFirst) << (letters - 1) & free;
+                straight = own << letters & free & ~opponent;
+                right = (own & notLast) << (letters + 1) & free;
+                forward = letters;
+            } else {
+                left = (own & notFirst) >>> (letters + 1) & free;
+                straight = own >>> letters & free & ~opponent;
+                right = (own & notLast) >>> (letters - 1) & free;
+                forward = -letters;
+            }
+            int leftCount = Long.bitCount(left);
+            int straightCount = Long.bitCount(straight);
+            int total = leftCount + straightCount + Long.bitCount(right);
+            if (total == 0) {
+                return 1 - color;
+            }
+            if (decisive && ((left | straight | right) & goalMask[color]) != 0) {
+                plies++;
+                return color;
+            }
+
+            // The drawn move among all target fields
+            int r = (int) (((nextLong() >>> 32) * total) >>> 32);
+            int end;
+            int start;
+            if (r < leftCount) {
+                end = selectSmall(left, r);
+                start = end - forward + 1;
+            } else if (r < leftCount + straightCount) {
+                end = selectSmall(straight, r - leftCount);
+                start = end - forward;
+            } else {
+                end = selectSmall(right, r - leftCount - straightCount);
+                start = end - forward - 1;
+            }
+            long endBit = 1L << end;
+            own ^= (1L << start) | endBit;
+            plies++;
+            if ((opponent & endBit) != 0) {
+                opponent &= ~endBit;
+                if (--opponentCount == 0) {
+                    return color;
+                }
+            }
+            if ((endBit & goalMask[color]) != 0) {
+                return color;
+            }
+
+            // The opponent moves next
+            long tokens = own;
+            own = opponent;
+            opponent = tokens;
+            int count = ownCount;
+            ownCount = opponentCount;
+            opponentCount = count;
+            color = 1 - color;
+        }
+    }
+
+    /**
+     * Plays games from a position and counts the wins of a color.
+     *
+     * @param board    the position, it is not changed
+     * @param color    the color whose wins are counted
+     * @param playouts number of games, greater than zero
+     * @return the part of the games color won, between 0 and 1
+     */
+    public double rate(Board board, int color, int playouts) {
+        int wins = 0;
+        for (int i = 0; i < playouts; i++) {
+            if (play(board) == color) {
+                wins++;
+            }
+        }
+        return (double) wins / playouts;
+    }
+
+    /**
+     * Finds a set bit of a long by halving the long as long as that skips bits.
+     *
+     * @param word the long
+     * @param r    the number of set bits before the one to be found, less than bitCount(word)
+     * @return the index of the set bit
+     */
+    private static int select(long word, int r) {
+        int index = 0;
+        for (int width = 32; width >= 8; width >>>= 1) {
+            int low = Long.bitCount(word & ((1L << width) - 1));
+            if (r >= low) {
+                r -= low;
+                word >>>= width;
+                index += width;
+            }
+        }
+        for (; r > 0; r--) {
+            word &= word - 1;
+        }
+        return index + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Finds a set bit of a long with few set bits by clearing the lower ones.
+     *
+     * @param word the long
+     * @param r    the number of set bits before the one to be found, less than bitCount(word)
+     * @return the index of the set bit
+     */
+    private static int selectSmall(long word, int r) {
+        for (; r > 0; r--) {
+            word &= word - 1;
+        }
+        return Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Checks whether one of the current target fields of a color lies on the opponent's home row.
+     *
+     * @param color     the color of the player to move
+     * @param goalStart the dense index of the first field of the last number
+     * @return whether the player can reach the opponent's home row
+     */
+    private boolean reachesGoal(int color, int goalStart) {
+        int from = color == RED ? goalStart : 0;
+        int to = color == RED ? numbers * letters : letters;
+        for (int d = 0; d < 3; d++) {
+            for (int i = from >>> 6; i <= (to - 1) >>> 6; i++) {
+                long word = targets[d * words + i];
+                if (i == from >>> 6) {
+                    word &= -1L << (from & 63);
+                }
+                if (i == (to - 1) >>> 6 && (to & 63) != 0) {
+                    word &= (1L << (to & 63)) - 1;
+                }
+                if (word != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Calculates one long of a bitboard which has been masked and shifted as a whole.
+     *
+     * @param board the bitboard
+     * @param mask  the fields of the bitboard which are shifted
+     * @param i     the index of the long to be calculated
+     * @param shift the shift distance in bits, positive towards higher numbers, |shift| < 64
+     * @return the long with index i of the shifted bitboard
+     */
+    private long shift(long[] board, long[] mask, int i, int shift) {
+        if (shift > 0) {
+            return ((board[i] & mask[i]) << shift) | (i > 0 ? (board[i - 1] & mask[i - 1]) >>> (64 - shift) : 0L);
+        }
+        return ((board[i] & mask[i]) >>> -shift) | (i + 1 < words ? (board[i + 1] & mask[i + 1]) << (64 + shift) : 0L);
+    }
+
+    /**
+     * Creates the bitboards and masks for a board size, unless they exist already.
+     *
+     * @param newletters number of columns
+     * @param newnumbers number of rows
+     */
+    private void prepare(int newletters, int newnumbers) {
+        if (newletters == letters && newnumbers == numbers) {
+            return;
+        }
+        letters = newletters;
+        numbers = newnumbers;
+        words = (letters * numbers + 63) / 64;
+        boardMask = new long[words];
+        notFirstLetter = new long[words];
+        notLastLetter = new long[words];
+        for (int num = 0; num < numbers; num++) {
+            for (int let = 0; let < letters; let++) {
+                int d = num * letters + let;
+                long bit = 1L << d;
+                boardMask[d >>> 6] |= bit;
+                if (let > 0) {
+                    notFirstLetter[d >>> 6] |= bit;
+                }
+                if (let < letters - 1) {
+                    notLastLetter[d >>> 6] |= bit;
+                }
+            }
+        }
+        pieces = new long[2][words];
+        targets = new long[3 * words];
+        if (words == 1) {
+            long row = (1L << letters) - 1;
+            goalMask[RED] = row << ((numbers - 1) * letters);
+            goalMask[BLUE] = row;
+        }
+    }
+
+    /**
+     * @return the next random number of the xorshift* generator
+     */
+    private long nextLong() {
+        seed ^= seed >>> 12;
+        seed ^= seed << 25;
+        seed ^= seed >>> 27;
+        return seed * 0x2545F4914F6CDD1DL;
+    }
+
+    // ==== Test main ==============================================================================
+    /**
+     * Compares the speed of the playouts with random games played by makeMove and
+     * generateMoves on the board, from the initial position.
+     *
+     * @param args letters, numbers and time in ms per measurement, default 8 8 2000
+     * @throws PresetException if the board size is not valid
+     */
+    public static void main(String[] args) throws PresetException {
+        int letters = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int numbers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        long budget = (args.length > 2 ? Integer.parseInt(args[2]) : 2000) * 1000000L;
+
+        Board board = Board.create(letters, numbers);
+        for (int round = 0; round < 2; round++) {
+            for (boolean decisive : new boolean[]{false, true}) {
+                Playout playout = new Playout(1);
+                playout.setDecisive(decisive);
+                long count = 0;
+                long plies = 0;
+                int redWins = 0;
+                long start = System.nanoTime();
+                while (System.nanoTime() - start < budget) {
+                    if (playout.play(board) == RED) {
+                        redWins++;
+                    }
+                    plies += playout.getPlies();
+                    count++;
+                }
+                long time = System.nanoTime() - start;
+                System.out.println("Playout" + (decisive ? " decisive" : "") + ": " + count * 1000000000L / time
+                        + " playouts per second, " + plies / count + " moves, red wins "
+                        + String.format("%.3f", (double) redWins / count));
+            }
+
+            java.util.Random random = new java.util.Random(1);
+            int[] moves = new int[board.getMaxMoves()];
+            long[] undo = new long[letters * numbers * numbers];
+            long count = 0;
+            long start = System.nanoTime();
+            while (System.nanoTime() - start < budget) {
+                int depth = 0;
+                while (board.getStatus().isOk()) {
+                    int n = board.generateMoves(board.getTurn(), moves);
+                    if (n == 0) {
+                        break;
+                    }
+                    undo[depth++] = board.makeMove(moves[random.nextInt(n)]);
+                }
+                while (depth > 0) {
+                    board.unmakeMove(undo[--depth]);
+                }
+                count++;
+            }
+            System.out.println("makeMove: " + count * 1000000000L / (System.nanoTime() - start)
+                    + " playouts per second");
+        }
+    }
+}
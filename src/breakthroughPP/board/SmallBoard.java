@@ -0,0 +1,560 @@
+package breakthroughPP.board;
+
+import breakthroughPP.preset.*;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Board for sizes with at most 64 fields, which keeps the tokens of each color in a single long.
+ * The fields are numbered densely (number * letters + letter), so moves are generated with three
+ * shifts and masks per color instead of a loop over the longs of a {@link Board}. Tokens at the
+ * left and right border are kept from wrapping into the neighbouring row by file masks.
+ * <p>
+ * Outside the class everything is given in the square indices of {@link
+ * breakthroughPP.preset.Position#getSquare()}: packed moves, undo records, Zobrist keys and the
+ * order of the generated moves are the same as those of a Board of the same size, so both can
+ * be exchanged. Use {@link Board#create(int, int)} to get the fastest board for a size.
+ * <p>
+ * The bitboards, counters and move caches of Board stay null in a SmallBoard. Every method of
+ * Board which uses them is overridden here, see the class comment of {@link Board}.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author Fabiola Buschendorf
+ * @author H.A.
+ */
+public class SmallBoard extends Board {
+
+    /**
+     * Tables of this board size. Assigned in initializeFields, which is called by the constructor
+     * of Board, so this field must not have an initializer.
+     */
+    private Layout layout;
+
+    /**
+     * The tokens of each color (index RED and BLUE), one bit per dense field index
+     */
+    private long[] pieces;
+
+    /**
+     * Read-only views of the valid moves handed out for each color and the dense target fields
+     * they were built from
+     */
+    private ValidMoveSet[] moveSets;
+    private long[][] setTargets;
+
+    /**
+     * Version of the valid moves of each color, counted up whenever they change
+     */
+    private long[] movesVersion;
+
+    // ==== Constructor ====================================================================================
+    /**
+     * Creates a small board and its initial status and tokens.
+     *
+     * @param newletters number of columns
+     * @param newnumbers number of rows
+     * @throws PresetException if the size is out of the range of {@link Board#Board(int, int)}
+     *                         or the board has more than 64 fields
+     */
+    public SmallBoard(int newletters, int newnumbers) throws PresetException {
+        super(checkSize(newletters, newnumbers), newnumbers);
+    }
+
+    /**
+     * Copy constructor, the board to be copied may be any board with at most 64 fields.
+     *
+     * @param newboard the board to be copied
+     * @throws PresetException if newboard has more than 64 fields
+     */
+    public SmallBoard(Board newboard) throws PresetException {
+        this(newboard.getLetters(), newboard.getNumbers());
+
+        setStatus(new Status(newboard.getStatus()));
+        setVerifyStatus(newboard.isVerifyStatus());
+        whosTurn = newboard.whosTurn;
+        hashKey = newboard.hashKey;
+
+        if (newboard instanceof SmallBoard) {
+            pieces = ((SmallBoard) newboard).pieces.clone();
+        } else {
+            pieces = new long[2];
+            for (int d = 0; d < layout.fields; d++) {
+                int color = newboard.getColor(layout.toSquare[d]);
+                if (color != NONE) {
+                    pieces[color] |= 1L << d;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the size of a small board before the constructor of Board is called.
+     *
+     * @param letters number of columns
+     * @param numbers number of rows
+     * @return letters
+     * @throws PresetException if the board has more than 64 fields
+     */
+    private static int checkSize(int letters, int numbers) throws PresetException {
+        if (letters * numbers > Long.SIZE) {
+            throw new PresetException("A small board can not hold " + letters + "x" + numbers + " fields");
+        }
+        return letters;
+    }
+
+    @Override
+    public Board copy() throws PresetException {
+        return new SmallBoard(this);
+    }
+
+    // ==== Getter ====================================================================================
+
+    @Override
+    public int getColor(int square) {
+        int d = layout.toDense[square];
+        if (d < 0) {
+            return NONE;
+        }
+        return color(1L << d);
+    }
+
+    @Override
+    public int getColor(int num, int let) {
+        return color(1L << (num * layout.letters + let));
+    }
+
+    /**
+     * @param bit the bit of a dense field index
+     * @return the color of the field
+     */
+    private int color(long bit) {
+        if ((pieces[RED] & bit) != 0) return RED;
+        if ((pieces[BLUE] & bit) != 0) return BLUE;
+        return NONE;
+    }
+
+    @Override
+    public int getTokenCount(int color) {
+        if (color != RED && color != BLUE) {
+            return layout.fields - Long.bitCount(pieces[RED]) - Long.bitCount(pieces[BLUE]);
+        }
+        return Long.bitCount(pieces[color]);
+    }
+
+    @Override
+    public int getOccupiedLetters(int color) {
+        long tokens = pieces[color];
+        int occupied = 0;
+        for (int num = 0; num < layout.numbers; num++) {
+            occupied |= (int) (tokens >>> (num * layout.letters)) & layout.rowMask;
+        }
+        return occupied;
+    }
+
+    @Override
+    public int getFrontNumber(int color) {
+        long tokens = pieces[color];
+        if (tokens == 0) {
+            return -1;
+        }
+        if (color == RED) {
+            return (63 - Long.numberOfLeadingZeros(tokens)) / layout.letters;
+        }
+        return Long.numberOfTrailingZeros(tokens) / layout.letters;
+    }
+
+    @Override
+    protected int getRowTokens(int color, int num) {
+        return (int) (pieces[color] >>> (num * layout.letters)) & layout.rowMask;
+    }
+
+    @Override
+    protected boolean isRunner(int color, boolean ownTurn, int square) {
+        int dense = layout.toDense[square];
+        return (layout.cones[color][ownTurn ? 0 : 1][dense] & pieces[1 - color]) == 0
+                && (layout.paths[color][dense] & pieces[color]) == 0;
+    }
+
+    @Override
+    public int getAdvancement(int color) {
+        long tokens = pieces[color];
+        int sum = 0;
+        for (int num = 1; num < layout.numbers; num++) {
+            sum += num * Long.bitCount(tokens & ((long) layout.rowMask << (num * layout.letters)));
+        }
+        if (color == BLUE) {
+            sum = Long.bitCount(tokens) * (layout.numbers - 1) - sum;
+        }
+        return sum;
+    }
+
+    @Override
+    void getDenseTokens(int color, long[] dense) {
+        dense[0] = pieces[color];
+    }
+
+    // ==== Setter ====================================================================================
+
+    @Override
+    public void setColor(int num, int let, int newcolor) throws PresetException {
+        checkField(num, let, newcolor);
+        int square = num * ROW_STRIDE + let;
+        long bit = 1L << (num * layout.letters + let);
+        int oldcolor = color(bit);
+        if (oldcolor != NONE) {
+            pieces[oldcolor] &= ~bit;
+            hashKey ^= ZOBRIST_SQUARES[oldcolor][square];
+        }
+        if (newcolor == RED || newcolor == BLUE) {
+            pieces[newcolor] |= bit;
+            hashKey ^= ZOBRIST_SQUARES[newcolor][square];
+        }
+    }
+
+    // ==== Instancemethods ====================================================================================
+
+    @Override
+    public void initializeFields() {
+        layout = Layout.of(getLetters(), getNumbers());
+        pieces = new long[2];
+        int k = (3 + layout.numbers) / 4;
+        for (int h = 0; h < layout.numbers; h++) {
+            long row = (long) layout.rowMask << (h * layout.letters);
+            if (h < k)
+                pieces[RED] |= row;
+            else if (h >= layout.numbers - k)
+                pieces[BLUE] |= row;
+        }
+        hashKey = computeHashKey();
+        moveSets = new ValidMoveSet[2];
+        setTargets = new long[2][];
+        if (movesVersion == null) {
+            movesVersion = new long[2];
+        }
+    }
+
+    @Override
+    public long makeMove(int move) {
+        int color = whosTurn;
+        int startSquare = Move.getStartSquare(move);
+        int endSquare = Move.getEndSquare(move);
+        long endBit = 1L << layout.toDense[endSquare];
+
+        // The undo record: move, captured color, previous status, turn and last change
+        int captured = (pieces[1 - color] & endBit) != 0 ? 1 - color : NONE;
+        long undo = move
+                | (long) captured << UNDO_CAPTURED
+                | (long) getStatus().getStatus() << UNDO_STATUS
+                | (long) color << UNDO_TURN
+                | (long) (lastChange + 1) << UNDO_LAST_CHANGE;
+
+        pieces[color] ^= (1L << layout.toDense[startSquare]) | endBit;
+        if (captured != NONE) {
+            pieces[captured] &= ~endBit;
+        }
+        hashKey ^= moveKey(color, startSquare, endSquare, captured);
+
+        lastChange = move;
+        whosTurn = 1 - color;
+        if (isVerifyStatus() && computeHashKey() != hashKey) {
+            throw new IllegalStateException("Zobrist key differs from the board");
+        }
+        updateStatus();
+
+        return undo;
+    }
+
+    @Override
+    public void unmakeMove(long undo) {
+        int move = (int) (undo & UNDO_MOVE_MASK);
+        int captured = (int) (undo >>> UNDO_CAPTURED) & 3;
+        int color = (int) (undo >>> UNDO_TURN) & 1;
+        int startSquare = Move.getStartSquare(move);
+        int endSquare = Move.getEndSquare(move);
+        long endBit = 1L << layout.toDense[endSquare];
+
+        pieces[color] ^= (1L << layout.toDense[startSquare]) | endBit;
+        if (captured != NONE) {
+            pieces[captured] |= endBit;
+        }
+
+        hashKey ^= moveKey(color, startSquare, endSquare, captured);
+        getStatus().setStatus((int) (undo >>> UNDO_STATUS) & 7);
+        whosTurn = color;
+        lastChange = (int) (undo >>> UNDO_LAST_CHANGE) - 1;
+        if (isVerifyStatus() && computeHashKey() != hashKey) {
+            throw new IllegalStateException("Zobrist key differs from the board");
+        }
+    }
+
+    /**
+     * Checks if one player reached opponent's side or if one player is dead/ has no tokens and
+     * then sets status. With one long per color this takes constant time.
+     *
+     * @see breakthroughPP.preset.Status
+     */
+    @Override
+    public void updateStatus() {
+        Status status = getStatus();
+        if ((pieces[BLUE] & layout.goalMask[BLUE]) != 0) status.setStatus(BLUE_WIN);
+        if ((pieces[RED] & layout.goalMask[RED]) != 0) status.setStatus(RED_WIN);
+        if (pieces[BLUE] == 0) status.setStatus(RED_WIN);
+        if (pieces[RED] == 0) status.setStatus(BLUE_WIN);
+    }
+
+    @Override
+    public ValidMoveSet getValidMoveSet(int color) throws PresetException {
+        if (color != RED && color != BLUE) {
+            throw new PresetException("The color you are calling getValidMoveSet with is not specified" +
+                    " in Setting");
+        }
+        refreshMoveSet(color);
+        return moveSets[color];
+    }
+
+    @Override
+    public long getMovesVersion(int color) {
+        refreshMoveSet(color);
+        return movesVersion[color];
+    }
+
+    /**
+     * Creates the read-only view of the valid moves of a color again if they have changed since
+     * it was created, and counts up their version.
+     *
+     * @param color color of the player, RED or BLUE
+     */
+    private void refreshMoveSet(int color) {
+        long[] targets = new long[3];
+        for (int direction = 0; direction < 3; direction++) {
+            targets[direction] = targets(color, direction);
+        }
+        if (moveSets[color] != null && Arrays.equals(targets, setTargets[color])) {
+            return;
+        }
+
+        // The view takes the target fields in square indices like a Board
+        long[][] squareTargets = new long[3][getGeometry().getWords()];
+        for (int direction = 0; direction < 3; direction++) {
+            for (long t = targets[direction]; t != 0; t &= t - 1) {
+                int square = layout.toSquare[Long.numberOfTrailingZeros(t)];
+                squareTargets[direction][square >>> 6] |= 1L << square;
+            }
+        }
+        int forward = color == RED ? ROW_STRIDE : -ROW_STRIDE;
+        setTargets[color] = targets;
+        moveSets[color] = new ValidMoveSet(squareTargets, new int[]{forward - 1, forward, forward + 1},
+                ++movesVersion[color]);
+    }
+
+    /**
+     * Writes all valid moves for a player with a certain color into a buffer in the same order as
+     * {@link Board#generateMoves(int, int[])}: the moves to two numbers (rows) at a time, each
+     * with the diagonal moves to the lower letter first, then the straight and then the diagonal
+     * moves to the higher letter.
+     *
+     * @param color color of the player whose valid moves are to be calculated, RED or BLUE
+     * @param moves buffer the moves are written to starting at index 0
+     * @return the number of moves written to the buffer
+     */
+    @Override
+    public int generateMoves(int color, int[] moves) {
+        int[] shifts = layout.shifts[color];
+        long left = targets(color, 0);
+        long straight = targets(color, 1);
+        long right = targets(color, 2);
+        int count = 0;
+
+        for (long pair : layout.pairMasks) {
+            count = addMoves(left & pair, shifts[0], moves, count);
+            count = addMoves(straight & pair, shifts[1], moves, count);
+            count = addMoves(right & pair, shifts[2], moves, count);
+        }
+
+        return count;
+    }
+
+    @Override
+    public int countMoves(int color) {
+        return Long.bitCount(targets(color, 0)) + Long.bitCount(targets(color, 1))
+                + Long.bitCount(targets(color, 2));
+    }
+
+    /**
+     * Calculates the target fields of all moves of a color in one direction.
+     *
+     * @param color     color of the player, RED or BLUE
+     * @param direction 0 for the diagonal moves to the lower letter, 1 for the straight moves
+     *                  and 2 for the diagonal moves to the higher letter
+     * @return the dense target fields
+     */
+    private long targets(int color, int direction) {
+        long own = pieces[color];
+        int shift = layout.shifts[color][direction];
+        long shifted = shift > 0 ? own << shift : own >>> -shift;
+        long allowed = direction == 1 ? ~(own | pieces[1 - color]) : ~own;
+        return shifted & allowed & layout.targetMasks[direction];
+    }
+
+    /**
+     * Packs the moves to dense target fields into a buffer.
+     *
+     * @param targets dense target fields
+     * @param shift   distance from the start to the target field in dense indices
+     * @param moves   buffer the moves are written to
+     * @param count   number of moves in the buffer so far
+     * @return the number of moves in the buffer
+     */
+    private int addMoves(long targets, int shift, int[] moves, int count) {
+        int[] toSquare = layout.toSquare;
+        while (targets != 0) {
+            int end = Long.numberOfTrailingZeros(targets);
+            moves[count++] = Move.encode(toSquare[end - shift], toSquare[end]);
+            targets &= targets - 1;
+        }
+        return count;
+    }
+
+    /**
+     * Calculates the Zobrist key of the current position from scratch, with the same keys as a
+     * Board.
+     *
+     * @return the Zobrist key of the tokens on the board and whose turn it is
+     */
+    private long computeHashKey() {
+        long key = whosTurn == BLUE ? ZOBRIST_BLUE_TURN : 0L;
+        for (int color = RED; color <= BLUE; color++) {
+            for (long t = pieces[color]; t != 0; t &= t - 1) {
+                key ^= ZOBRIST_SQUARES[color][layout.toSquare[Long.numberOfTrailingZeros(t)]];
+            }
+        }
+        return key;
+    }
+
+    // ==== Layout ====================================================================================
+
+    /**
+     * Masks and index tables of a small board size, shared by all boards of that size.
+     */
+    private static final class Layout {
+
+        /** Shared instances by letters * 32 + numbers */
+        private static final ConcurrentHashMap<Integer, Layout> cache = new ConcurrentHashMap<>();
+
+        final int letters;
+        final int numbers;
+        final int fields;
+
+        /** Bits of the letters of one number (row) */
+        final int rowMask;
+
+        /** Bits of the opponent's home row each color has to reach (index RED and BLUE) */
+        final long[] goalMask = new long[2];
+
+        /**
+         * Fields which can be reached in each direction: the diagonal moves to the lower letter
+         * can not end on the last letter, the ones to the higher letter not on the first letter
+         */
+        final long[] targetMasks = new long[3];
+
+        /** Dense distance from the start to the target field for each color and direction */
+        final int[][] shifts;
+
+        /** Bits of two numbers (rows) each, in the order the moves are generated */
+        final long[] pairMasks;
+
+        /** Square index of each dense index and dense index of each square index (-1 if none) */
+        final int[] toSquare;
+        final int[] toDense;
+
+        /**
+         * Forward cones and straight paths to the goal of the tokens as in {@link Geometry},
+         * indexed by [color][0 if the player of the token is to move, else 1][dense index] and
+         * [color][dense index]
+         */
+        final long[][][] cones;
+        final long[][] paths;
+
+        private Layout(int newletters, int newnumbers) {
+            letters = newletters;
+            numbers = newnumbers;
+            fields = letters * numbers;
+            rowMask = (1 << letters) - 1;
+
+            long boardMask = fields == Long.SIZE ? -1L : (1L << fields) - 1;
+            long firstFile = 0L;
+            for (int h = 0; h < numbers; h++) {
+                firstFile |= 1L << (h * letters);
+            }
+            long lastFile = firstFile << (letters - 1);
+            goalMask[RED] = (long) rowMask << ((numbers - 1) * letters);
+            goalMask[BLUE] = rowMask;
+            targetMasks[0] = boardMask & ~lastFile;
+            targetMasks[1] = boardMask;
+            targetMasks[2] = boardMask & ~firstFile;
+            shifts = new int[][]{{letters - 1, letters, letters + 1}, {-letters - 1, -letters, -letters + 1}};
+
+            pairMasks = new long[(numbers + 1) / 2];
+            for (int p = 0; p < pairMasks.length; p++) {
+                long rows = (long) rowMask << (2 * p * letters);
+                if (2 * p + 1 < numbers) {
+                    rows |= (long) rowMask << ((2 * p + 1) * letters);
+                }
+                pairMasks[p] = rows;
+            }
+
+            toSquare = new int[fields];
+            toDense = new int[numbers * ROW_STRIDE];
+            Arrays.fill(toDense, -1);
+            for (int h = 0; h < numbers; h++) {
+                for (int l = 0; l < letters; l++) {
+                    toSquare[h * letters + l] = h * ROW_STRIDE + l;
+                    toDense[h * ROW_STRIDE + l] = h * letters + l;
+                }
+            }
+
+            cones = new long[2][2][fields];
+            paths = new long[2][fields];
+            for (int d = 0; d < fields; d++) {
+                int h = d / letters;
+                int l = d % letters;
+                for (int color = RED; color <= BLUE; color++) {
+                    int distance = color == RED ? numbers - 1 - h : h;
+                    int forward = color == RED ? 1 : -1;
+                    for (int i = 1; i <= distance; i++) {
+                        int row = (h + i * forward) * letters;
+                        paths[color][d] |= 1L << (row + l);
+                        for (int turn = 0; turn < 2; turn++) {
+                            int width = Geometry.getConeWidth(turn == 0, i);
+                            long cone = (long) rowMask & ~((1L << Math.max(0, l - width)) - 1)
+                                    & ((1L << Math.min(letters, l + width + 1)) - 1);
+                            cones[color][turn][d] |= cone << row;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * @param letters number of columns
+         * @param numbers number of rows
+         * @return the shared layout of this size
+         */
+        static Layout of(int letters, int numbers) {
+            Integer key = letters * ROW_STRIDE + numbers;
+            Layout layout = cache.get(key);
+            if (layout == null) {
+                layout = new Layout(letters, numbers);
+                Layout known = cache.putIfAbsent(key, layout);
+                if (known != null) {
+                    layout = known;
+                }
+            }
+            return layout;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package breakthroughPP.board;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import breakthroughPP.preset.*;
+
+/**
+ * Read-only set of the valid moves of one color, taken from the move cache of a {@link Board}.
+ * The moves are stored as the bitboards of their target fields for each of the three directions,
+ * so contains works in constant time and no Move objects are held. The set does not change when
+ * the board changes, its version tells whether it is still up to date (see
+ * {@link Board#getMovesVersion(int)}).
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author Fabiola Buschendorf
+ */
+public class ValidMoveSet extends AbstractSet<Move> {
+
+	/** Target fields of the moves [direction][long], see {@link Board#ROW_STRIDE} */
+	private final long[][] targets;
+
+	/** Distance from the start to the target field in bits for each direction */
+	private final int[] shifts;
+
+	/** Number of moves in the set */
+	private final int size;
+
+	/** Version of the moves of the board this set was taken from */
+	private final long version;
+
+	// ==== Constructors ==============================================================================
+
+	/**
+	 * Creates a set of the moves to the given target fields.
+	 * @param newtargets target fields of the moves for each direction, they are not copied
+	 * @param newshifts distance from the start to the target field for each direction
+	 * @param newversion version of the moves of the board
+	 */
+	ValidMoveSet(long[][] newtargets, int[] newshifts, long newversion){
+		targets = newtargets;
+		shifts = newshifts;
+		version = newversion;
+
+		int count = 0;
+		for(long[] direction : targets){
+			for(long word : direction){
+				count += Long.bitCount(word);
+			}
+		}
+		size = count;
+	}
+
+	// ==== Getter ====================================================================================
+
+	/**
+	 * @return the version of the moves of the board this set was taken from
+	 */
+	public long getVersion(){
+		return version;
+	}
+
+	// ==== Interface functions/ methods ==============================================================
+
+	@Override
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * @param o the object to look for
+	 * @return true if o is a Move contained in this set
+	 */
+	@Override
+	public boolean contains(Object o){
+		if(!(o instanceof Move)){
+			return false;
+		}
+		Move move = (Move) o;
+		if(move.getStart() == null || move.getEnd() == null){
+			return false;
+		}
+		int start = move.getStart().getSquare();
+		int end = move.getEnd().getSquare();
+		for(int d = 0; d < shifts.length; d++){
+			if(end - start == shifts[d]){
+				return (end >>> 6) < targets[d].length && (targets[d][end >>> 6] & (1L << end)) != 0;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return an iterator over the moves, which are created while iterating
+	 */
+	@Override
+	public Iterator<Move> iterator(){
+		return new Iterator<Move>(){
+
+			/** Direction and long of the next move */
+			private int d = 0;
+			private int i = 0;
+
+			/** Remaining target fields in the current long */
+			private long remaining = targets[0][0];
+
+			@Override
+			public boolean hasNext(){
+				while(remaining == 0){
+					if(d == targets.length){
+						return false;
+					}
+					if(++i == targets[d].length){
+						i = 0;
+						if(++d == targets.length){
+							return false;
+						}
+					}
+					remaining = targets[d][i];
+				}
+				return true;
+			}
+
+			@Override
+			public Move next(){
+				if(!hasNext()){
+					throw new NoSuchElementException();
+				}
+				int end = i * 64 + Long.numberOfTrailingZeros(remaining);
+				remaining &= remaining - 1;
+				try{
+					return Move.decode(Move.encode(end - shifts[d], end));
+				}catch(PresetException pe){
+					// Only fields on the board are set in the bitboards
+					throw new IllegalStateException(pe.getMessage());
+				}
+			}
+		};
+	}
+}
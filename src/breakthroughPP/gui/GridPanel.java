@@ -2,7 +2,7 @@ package breakthroughPP.gui;
 
 import java.awt.*;
 import java.awt.event.*;
-import java.util.HashSet;
+import java.util.Set;
 import javax.swing.JPanel;
 
 import breakthroughPP.preset.*;
@@ -34,8 +34,10 @@ public class GridPanel extends JPanel implements Setting, Requestable, Showable,
 	private Move currentMove;
 	private GameButton[] swapArrayGameButton; // swap to GameButtons
 	private int buttonSize;
-	private HashSet<Move> allPossibleMovesOfRed;
-	private HashSet<Move> allPossibleMovesOfBlue;
+	private Set<Move> allPossibleMovesOfRed;
+	private Set<Move> allPossibleMovesOfBlue;
+	private long movesVersionOfRed; // version of the valid moves in allPossibleMovesOfRed
+	private long movesVersionOfBlue;
 	
 	//Special Gui equipment -------------------------
 	private int dimX;
@@ -88,11 +90,11 @@ public class GridPanel extends JPanel implements Setting, Requestable, Showable,
 		return currentMove;
 	}
 
-	public HashSet<Move> getAllPossibleMovesOfRed(){
+	public Set<Move> getAllPossibleMovesOfRed(){
 		return allPossibleMovesOfRed;
 	}
 
-	public HashSet<Move> getAllPossibleMovesOfBlue(){
+	public Set<Move> getAllPossibleMovesOfBlue(){
 		return allPossibleMovesOfBlue;
 	}
 
@@ -180,14 +182,14 @@ public class GridPanel extends JPanel implements Setting, Requestable, Showable,
 	}
 
 	/**
-     * Calculate all valid moves for a player with a certain color by accessing the function {@link
-     * breakthroughPP.board.Board#getValidMoves(int color)}.
+     * Get all valid moves for a player with a certain color by accessing the function {@link
+     * breakthroughPP.board.Board#getValidMoveSet(int color)}.
      * @param color color of the player whose valid moves are to be calculated (See @link{#Setting}
-     * @return a set containing all valid moves for the color.
+     * @return a cached read-only set containing all valid moves for the color.
      * @throws PresetException if a Position in this function throws one
      */
-	public HashSet<Move> getValidMoves(int color) throws PresetException{
-	 return storage.getValidMoves(color);
+	public Set<Move> getValidMoves(int color) throws PresetException{
+	 return storage.getValidMoveSet(color);
 	}
 
 
@@ -208,19 +210,23 @@ public class GridPanel extends JPanel implements Setting, Requestable, Showable,
 
 	/**
 	 * According to the playerInt, the type of the player specified by its color, the valid moves
-	 * are updated
+	 * are updated. They are only fetched again if their version on the board has changed.
 	 */
 	protected void updateAllValidMoves(){
 		try{
-			if(playerInt==RED){
-				allPossibleMovesOfRed = getValidMoves(playerInt);
-			}
-			if(playerInt==BLUE){
-				allPossibleMovesOfBlue = getValidMoves(playerInt);
+			if(playerInt==RED || playerInt==2){
+				long version = storage.getMovesVersion(RED);
+				if(allPossibleMovesOfRed == null || version != movesVersionOfRed){
+					allPossibleMovesOfRed = getValidMoves(RED);
+					movesVersionOfRed = version;
+				}
 			}
-			if(playerInt ==2){
-				allPossibleMovesOfRed = getValidMoves(0);
-				allPossibleMovesOfBlue = getValidMoves(1);
+			if(playerInt==BLUE || playerInt==2){
+				long version = storage.getMovesVersion(BLUE);
+				if(allPossibleMovesOfBlue == null || version != movesVersionOfBlue){
+					allPossibleMovesOfBlue = getValidMoves(BLUE);
+					movesVersionOfBlue = version;
+				}
 			}
 
 		}catch (PresetException e){
@@ -268,19 +274,11 @@ public class GridPanel extends JPanel implements Setting, Requestable, Showable,
 	 */
 	private boolean checkValidMove(GameButton start, GameButton end){
 		Move move = createMove(start,end);
-		if(playerInt == RED){
-			return allPossibleMovesOfRed.contains(move);
-		}
-		if (playerInt==BLUE){
-			return allPossibleMovesOfBlue.contains(move);
+		if(playerInt == RED || playerInt == BLUE){
+			return storage.isLegal(playerInt, move);
 		}
 		if(playerInt==2){
-			if(this.storage.turn()==RED){
-				return allPossibleMovesOfRed.contains(move);
-			}
-			if(this.storage.turn()==BLUE){
-				return allPossibleMovesOfBlue.contains(move);
-			}
+			return storage.isLegal(storage.turn(), move);
 		}		
 		return false;
 	}
@@ -410,6 +408,9 @@ public class GridPanel extends JPanel implements Setting, Requestable, Showable,
 
 		//Get information from BordStorage
 		storage = newstorage; 
+		// The versions of the valid moves belong to the board of the storage
+		allPossibleMovesOfRed = null;
+		allPossibleMovesOfBlue = null;
 		status  = storage.getStatus();
 		setWhosTurn(storage.turn());
 		
@@ -2,7 +2,7 @@ package breakthroughPP.gui;
 
 import java.awt.*;
 import java.awt.event.*;
-import java.util.HashSet;
+import java.util.Set;
 
 import javax.swing.JComponent;
 
@@ -23,8 +23,8 @@ class MyGlassPane extends JComponent implements ItemListener, Setting {
 	
 	// Fields of an instance of the class
 	private GridPanel gridPanel;
-	private HashSet<Move> allPossibleMovesOfRed;
-	private HashSet<Move> allPossibleMovesOfBlue;
+	private Set<Move> allPossibleMovesOfRed;
+	private Set<Move> allPossibleMovesOfBlue;
     private Point p;
     
     
@@ -105,7 +105,7 @@ class MyGlassPane extends JComponent implements ItemListener, Setting {
      * @param g The Graphics reference where to paint the lines on
      * @param moveHashSet set of the possible moves which should be represented by lines 
      */
-    public void paintMoves(Graphics g, HashSet<Move> moveHashSet){
+    public void paintMoves(Graphics g, Set<Move> moveHashSet){
     	
         for(Move move : moveHashSet){
      	   if(move != null){
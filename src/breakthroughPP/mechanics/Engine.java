@@ -324,7 +324,7 @@ public class Engine implements Setting, Storable, IOTransfer {
 
 			// Init of the board
 			try{
-				internalBoard = new Board(getColumns(),getRows());		// rows, columns
+				internalBoard = Board.create(getColumns(),getRows());		// rows, columns
 			} catch(PresetException e){
 				e.printStackTrace();
 				throw new Exception("Failure to initialise the board" +
@@ -369,7 +369,7 @@ public class Engine implements Setting, Storable, IOTransfer {
 				System.err.println("Exiting");
 				System.exit(0);
 			}
-            internalBoard = new Board(gameState.getWidth(),gameState.getHeight());
+            internalBoard = Board.create(gameState.getWidth(),gameState.getHeight());
 
             // IO Objects
             outputMethodRed = new TextOutput(colorTerminal);
@@ -534,8 +534,16 @@ public class Engine implements Setting, Storable, IOTransfer {
 			showDebug("Move requested");
 			move = player.request();
 			showDebug("Move received: " + move);
+			String statistics = player instanceof AbstractPlayer ? ((AbstractPlayer) player).getStatistics() : null;
+			if(statistics != null){
+				showDebug(statistics);
+			}
 
-			if(move != null){
+			if(move != null && !internalBoard.isLegal(move)){
+				// e.g. a move received from the network, it is not passed on to the opponent
+				status = new Status(Status.ILLEGAL);
+				move = null;
+			}else if(move != null){
 				// put it on the internal board
 				status = internalBoard.move(move);
 				showDebug("Status after placing move " + move + " on the board: " + status);
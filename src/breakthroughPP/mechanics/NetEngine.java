@@ -5,6 +5,8 @@ import breakthroughPP.gui.Showable;
 import breakthroughPP.simpleIO.*;
 import breakthroughPP.board.Storable;
 import breakthroughPP.players.*;
+import breakthroughPP.search.ParallelMonteCarloSearcher;
+import breakthroughPP.search.TimeControl;
 import breakthroughPP.gui.MainFrame;
 
 import java.rmi.registry.*;
@@ -32,19 +34,21 @@ import javax.swing.JOptionPane;
  * -d							Shows the board of the engine and additional information about the
  *								state of the game, default is off
  * -s <rows> <columns>			Sets the dimensions of the board, default: 26 26
- * -m IP|SC|AC|AI IP|SC|AC|AI   Sets the types of players: 
+ * -m IP|SC|AC|AI|AB|MC IP|SC|AC|AI|AB|MC Sets the types of players: 
  *									IP: Interactive Player
  *									SC: Simple computer player (random moves)
  *									AC: advanced computer player
  *									AI: artificial intelligent player
+ *									AB: alpha-beta search player
+ *									MC: Monte Carlo tree search player
  *								default: IP IP
  * -b <int> <int>				Defines the way of input and output for the Players specified with
  *								option "-m"
  *									0:	IP:			input and output inside the terminal, default
- *										SC|AC|AI:	no input or output at all, default
+ *										SC|AC|AI|AB|MC:	no input or output at all, default
  *									1:	IP:			uses a gui as input and output method
- *										SC|AC|AI	output in the terminal
- * -w <int>						Allowed only with -m SC|AC|AI SC|AC|AI option only. The integer 
+ *										SC|AC|AI|AB|MC	output in the terminal
+ * -w <int>						Allowed only with -m SC|AC|AI|AB|MC SC|AC|AI|AB|MC option only. The integer 
  *								defines the delay time in millisconds which is added to the move to
  *								delay an opponent's move, default: 0 ms
  *									with -n local: shows both players on one gui
@@ -65,6 +69,17 @@ import javax.swing.JOptionPane;
  *									first argument of "-m"
  * -t <int>						Approximate time in s waiting for a partner for "-n receive <IP>":
  *								default is 10 s
+ * -a <int>						Time in ms an AB, MC, AI or AC player may search for one move,
+ *								default: 1000 ms
+ * -k <int>						Time in s an AB, AI or AC player has for the whole game, its moves get
+ *								soft and hard deadlines from this clock instead of "-a", default: off
+ * -j <int>						Number of threads an AB or MC player searches with, default: 1
+ * -o <int>						Number of nodes of the tree of an MC player with several threads,
+ *								default: 2097152
+ * -y							AB players use the reproducible fork/join search, which finds the
+ *								same moves with any number of threads, default is off
+ * -p							AB players keep searching during the opponent's turn (pondering),
+ *								default is off
  * -c							In case your are on a linux system you can make the terminal colorful,
  *								everywhere else you get an default output, default is off.
  *
@@ -87,6 +102,12 @@ public class NetEngine extends Engine {
 	private String remoteName;
 	private int maxTime;
 	private int waitingTime;
+	private int searchTime;
+	private int searchThreads;
+	private int poolSize;
+	private boolean forkJoin;
+	private boolean pondering;
+	private int gameTime;
 
 
 
@@ -106,6 +127,12 @@ public class NetEngine extends Engine {
 		remoteName		= "";
 		maxTime			= 10; //s
 		waitingTime		= 0;  // ms
+		searchTime		= AlphaBetaPlayer.DEFAULT_TIME_BUDGET; // ms
+		searchThreads	= 1;
+		poolSize		= ParallelMonteCarloSearcher.DEFAULT_POOL_SIZE;
+		forkJoin		= false;
+		pondering		= false;
+		gameTime		= 0;  // s, off
 	}
 
 // ==== Getter ====================================================================================
@@ -247,6 +274,72 @@ public class NetEngine extends Engine {
 							"\nThe argument must be an non negative integer if it is set");
 					}
 				}
+
+				// Time budget of a move for AB and MC Player
+				else if(args[n].equals("-a")){
+					try{
+						searchTime = readNumber(args,++n);
+					}catch(IllegalArgumentException iae){
+						throw new IllegalArgumentException("Illegal argument for option \"-a\"" +
+							"\n" +iae.getMessage());
+					}
+					if(searchTime <= 0){
+						throw new IllegalArgumentException("Illegal argument for option \"-a\"" +
+							"\nThe argument must be an integer greater than zero");
+					}
+				}
+
+				// Clock for the whole game of AB, AI and AC Player
+				else if(args[n].equals("-k")){
+					try{
+						gameTime = readNumber(args,++n);
+					}catch(IllegalArgumentException iae){
+						throw new IllegalArgumentException("Illegal argument for option \"-k\"" +
+							"\n" +iae.getMessage());
+					}
+					if(gameTime <= 0){
+						throw new IllegalArgumentException("Illegal argument for option \"-k\"" +
+							"\nThe argument must be an integer greater than zero");
+					}
+				}
+
+				// Number of search threads for AB Player
+				else if(args[n].equals("-j")){
+					try{
+						searchThreads = readNumber(args,++n);
+					}catch(IllegalArgumentException iae){
+						throw new IllegalArgumentException("Illegal argument for option \"-j\"" +
+							"\n" +iae.getMessage());
+					}
+					if(searchThreads <= 0){
+						throw new IllegalArgumentException("Illegal argument for option \"-j\"" +
+							"\nThe argument must be an integer greater than zero");
+					}
+				}
+
+				// Nodes of the tree of MC Player with several threads
+				else if(args[n].equals("-o")){
+					try{
+						poolSize = readNumber(args,++n);
+					}catch(IllegalArgumentException iae){
+						throw new IllegalArgumentException("Illegal argument for option \"-o\"" +
+							"\n" +iae.getMessage());
+					}
+					if(poolSize <= 0){
+						throw new IllegalArgumentException("Illegal argument for option \"-o\"" +
+							"\nThe argument must be an integer greater than zero");
+					}
+				}
+
+				// Reproducible search for AB Player
+				else if(args[n].equals("-y")){
+					forkJoin = true;
+				}
+
+				// Search during the opponent's turn for AB Player
+				else if(args[n].equals("-p")){
+					pondering = true;
+				}
 				
 
 				// Gather the non fitting arguments
@@ -582,7 +675,13 @@ public class NetEngine extends Engine {
 			"ShowOption for player 1: " + showOption[0] + "\n\t" +  
 			"ShowOption for player 2: " + showOption[1] + "\n\t" +  
 			"Waiting time (s): " + maxTime + "\n\t" +
-			"Delay time (ms): " + waitingTime + "\n";
+			"Delay time (ms): " + waitingTime + "\n\t" +
+			"Search time of computer players (ms): " + searchTime + "\n\t" +
+			"Game time of AB, AI and AC players (s): " + (gameTime == 0 ? "off" : gameTime) + "\n\t" +
+			"Search threads of AB and MC players: " + searchThreads + "\n\t" +
+			"Tree nodes of MC players with several threads: " + poolSize + "\n\t" +
+			"Fork/join search of AB players: " + forkJoin + "\n\t" +
+			"Pondering of AB players: " + pondering + "\n";
 	}
 
 	/**
@@ -601,6 +700,24 @@ public class NetEngine extends Engine {
      */
 	private AbstractPlayer createTypeOfPlayer(PlayerType type, int color) throws RemoteException, Exception {
 		Player player = PlayerFactory.getInstance().create(this, type, color);
+		if(player instanceof AlphaBetaPlayer){
+			((AlphaBetaPlayer) player).setTimeBudget(searchTime);
+			((AlphaBetaPlayer) player).setThreads(searchThreads);
+			((AlphaBetaPlayer) player).setForkJoin(forkJoin);
+			((AlphaBetaPlayer) player).setPondering(pondering);
+		}
+		if(player instanceof AIPlayer || player instanceof AdvancedPlayer){
+			((AbstractPlayer) player).setTimeControl(new TimeControl(searchTime));
+		}
+		if(gameTime > 0 && (player instanceof AlphaBetaPlayer || player instanceof AIPlayer
+				|| player instanceof AdvancedPlayer)){
+			((AbstractPlayer) player).setTimeControl(new TimeControl(gameTime * 1000L, 0));
+		}
+		if(player instanceof MonteCarloPlayer){
+			((MonteCarloPlayer) player).setTimeBudget(searchTime);
+			((MonteCarloPlayer) player).setThreads(searchThreads);
+			((MonteCarloPlayer) player).setPoolSize(poolSize);
+		}
 		player.init(getColumns(),getRows(), color);
 		return (AbstractPlayer) player;
 	}
@@ -744,19 +861,21 @@ public class NetEngine extends Engine {
 				"-d \t \t \t Shows the board of the engine and additional information about the "+
 								" state of the game, default is off \n"+
  				"-s <rows> <columns>   Sets the dimensions of the board, default: 26 26\n"+
-				"-m IP|SC|AC|AI IP|SC|AC|AI   \t Sets the types of players: \n"+
+				"-m IP|SC|AC|AI|AB|MC IP|SC|AC|AI|AB|MC \t Sets the types of players: \n"+
 				"\t \t \t \t IP: Interactive Player\n"+
 				"\t \t \t \t SC: Simple computer player (random moves)\n"+
  				"\t \t \t \t AC: advanced computer player\n" +
  				"\t \t \t \t AI: artificial intelligent player\n" +
+ 				"\t \t \t \t AB: alpha-beta search player\n" +
+ 				"\t \t \t \t MC: Monte Carlo tree search player\n" +
  				"\t \t \t \t default: IP IP\n" +
 				"-b <int> <int>	\t Defines the way of input and output for the Players specified with" +
 								" option \"-m\"\n" +
 				"\t \t \t \t 0: IP: input and output inside the terminal, default\n"+
-				"\t \t \t \t    SC|AC|AI: no input or output at all, default\n"+
+				"\t \t \t \t    SC|AC|AI|AB|MC: no input or output at all, default\n"+
 				"\t \t \t \t 1: IP: uses a gui as input and output method\n"+
-				"\t \t \t \t    SC|AC|AI output in the terminal\n" +
-				"-w <int> \t \t Allowed only with -m SC|AC|AI SC|AC|AI option only. The integer defines"+ 
+				"\t \t \t \t    SC|AC|AI|AB|MC output in the terminal\n" +
+				"-w <int> \t \t Allowed only with -m SC|AC|AI|AB|MC SC|AC|AI|AB|MC option only. The integer defines"+ 
 							" the delay time in millisconds \n\t \t \t which is added to the move "+ 
 							"to delay an opponents move, default: 0 ms\n"+
 				"\t \t \t \t    -n local: shows both players on one gui\n"+
@@ -777,6 +896,16 @@ public class NetEngine extends Engine {
 								"argument of \"-m\"\n"+
 				"-t <int> \t \t Approximate time in s waiting for a partner for \"-n receive <IP>\":" + 
 							"default is 10 s\n"+
+				"-a <int> \t \t Time in ms an AB, MC, AI or AC player may search for one move, default: 1000 ms\n"+
+				"-k <int> \t \t Time in s an AB, AI or AC player has for the whole game, its moves get"+
+							" soft and hard deadlines from this clock instead of \"-a\", default: off\n"+
+				"-j <int> \t \t Number of threads an AB or MC player searches with, default: 1\n"+
+				"-o <int> \t \t Number of nodes of the tree of an MC player with several threads,"+
+							" default: 2097152\n"+
+				"-y \t \t \t AB players use the reproducible fork/join search, which finds the same"+
+							" moves with any number of threads, default is off\n"+
+				"-p \t \t \t AB players keep searching during the opponent's turn (pondering),"+
+							" default is off\n"+
 				"-c	\t \t \t In case your are on a linux system you can make the terminal colorful,"+
  							" everywhere else this has no effect, default is off" +
 				"\n\nGame programmed by CodeSalat\n");
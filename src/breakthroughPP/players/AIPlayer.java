@@ -6,12 +6,13 @@ import breakthroughPP.preset.*;
 import breakthroughPP.board.Board;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 import breakthroughPP.gui.Showable;
+import breakthroughPP.search.ProofNumberSearcher;
 
 /**
  * Implementation of an very intelligent player.
@@ -33,6 +34,15 @@ public class AIPlayer extends AbstractPlayer {
 	/** Random number generator for random move selection */
 	private final Random random = new Random();
 	
+	/** Size of the table of the solver in MB */
+	public static final int SOLVER_TABLE_SIZE = 8;
+	
+	/** Most positions the solver visits per move */
+	private static final long SOLVER_NODES = 2000000;
+	
+	/** Distance of a token to its goal from which on a breakthrough is imminent */
+	private static final int SOLVER_ROWS = 3;
+	
 	// Each field has a value, the higher it is, the better the move to that field
 	SectionProbabilities[][] secProbRed;
 	SectionProbabilities[][] secProbBlue;
@@ -51,22 +61,14 @@ public class AIPlayer extends AbstractPlayer {
 	*/
 	private int opponentColor;
 	
-	// For breakthrough Algorithm
-	private Move[] breakMoves = null;
-	private Move[] moveChain;
-	private Move goodMove;	
-	private ArrayList<Position> hurdles;
-	private ArrayList<Position> threats;
-	private ArrayList<Position> meFirstStage;
-	private ArrayList<Position> meSecondStage;
-	private ArrayList<Position> meThirdStage;
-	
-	private ArrayList<Position> opFirstStage;
-	private ArrayList<Position> opSecondStage;
-	private ArrayList<Position> opThirdStage;
-
-	private int k =-1;
 	private Prometheus vit;
+	
+	// Proves forced wins and losses near the end of the game
+	private ProofNumberSearcher solver;
+	
+	// Buffers for the packed moves of both players
+	private int[] ownMoves;
+	private int[] opponentMoves;
 	// ======= Constructor ===============================================================================
 
 	public AIPlayer(Requestable input, Showable output) {
@@ -95,6 +97,9 @@ public class AIPlayer extends AbstractPlayer {
 		opponentColor = color == RED ? BLUE : RED;
 		
 		vit = new Prometheus(board);		
+		if(solver == null){
+			solver = new ProofNumberSearcher(SOLVER_TABLE_SIZE);
+		}
 	}
 	
 
@@ -109,6 +114,10 @@ public class AIPlayer extends AbstractPlayer {
 	 * assigned with the same value, it chooses the first field. Due to the way validMoves are
 	 * calculated this will lead to a strategy to attack over preferably one side. 
 	 * 
+	 * The move is chosen within the deadlines of the time control: the later, more expensive
+	 * steps are skipped when the soft target has passed, and the rating of the moves stops at
+	 * the hard deadline.
+	 * 
 	 * @return the selected (best) move.
 	 * @throws Exception
 	 * @throws RemoteException
@@ -119,82 +128,72 @@ public class AIPlayer extends AbstractPlayer {
 		// Verify and set state of cycle state machine
 		super.request();
 
+		timeControl.startMove(board);
+		try{
+			// The search makes moves on a copy, the output shows the board of the player
+			return chooseMove(board.copy());
+		}finally{
+			timeControl.endMove();
+		}
+	}
+
+	/**
+	 * Chooses the move, see {@link #request()}
+	 * @return the selected (best) move.
+	 * @throws Exception if a position or move can not be created
+	 */
+	private Move chooseMove(Board position) throws Exception {
+
 		// Get the valid moves for this player
-		List<Move> validListMoves = new ArrayList<>(board.getValidMoves(color));
-		HashSet<Move> validHashMoves = board.getValidMoves(color);
+		Set<Move> validHashMoves = board.getValidMoveSet(color);
+		List<Move> validListMoves = new ArrayList<>(validHashMoves);
 		Move selectedMove = null;
 		
 		
 		
 		
-		//Breakthrough! ---------------------------------------------------------
-		int lowerBound;
-		boolean canBreak=false;
-		
-		if(color == BLUE){
-			lowerBound = 0;
+		// The tablebase knows the best move of narrow boards, the opening book the first moves
+		int known = probeTablebase(position);
+		if(known == Board.NO_MOVE){
+			known = probeOpeningBook(position);
 		}
-		else{
-			lowerBound = board.getNumbers()-1;
+		if(known != Board.NO_MOVE){
+			currentMove = Move.decode(known);
+			return currentMove;
 		}
 		
-		//Search in every field 4 steps in front of goal for a possible breakthrough.
-		for(int n = lowerBound; condition(n,color);){
-			for(int l = 0;l<board.getLetters();l++){
-				if(board.getColor(n,l) == color){
-				
-					//System.out.println("Berechnet Break: "+n+" "+l);
-					breakMoves = canBreakthrough(new Position(l,n));
+		//Breakthrough! ---------------------------------------------------------
+		// A runner which can not be stopped any more walks straight to the goal, at any stage
+		int runner = board.getRunner(color);
+		if(runner >= 0){
+			currentMove = Move.of(runner, runner + board.getGeometry().getForward(color));
+			return currentMove;
+		}
 		
-					if(breakMoves!=null && breakMoves[0] != null){
-						//System.out.println(breakMoves[0]);
-						canBreak = true;
-					
-					}
-					if(canBreak){
-						// Assignes null if connection between safe positions not possible
-						breakMoves = breakthrough(new Position(l,n));
-					}
-				}
-				// Execute the breakthrough, if moves are still valid.
-				if(breakMoves !=null && breakMoves[0] != null  && k<2){
-					k = k +1;
-					for(int j =0; j < 3 ; j++){
-						//System.out.println("breakmoves "+j+" "+breakMoves[j]);
-					}
-					
-					if( validHashMoves.contains(breakMoves[k]) ){
-						
-						currentMove = new Move(breakMoves[k]);
-						return breakMoves[k];
-					}else{
-						//System.out.println("Fehler in breakMoves"+breakMoves[k]+"nicht gefunden");
-					}
-				}
-			}
-			if(color == BLUE){
-				n++;
-			}
-			else{
-				n--;
+		// Near the end of the game the solver looks for the fastest forced win, or the longest
+		// resistance if the game is lost. It may use half of the soft target.
+		if(isEndgame() && !timeControl.isSoftTimeUp()){
+			if(solver.solve(position, SOLVER_NODES, timeControl.getSoftTime() / 2) != ProofNumberSearcher.UNKNOWN){
+				currentMove = Move.decode(solver.getBestMove());
+				return currentMove;
 			}
 		}
 	
 		///---- Prometheus
 		// choose a near random move
-		if (!longDistance(board.getLastChange(), validListMoves.get(random.nextInt(validListMoves.size())))){
+		if (!timeControl.isSoftTimeUp()
+				&& !longDistance(board.getLastChange(), validListMoves.get(random.nextInt(validListMoves.size())))){
 			int depth =3;
-			Board runBoard = new Board(board);
-			vit.viterbi(runBoard, color, new Move(board.getLastChange()));
+			vit.viterbi(position, color, new Move(board.getLastChange()));
 			selectedMove =vit.getMaxMove();
 			
 			for (int i = 0; i < depth; i++) {
 					
 				//Opponent move
-				vit.viterbi(runBoard, (color+1)%2, new Move (selectedMove));
+				vit.viterbi(position, (color+1)%2, new Move (selectedMove));
 				selectedMove =new Move (vit.getMaxMove());
 				//Player move
-				vit.viterbi(runBoard, color, selectedMove);
+				vit.viterbi(position, color, selectedMove);
 				selectedMove =new Move (vit.getMaxMove());
 			}
 			
@@ -213,52 +212,58 @@ public class AIPlayer extends AbstractPlayer {
         // Holds the moves that have the max rating
         List<Move> selectedMoves = new ArrayList<>();
 
+        // Moves that this player could do, packed into a buffer
+        if(ownMoves == null || ownMoves.length < board.getMaxMoves()) {
+            ownMoves = new int[board.getMaxMoves()];
+            opponentMoves = new int[board.getMaxMoves()];
+        }
+        int ownCount = position.generateMoves(this.color, ownMoves);
 
         int opponentColor = this.color == RED ? BLUE : RED;
 
-        // Try every possible move that this player could do
-        for(Move move : validListMoves) {
+        // Try every possible move that this player could do, as long as there is time
+        for(int i = 0; i < ownCount && !timeControl.isHardTimeUp(); i++) {
 
-            // Do the actual move on a virtual board
-            // It would be more performant to not clone the board
-            // but revert a move afterwards...
-
-            Board boardAfterMyMove = new Board(this.board);
-            boardAfterMyMove.move(move);
+            // Do the actual move on the copy of the board, it is reverted after the rating
+            long undoMyMove = position.makeMove(ownMoves[i]);
 
             int minRatingAfterOpponentMove = Integer.MAX_VALUE;
 
             // Moves that the opponent could do after the current player
             // did his move
-            List<Move> validOpponentMoves = new ArrayList<>(boardAfterMyMove.getValidMoves(opponentColor));
+            int opponentCount = position.generateMoves(opponentColor, opponentMoves);
 
             // Try every move of the opponent and do a rating of the board for each player afterwards.
             // Minimize the rating of the play situations
-            for(Move opponentMove : validOpponentMoves) {
-                Board boardAfterOpponentMove = new Board(boardAfterMyMove);
-                boardAfterOpponentMove.move(opponentMove);
-                minRatingAfterOpponentMove = Math.min(minRatingAfterOpponentMove, rate(boardAfterOpponentMove));
+            for(int j = 0; j < opponentCount; j++) {
+                long undoOpponentMove = position.makeMove(opponentMoves[j]);
+                minRatingAfterOpponentMove = Math.min(minRatingAfterOpponentMove, rate(position));
+                position.unmakeMove(undoOpponentMove);
             }
 
+            position.unmakeMove(undoMyMove);
+
             // A new higher rating was found, forget old moves that could be interesting
             // and memorise this move because it has the highest rating found until now.
             if(minRatingAfterOpponentMove > currentMaxRating) {
                 selectedMoves.clear();
-                selectedMoves.add(move);
+                selectedMoves.add(Move.decode(ownMoves[i]));
                 currentMaxRating = minRatingAfterOpponentMove;
             }
 
             // Ths rating of this move is as high as other moves that have been found until now
             // Add it to the list so that it can be selected afterwards randomly
             if(minRatingAfterOpponentMove == currentMaxRating) {
-                selectedMoves.add(move);
+                selectedMoves.add(Move.decode(ownMoves[i]));
             }
 
         }
 
         // Select a random move of the best possible move and mark is as the move to do as soon
-        // as engine confirms the move
-
+        // as engine confirms the move, any move if there was no time to rate one
+        if(selectedMoves.isEmpty()) {
+            selectedMoves.add(Move.decode(ownMoves[random.nextInt(ownCount)]));
+        }
         currentMove = selectedMoves.get(random.nextInt(selectedMoves.size()));
         
         //Go to end
@@ -315,21 +320,21 @@ public class AIPlayer extends AbstractPlayer {
 		}
 	
 	/**
-	 * Condition for breakthrough algorithm search.
+	 * Tells whether the solver is used: when at most a quarter of the tokens is left or a token
+	 * of either color is at most SOLVER_ROWS numbers (rows) before its goal.
 	 * 
-	 * @param n the number in the for loop.
-	 * @param color of the Player
-	 * @return true if the for-loop can go on searching.
+	 * @return true if the position is near the end of the game
 	 */
-	private boolean condition(int n,int color){
-		if(color == BLUE){
-			return n <= 3;
-		}
-		else{
-			return n >= board.getNumbers()-4;
+	private boolean isEndgame(){
+		if(board.getTokenCount(RED) + board.getTokenCount(BLUE) <= board.getLetters()){
+			return true;
 		}
-	} 
-    
+		int redFront = board.getFrontNumber(RED);
+		int blueFront = board.getFrontNumber(BLUE);
+		return (redFront >= 0 && board.getNumbers() - 1 - redFront <= SOLVER_ROWS)
+				|| (blueFront >= 0 && blueFront <= SOLVER_ROWS);
+	}
+	
 	/** Calculate distance of two Moves
 	 * @param move1 first Move
 	 * @param move2 second Move
@@ -355,46 +360,21 @@ public class AIPlayer extends AbstractPlayer {
     private int rate(Board board) {
 
         // Distances of tokens to the other side of the board
-        int nearestDistanceToBlueEnd = Integer.MIN_VALUE;
-        int nearestDistanceToRedEnd = Integer.MAX_VALUE;
+        int nearestDistanceToBlueEnd = board.getFrontNumber(RED);
+        int nearestDistanceToRedEnd = board.getFrontNumber(BLUE);
+        if(nearestDistanceToBlueEnd < 0) nearestDistanceToBlueEnd = Integer.MIN_VALUE;
+        if(nearestDistanceToRedEnd < 0) nearestDistanceToRedEnd = Integer.MAX_VALUE;
 
         // The number of tokens in play for a certain color
-        int redTokens = 0;
-        int blueTokens = 0;
+        int redTokens = board.getTokenCount(RED);
+        int blueTokens = board.getTokenCount(BLUE);
 
         // The number of columns in which only tokens of a certain color do
-        // exist
-        int colsExclusivelyRed = 0;
-        int colsExclusivelyBlue = 0;
-
-        // Go through board and collect data to be able to do the rating afterwards
-        for(int x = 0; x < board.getLetters(); x++) {
-
-            boolean foundRed = false;
-            boolean foundBlue = false;
-
-            for(int y = 0; y < board.getNumbers(); y++) {
-
-                int fieldColor = board.getColor(y, x);
-
-                if(fieldColor == RED) {
-                    nearestDistanceToBlueEnd = Math.max(y, nearestDistanceToBlueEnd);
-                    redTokens++;
-                    foundRed = true;
-                }
-
-                if(fieldColor == BLUE) {
-                    nearestDistanceToRedEnd = Math.min(y, nearestDistanceToRedEnd);
-                    blueTokens++;
-                    foundBlue = true;
-                }
-
-            }
-
-            colsExclusivelyBlue += foundBlue && !foundRed ? 1 : 0;
-            colsExclusivelyRed += foundRed && !foundBlue ? 1 : 0;
-
-        }
+        // exist, taken from the bitboards of the board
+        int redLetters = board.getOccupiedLetters(RED);
+        int blueLetters = board.getOccupiedLetters(BLUE);
+        int colsExclusivelyRed = Integer.bitCount(redLetters & ~blueLetters);
+        int colsExclusivelyBlue = Integer.bitCount(blueLetters & ~redLetters);
 
         int blueDistanceRating = nearestDistanceToBlueEnd - nearestDistanceToRedEnd;
         int redDistanceRating = -blueDistanceRating;
@@ -665,280 +645,5 @@ public class AIPlayer extends AbstractPlayer {
 			System.out.println(myDistance[l]);
 		}
 	}----------------------------------------------------------------------------------------------
-	*/ 
-	
-	/**
-	 * Calculates a breakthrough Move 3 steps from goal. 
-	 * 
-	 * @param start the start position of my token which may breakthrough.
-	 * @return a Move[] with the next moves to breakthrough the enemy.
-	 * @throws PresetException if a Position cannot be created
-	 * @see breakthroughPP.preset.Position
-	 */
-	private Move[] canBreakthrough(Position start) throws PresetException, PlayerException{
-		
-		int direction = color == RED ? 1 : -1;
-		
-		
-		boolean breakthrough = false;
-		
-		// Hurdles = my token, threats = his tokens
-		hurdles = new ArrayList<Position>();
-		threats = new ArrayList<Position>();
-		// The stages contain possible positions for my and for all opponents tokens
-		// after the first, second and third move.
-		meFirstStage = new ArrayList<Position>();
-		meSecondStage = new ArrayList<Position>();
-		meThirdStage = new ArrayList<Position>();
-		
-		opFirstStage = new ArrayList<Position>();
-		opSecondStage = new ArrayList<Position>();
-		opThirdStage = new ArrayList<Position>();
-		
-		
-		// Find opponents possibly threatening tokens, search from start Position+2 'till end
-		int startSearch = start.getNumber() +1*direction;
-		int endSearch = color == RED ? board.getNumbers() : 0;
-
-		int lowerBound = start.getLetter() - 3 >= 0 ? (start.getLetter() - 3) : 0;
-		int upperBound =  start.getLetter() + 3 < board.getLetters() ? (start.getLetter() + 3) : board.getLetters();
-				
-		for(int l =lowerBound; l< upperBound ;l++ ){
-			if(color == RED){
-				for(int n = startSearch; n< endSearch ;n++){
-					if(board.getColor(n,l) == opponentColor && (n <= start.getNumber()+2 || l == start.getLetter())){
-						threats.add(new Position(l,n));
-					}
-					else if(board.getColor(n,l) == color){
-						hurdles.add(new Position(l,n));
-					}
-				}
-			}
-			else{
-				for(int n = startSearch; n >= endSearch ;n--){
-					if(board.getColor(n,l) == opponentColor && (n <= start.getNumber()+2 || l == start.getLetter())){
-						threats.add(new Position(l,n));
-					}
-					else if(board.getColor(n,l) == color){
-						hurdles.add(new Position(l,n));
-					}
-				}
-			}			
-		}
-		
-		// Find my possible positions, look 3 steps in the future, check if border was already reached
-		for(int l =start.getLetter() - 1; l<= start.getLetter() + 1 ;l++ ){
-			if(!(l<0) && l < board.getLetters()){
-				meFirstStage.add(new Position(l,start.getNumber()+1*direction));
-			}
-		}
-		if(start.getNumber()+2*direction >= 0 && start.getNumber()+2*direction < board.getNumbers()){
-			for(int l =start.getLetter() - 2; l<= start.getLetter() + 2 ;l++ ){
-				if(!(l<0) && l < board.getLetters()){
-					meSecondStage.add(new Position(l,start.getNumber()+2*direction));
-				}
-			}
-		}
-		if(start.getNumber()+3*direction >= 0 && start.getNumber()+3*direction < board.getNumbers()){
-			for(int l =start.getLetter() - 3; l<= start.getLetter() + 3 ;l++ ){
-				if(!(l<0) && l < board.getLetters()){
-					meThirdStage.add(new Position(l,start.getNumber()+3*direction));
-				}
-			}
-		}
-		
-		// Add current position of all threats to all stages - in case they don't move, 
-		// this is important
-		opFirstStage.addAll(threats);		
-		
-		// Add opponents possible positions for each threatening token, look 3 steps in the future
-		Iterator<Position> iterator = threats.iterator();
-			
-		while(iterator.hasNext()){
-			Position position = iterator.next();
-			
-			//Step one
-			for(int l =position.getLetter() - 1; l<=position.getLetter() + 1 ;l++ ){
-				if(!(l<0) && l < board.getLetters()){
-					opFirstStage.add(new Position(l,position.getNumber()-1*direction));
-				}
-			}
-			//Step two
-			for(int l =position.getLetter() - 2; l<= position.getLetter() + 2 ;l++ ){
-				if(!(l<0) && l < board.getLetters()){
-				//	Position posi = new Position(l,position.getNumber()-2*direction);
-					opSecondStage.add(new Position(l,position.getNumber()-2*direction));
-				}
-			}
-			//Step three, check for borders
-			if(position.getNumber()-3*direction >= 0 && position.getNumber()- 3*direction < board.getNumbers()){
-				for(int l =position.getLetter() - 3; l<= position.getLetter() + 3 ;l++ ){
-					if(!(l<0) && l < board.getLetters()){
-						opThirdStage.add(new Position(l,position.getNumber()-3*direction));
-					}
-				}
-			}
-		}	
-		
-		// Add the direct front position
-	/*	Position aThreat = new Position(start.getLetter(),start.getNumber()+1*direction);
-		if(board.getColor(start.getLetter(), start.getNumber()+1*direction) != NONE){
-			opFirstStage.add(aThreat);
-		}*/
-		
-		// add all previous possible moves to the next stage
-		opSecondStage.addAll(opFirstStage);
-		opThirdStage.addAll(opSecondStage);
-		
-		// Then remove the positions where are my own tokens ("hurdles")
-		meFirstStage.removeAll(hurdles);
-		meSecondStage.removeAll(hurdles);
-		meThirdStage.removeAll(hurdles);
-		
-		// Now check for each stage if opponent could kill this token
-		// First move is made by my token. Then the opponent makes his "first" move.
-		// So, if meFirstStage and opFirstStage overlap, my token is threatened at one position.
-		Position pos = null;
-		Iterator<Position> iterFirst = meFirstStage.iterator();
-		
-		
-		while(iterFirst.hasNext()){
-			pos = iterFirst.next();
-			// Is there at least one move I can make, which is not threatened?
-			if(!(opFirstStage.contains(pos))){
-				breakthrough = true;
-			}
-			// If the move is threatened, remove it.
-			else{
-				iterFirst.remove();
-			}
-		}
-		// Quit here, if first stage is already threatened everywhere
-		if(!breakthrough){
-			return null;
-		}
-		
-		// Second stage
-		Iterator<Position> iterSec = meSecondStage.iterator();
-		breakthrough = false;
-
-		
-		while(iterSec.hasNext()){
-			pos = iterSec.next();
-			
-			if(!(opSecondStage.contains(pos))){
-				breakthrough = true;
-			}
-			else{
-				iterSec.remove();
-			}
-		}
-		if(!breakthrough && !meSecondStage.isEmpty() ){
-			return null;
-		}
-
-		// Third stage
-		Iterator<Position> iterThi = meThirdStage.iterator();
-		breakthrough = false;
-		
-		while(iterThi.hasNext()){
-			pos = iterThi.next();
-			
-			if(!(opThirdStage.contains(pos))){
-				breakthrough = true;
-			}
-			else{
-				iterThi.remove();
-			}
-		}
-		
-		
-		try{
-			if(breakthrough ||  meThirdStage.isEmpty()){
-				moveChain = breakthrough(start);
-			
-				if(moveChain == null){
-					return null;
-				}
-				return moveChain;
-			}
-		}catch(PresetException e){
-			System.err.println(e.getMessage());
-		}
-			
-		return null;
-	}
-	
-	/**
-	 * Constructs a move[] with connected, valid moves.
-	 * 
-	 * @param start the start Position
-	 * @return a move[3] array with the next moves, starting with 0, to be executed to win
-	 */
-	private Move[] breakthrough(Position start) throws PresetException{
-		Move[] moveChain = new Move[3];
-		
-		Iterator<Position> it1 = meFirstStage.iterator();
-		Iterator<Position> it2 = meSecondStage.iterator();
-		Iterator<Position> it3 = meThirdStage.iterator();
-		
-		while(it1.hasNext()){
-			Position p1 = it1.next();
-			try{
-				moveChain[0] = new Move(new Position(start.getLetter(),start.getNumber()),new Position(p1.getLetter(),p1.getNumber()));
-				
-				//Already reached the goal?
-				if(p1.getNumber() == 0 || p1.getNumber() == board.getNumbers()-1){
-					return moveChain;
-				}
-				
-			}catch(PresetException e){
-				System.err.println(e.getMessage());
-			}
-			
-			while(it2.hasNext()){
-				Position p2 = it2.next();
-				if(connection(new Position(p1.getLetter(),p1.getNumber()),new Position(p2.getLetter(),p2.getNumber()))){
-					moveChain[1] = goodMove;
-					if(p2.getNumber() == 0 || p2.getNumber() == board.getNumbers()-1){
-						return moveChain;
-					}
-					
-					while(it3.hasNext()){
-						Position p3 = it3.next();
-						if( connection(moveChain[1].getEnd(),new Position(p3.getLetter(),p3.getNumber()) )){
-							moveChain[2] = goodMove;
-							return moveChain;
-						}
-					}
-				}
-			}
-		}
-		
-		return null;
-	}
-	
-	/**
-	 * Gets 2 positions which shall be connected to a move, if possible
-	 * 
-	 * @param p1 start
-	 * @param p2 end
-	 * @return true if the positions can be connected to a move
-	 */
-	private boolean connection(Position p1,Position p2){
-		int direction = color == RED ? 1 : -1;
-		boolean canConnect = false;
-		
-		if(p2.getNumber() == p1.getNumber()+1*direction){
-			if(p2.getLetter() >= p1.getLetter() -1 && p2.getLetter() <= p1.getLetter() +1 ){
-				canConnect = true;
-				try{
-					goodMove = new Move(new Position(p1.getLetter(),p1.getNumber()),new Position(p2.getLetter(),p2.getNumber())); 
-				}catch(PresetException e){
-				}
-			}
-		}
-			
-		return canConnect;
-	}
+	*/
 }
@@ -1,9 +1,13 @@
 package breakthroughPP.players;
 
 import java.rmi.RemoteException;
+import java.util.Random;
 import breakthroughPP.preset.*;
 import breakthroughPP.board.Board;
 import breakthroughPP.gui.*;
+import breakthroughPP.search.OpeningBook;
+import breakthroughPP.search.Tablebase;
+import breakthroughPP.search.TimeControl;
 /**
  * A player class that implements methods of the PLayer interface
  * that all players have in common. All concrete player classes should
@@ -56,6 +60,21 @@ public abstract class AbstractPlayer implements Player, Setting {
 
 	/** The current move that is being made */
 	protected Move currentMove;
+
+	/** Time per move of a computer player in ms if no time control is set */
+	public static final int DEFAULT_MOVE_TIME = 1000;
+
+	/** Deadlines of the moves, consulted by the computer players */
+	protected TimeControl timeControl = new TimeControl(DEFAULT_MOVE_TIME);
+
+	/** Endgame tablebase of the board size, null if there is none */
+	protected Tablebase tablebase;
+
+	/** Opening book of the board size, null if there is none */
+	protected OpeningBook openingBook;
+
+	/** Chooses among the moves of the opening book */
+	private final Random bookRandom = new Random();
 	
     public AbstractPlayer(Requestable input, Showable output) {
         this.input = input;
@@ -70,12 +89,32 @@ public abstract class AbstractPlayer implements Player, Setting {
 		currentMove = move;
 	}
 
+	public TimeControl getTimeControl(){
+		return timeControl;
+	}
+
+	/**
+	 * Sets the clock of a computer player, e.g. a time for the whole game
+	 * @param newcontrol the time control, which is used from the next move on
+	 */
+	public void setTimeControl(TimeControl newcontrol){
+		timeControl = newcontrol;
+	}
+
 	/**
 	 * Abstract method to force inheriting classes to reveal their player type
 	 * @return Type of the player
      */
 	public abstract PlayerType getPlayerType();
 
+	/**
+	 * Statistics of the last move of the player, shown by the engine in debug mode
+	 * @return a line of statistics, null if the player keeps none
+	 */
+	public String getStatistics(){
+		return null;
+	}
+
 	/**
 	 * String representation of the current player
 	 */
@@ -106,7 +145,7 @@ public abstract class AbstractPlayer implements Player, Setting {
 	@Override
 	public void init(int dimX, int dimY, int color) throws Exception, RemoteException {
 
-		board = new Board(dimX,dimY);
+		board = Board.create(dimX,dimY);
 
 		assert(color == RED || color == BLUE || color == 2); // color = 2 by agreement with the engines
 
@@ -116,7 +155,9 @@ public abstract class AbstractPlayer implements Player, Setting {
 		if(color == RED || color == 2) this.color = RED;
 		if(color == BLUE) this.color = BLUE;
 
-		this.board = new Board(dimX, dimY);
+		this.board = Board.create(dimX, dimY);
+		tablebase = Tablebase.find(dimX, dimY);
+		openingBook = OpeningBook.find(dimX, dimY);
 
 		// Initialize current player state
 		state = State.INIT;
@@ -212,6 +253,26 @@ public abstract class AbstractPlayer implements Player, Setting {
 		return null;
 	}
 
+	/**
+	 * Looks up the best move of the current position in the endgame tablebase: the fastest win
+	 * or the longest resistance. Used by the computer players before they search.
+	 * @param position a copy of the board, the moves are tried on it
+	 * @return the packed move, Board.NO_MOVE if there is no tablebase of the board size
+	 */
+	protected int probeTablebase(Board position) {
+		return tablebase == null ? Board.NO_MOVE : tablebase.getBestMove(position);
+	}
+
+	/**
+	 * Looks up a move of the current position in the opening book, chosen at random among the
+	 * book moves in proportion to their weights. Used by the computer players before they search.
+	 * @param position a copy of the board
+	 * @return the packed move, Board.NO_MOVE if the position is not in the opening book
+	 */
+	protected int probeOpeningBook(Board position) {
+		return openingBook == null ? Board.NO_MOVE : openingBook.getMove(position, bookRandom);
+	}
+
 	/**
 	 * Verify the current state of the cycle state machine
 	 * @param state the expected state
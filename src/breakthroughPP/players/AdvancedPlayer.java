@@ -8,7 +8,9 @@ import breakthroughPP.preset.*;
 import breakthroughPP.gui.Showable;
 
 /**
- * Class that represents the a player with reasonable artificial intelligence
+ * Class that represents the a player with reasonable artificial intelligence. The moves which
+ * are not rated before the hard deadline of the {@link breakthroughPP.search.TimeControl} are
+ * left out.
  * <p>
  * Georg-August University Goettingen
  * APP breakthroughPP
@@ -22,6 +24,10 @@ public class AdvancedPlayer extends AbstractPlayer {
 	/** Random number generator for random move selection */
 	private final Random random = new Random();
 
+	/** Buffers for the packed moves of both players, see {@link breakthroughPP.board.Board#generateMoves} */
+	private int[] ownMoves;
+	private int[] opponentMoves;
+
 	public AdvancedPlayer(Requestable input, Showable output) {
 		super(input, output);
 	}
@@ -39,7 +45,24 @@ public class AdvancedPlayer extends AbstractPlayer {
 
         // Verify state of cycle state machine
         super.request();
-		
+        timeControl.startMove(board);
+        try {
+            // The moves are tried on a copy, the output shows the board of the player
+            return chooseMove(board.copy());
+        } finally {
+            timeControl.endMove();
+        }
+	}
+
+    /**
+     * Rates the moves of this player two plies deep until the time is up and chooses one of the
+     * best ones at random
+     * @param position a copy of the board, the moves are made and taken back on it
+     * @return the selected (best) move
+     * @throws PresetException if a move can not be decoded
+     */
+    private Move chooseMove(Board position) throws PresetException {
+
         // Holds the rating of the moves that are in the selected moves list
         // this value has to be maximized
         int currentMaxRating = Integer.MIN_VALUE;
@@ -47,70 +70,73 @@ public class AdvancedPlayer extends AbstractPlayer {
         // Holds the moves that have the max rating
         List<Move> selectedMoves = new ArrayList<>();
 
-        // Moves that this player could do
-        List<Move> validOwnMoves = new ArrayList<>(board.getValidMoves(this.color));
+        // Moves that this player could do, packed into a buffer
+        if(ownMoves == null || ownMoves.length < board.getMaxMoves()) {
+            ownMoves = new int[board.getMaxMoves()];
+            opponentMoves = new int[board.getMaxMoves()];
+        }
+        int ownCount = position.generateMoves(this.color, ownMoves);
 
         int opponentColor = this.color == RED ? BLUE : RED;
 
-        // Try every possible move that this player could do
-        for(Move move : validOwnMoves) {
-
-            // Do the actual move on a virtual board
-            // It would be more performant to not clone the board
-            // but revert a move afterwards...
+        // Try every possible move that this player could do, as long as there is time
+        for(int i = 0; i < ownCount && !timeControl.isHardTimeUp(); i++) {
 
-            Board boardAfterMyMove = new Board(this.board);
-            boardAfterMyMove.move(move);
+            // Do the actual move on the board, it is reverted after the rating
+            long undoMyMove = position.makeMove(ownMoves[i]);
 
             int minRatingAfterOpponentMove = Integer.MAX_VALUE;
 
             // Moves that the opponent could do after the current player
             // did his move
-            List<Move> validOpponentMoves = new ArrayList<>(boardAfterMyMove.getValidMoves(opponentColor));
+            int opponentCount = position.generateMoves(opponentColor, opponentMoves);
 
             // Try every move of the opponent and do a rating of the board for each player afterwards.
             // Minimize the rating of the play situations
-            for(Move opponentMove : validOpponentMoves) {
-                Board boardAfterOpponentMove = new Board(boardAfterMyMove);
-                boardAfterOpponentMove.move(opponentMove);
-                minRatingAfterOpponentMove = Math.min(minRatingAfterOpponentMove, rate(boardAfterOpponentMove));
+            for(int j = 0; j < opponentCount; j++) {
+                long undoOpponentMove = position.makeMove(opponentMoves[j]);
+                minRatingAfterOpponentMove = Math.min(minRatingAfterOpponentMove, rate(position));
+                position.unmakeMove(undoOpponentMove);
             }
 
+            position.unmakeMove(undoMyMove);
+
             // A new higher rating was found, forget old moves that could be interesting
             // and memorise this move because it has the highest rating found until now.
             if(minRatingAfterOpponentMove > currentMaxRating) {
                 selectedMoves.clear();
-                selectedMoves.add(move);
+                selectedMoves.add(Move.decode(ownMoves[i]));
                 currentMaxRating = minRatingAfterOpponentMove;
             }
 
             // Ths rating of this move is as high as other moves that have been found until now
             // Add it to the list so that it can be selected afterwards randomly
             if(minRatingAfterOpponentMove == currentMaxRating) {
-                selectedMoves.add(move);
+                selectedMoves.add(Move.decode(ownMoves[i]));
             }
 
         }
 
         // Select a random move of the best possible move and mark is as the move to do as soon
-        // as engine confirms the move
-        
+        // as engine confirms the move, any move if there was no time to rate one
+        if(selectedMoves.isEmpty()) {
+            selectedMoves.add(Move.decode(ownMoves[random.nextInt(ownCount)]));
+        }
         currentMove = selectedMoves.get(random.nextInt(selectedMoves.size()));
 
         // Win game if possible
-        Iterator<Move> iter = validOwnMoves.iterator();
-        while(iter.hasNext()) {
-        	Move move = iter.next();
-        	if(color == RED && move.getEnd().getNumber() == board.getNumbers()-1){
-        		currentMove = move;
+        for(int i = 0; i < ownCount; i++) {
+        	int endNumber = Move.getEndSquare(ownMoves[i]) / Board.ROW_STRIDE;
+        	if(color == RED && endNumber == board.getNumbers()-1){
+        		currentMove = Move.decode(ownMoves[i]);
         	}
-        	if(color == BLUE && move.getEnd().getNumber() == 0){
-        		currentMove = move;
+        	if(color == BLUE && endNumber == 0){
+        		currentMove = Move.decode(ownMoves[i]);
         	}
         }
 
         return currentMove;
-	}
+    }
 
     /**
      * Rate the current situation of the board for the current user
@@ -120,46 +146,21 @@ public class AdvancedPlayer extends AbstractPlayer {
     private int rate(Board board) {
 
         // Distances of tokens to the other side of the board
-        int nearestDistanceToBlueEnd = Integer.MIN_VALUE;
-        int nearestDistanceToRedEnd = Integer.MAX_VALUE;
+        int nearestDistanceToBlueEnd = board.getFrontNumber(RED);
+        int nearestDistanceToRedEnd = board.getFrontNumber(BLUE);
+        if(nearestDistanceToBlueEnd < 0) nearestDistanceToBlueEnd = Integer.MIN_VALUE;
+        if(nearestDistanceToRedEnd < 0) nearestDistanceToRedEnd = Integer.MAX_VALUE;
 
         // The number of tokens in play for a certain color
-        int redTokens = 0;
-        int blueTokens = 0;
+        int redTokens = board.getTokenCount(RED);
+        int blueTokens = board.getTokenCount(BLUE);
 
         // The number of columns in which only tokens of a certain color do
-        // exist
-        int colsExclusivelyRed = 0;
-        int colsExclusivelyBlue = 0;
-
-        // Go through board and collect data to be able to do the rating afterwards
-        for(int x = 0; x < board.getLetters(); x++) {
-
-            boolean foundRed = false;
-            boolean foundBlue = false;
-
-            for(int y = 0; y < board.getNumbers(); y++) {
-
-                int fieldColor = board.getColor(y, x);
-
-                if(fieldColor == RED) {
-                    nearestDistanceToBlueEnd = Math.max(y, nearestDistanceToBlueEnd);
-                    redTokens++;
-                    foundRed = true;
-                }
-
-                if(fieldColor == BLUE) {
-                    nearestDistanceToRedEnd = Math.min(y, nearestDistanceToRedEnd);
-                    blueTokens++;
-                    foundBlue = true;
-                }
-
-            }
-
-            colsExclusivelyBlue += foundBlue && !foundRed ? 1 : 0;
-            colsExclusivelyRed += foundRed && !foundBlue ? 1 : 0;
-
-        }
+        // exist, taken from the bitboards of the board
+        int redLetters = board.getOccupiedLetters(RED);
+        int blueLetters = board.getOccupiedLetters(BLUE);
+        int colsExclusivelyRed = Integer.bitCount(redLetters & ~blueLetters);
+        int colsExclusivelyBlue = Integer.bitCount(blueLetters & ~redLetters);
 
         int blueDistanceRating = nearestDistanceToBlueEnd - nearestDistanceToRedEnd;
         int redDistanceRating = -blueDistanceRating;
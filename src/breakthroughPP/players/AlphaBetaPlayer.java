@@ -0,0 +1,378 @@
+package breakthroughPP.players;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import breakthroughPP.board.Board;
+import breakthroughPP.preset.*;
+import breakthroughPP.gui.Showable;
+import breakthroughPP.search.Evaluator;
+import breakthroughPP.search.ForkJoinSearcher;
+import breakthroughPP.search.ParallelSearcher;
+import breakthroughPP.search.Searcher;
+import breakthroughPP.search.TimeControl;
+import breakthroughPP.search.TranspositionTable;
+
+/**
+ * Computer player which searches its moves with an alpha-beta search. The search deepens
+ * iteratively until the time budget of the move runs out, so the player becomes stronger the
+ * more time it gets. It stops at the deadlines of its {@link TimeControl} and searches longer
+ * when the best move changes between the iterations. The results of searched positions are kept in a transposition table
+ * between the moves. The search can run on several threads, which share the table, or
+ * alternatively as a reproducible fork/join search without table.
+ * <p>
+ * With pondering the player goes on searching while the opponent thinks: after its move is
+ * confirmed it searches the position after the reply it expects (the best move of the opponent
+ * in the table), or the opponent's position if it expects none. If the opponent plays the
+ * expected move, the search continues until the soft target of the move and its move is played, else it is
+ * stopped and the results in the table are all that is kept. Pondering needs the table, the
+ * fork/join search does not ponder.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ *
+ * @author H.A.
+ * @see breakthroughPP.search.Searcher
+ */
+public class AlphaBetaPlayer extends AbstractPlayer {
+
+	/** Time budget of a move in ms if none is set */
+	public static final int DEFAULT_TIME_BUDGET = 1000;
+
+	/** Size of the transposition table in MB */
+	public static final int TABLE_SIZE = 32;
+
+	/** Longest time in ms the player ponders, in case the opponent never answers */
+	public static final int MAX_PONDER_TIME = 300000;
+
+	/** Time budget of a move in ms */
+	private int timeBudget = DEFAULT_TIME_BUDGET;
+
+	/** Whether the player searches during the opponent's turn */
+	private boolean pondering = false;
+
+	/** Runs the search during the opponent's turn, created when the player ponders first */
+	private ExecutorService ponderThread;
+
+	/** The running search during the opponent's turn, null if the player does not ponder now */
+	private Future<Integer> ponderTask;
+
+	/** The expected move of the opponent, packed, or Board.NO_MOVE if the player ponders on the opponent's position */
+	private int ponderMove;
+
+	/** Number of times the player pondered and how often it expected the right move */
+	private int ponderings;
+	private int ponderHits;
+
+	/** Number of search threads */
+	private int threads = 1;
+
+	/** Whether the reproducible fork/join search is used instead of the shared table */
+	private boolean forkJoin = false;
+
+	/** The search, which keeps its move buffers and table between the moves, created on the first request */
+	private ParallelSearcher searcher;
+
+	/** The fork/join search, if it is used, created on the first request */
+	private ForkJoinSearcher forkJoinSearcher;
+
+	public AlphaBetaPlayer(Requestable input, Showable output) {
+		super(input, output);
+		timeControl = new TimeControl(timeBudget);
+	}
+
+	public int getTimeBudget(){
+		return timeBudget;
+	}
+
+	/**
+	 * Sets the time the player may search for one move, replacing the time control by one with
+	 * this time per move
+	 * @param newbudget time budget in ms, greater than zero
+	 * @throws IllegalArgumentException if the budget is not greater than zero
+	 */
+	public void setTimeBudget(int newbudget) throws IllegalArgumentException {
+		if(newbudget <= 0){
+			throw new IllegalArgumentException("The time budget must be greater than zero");
+		}
+		timeBudget = newbudget;
+		timeControl = new TimeControl(timeBudget);
+	}
+
+	public int getThreads(){
+		return threads;
+	}
+
+	/**
+	 * Sets the number of threads the player searches with
+	 * @param newthreads number of threads, at least one
+	 * @throws IllegalArgumentException if the number is less than one
+	 * @throws IllegalStateException if the player has already searched a move
+	 */
+	public void setThreads(int newthreads) throws IllegalArgumentException, IllegalStateException {
+		if(newthreads < 1){
+			throw new IllegalArgumentException("The number of threads must be at least one");
+		}
+		if(searcher != null || forkJoinSearcher != null){
+			throw new IllegalStateException("The number of threads can not be changed after the first move");
+		}
+		threads = newthreads;
+	}
+
+	public boolean isForkJoin(){
+		return forkJoin;
+	}
+
+	/**
+	 * Chooses the search: the fork/join search finds the same move as a search on one thread
+	 * without table, the default search with a shared table is faster but not reproducible
+	 * @param newforkjoin true for the fork/join search
+	 * @throws IllegalStateException if the player has already searched a move
+	 * @see breakthroughPP.search.ForkJoinSearcher
+	 * @see breakthroughPP.search.ParallelSearcher
+	 */
+	public void setForkJoin(boolean newforkjoin) throws IllegalStateException {
+		if(searcher != null || forkJoinSearcher != null){
+			throw new IllegalStateException("The search can not be changed after the first move");
+		}
+		forkJoin = newforkjoin;
+	}
+
+	public boolean isPondering(){
+		return pondering;
+	}
+
+	/**
+	 * Switches pondering on or off, it is ignored by the fork/join search
+	 * @param newpondering true if the player should search during the opponent's turn
+	 */
+	public void setPondering(boolean newpondering){
+		pondering = newpondering;
+		if(!pondering){
+			stopPondering();
+		}
+	}
+
+	/**
+	 * @return the number of times the player pondered on an expected move of the opponent
+	 */
+	public int getPonderings(){
+		return ponderings;
+	}
+
+	/**
+	 * @return the number of times the opponent played the move the player pondered on
+	 */
+	public int getPonderHits(){
+		return ponderHits;
+	}
+
+	/**
+	 * Initializes the player for a new game, a search of the last game is stopped
+	 * @see breakthroughPP.players.AbstractPlayer#init(int, int, int)
+	 */
+	@Override
+	public void init(int dimX, int dimY, int color) throws Exception, RemoteException {
+		stopPondering();
+		super.init(dimX, dimY, color);
+	}
+
+	/**
+	 * Plays the move of the endgame tablebase or the opening book if there is one, else searches
+	 * the best move within the time budget
+	 * @see breakthroughPP.players.AbstractPlayer
+	 * @see breakthroughPP.preset.Player
+	 * @return the selected (best) move
+	 * @throws RemoteException if the remote connection throws an exception
+	 * @throws Exception if another error occurs
+	 */
+	@Override
+	public Move request() throws Exception, RemoteException {
+
+		// Verify state of cycle state machine
+		super.request();
+
+		timeControl.startMove(board);
+		// The search makes moves on a copy, the output shows the board of the player
+		Board position = board.copy();
+		int move = probeTablebase(position);
+		if(move == Board.NO_MOVE){
+			move = probeOpeningBook(position);
+		}
+		if(move != Board.NO_MOVE){
+			// The tablebase or the opening book knows the move, the pondering is not needed
+			stopPondering();
+		} else if(ponderTask != null){
+			// The opponent played the expected move: the search goes on until the soft target
+			move = finishPondering();
+		} else if(forkJoin){
+			if(forkJoinSearcher == null){
+				forkJoinSearcher = new ForkJoinSearcher(new Evaluator(), threads);
+			}
+			move = forkJoinSearcher.search(position, timeControl, Searcher.MAX_PLY);
+		} else {
+			if(searcher == null){
+				searcher = new ParallelSearcher(new Evaluator(), new TranspositionTable(TABLE_SIZE), threads);
+			}
+			move = searcher.search(position, timeControl, Searcher.MAX_PLY);
+		}
+		timeControl.endMove();
+		if(move == Board.NO_MOVE){
+			throw new PlayerException("No move possible for " + this);
+		}
+		currentMove = Move.decode(move);
+		return currentMove;
+	}
+
+	/**
+	 * Confirms the own move and starts pondering if it is switched on and the game goes on
+	 * @param boardStatus commenting on the last move which was requested from this
+	 * @throws RemoteException if the connection with the net fails
+	 * @throws Exception if the status of the internal board with the controls' status disagrees
+	 * @see breakthroughPP.players.AbstractPlayer#confirm(Status)
+	 */
+	@Override
+	public void confirm(Status boardStatus) throws Exception, RemoteException {
+		super.confirm(boardStatus);
+		if(pondering && searcher != null && board.getStatus().isOk()){
+			startPondering();
+		}
+	}
+
+	/**
+	 * Makes the opponent's move. If the player pondered on another move or on the opponent's
+	 * position or the game is over, the search is stopped.
+	 * @param opponentMove move of the opponent
+	 * @param boardStatus status resulting from the opponent 's move
+	 * @throws RemoteException if the connection with the net fails
+	 * @throws Exception if the status of the internal board with the controls' status disagrees
+	 * @see breakthroughPP.players.AbstractPlayer#update(Move, Status)
+	 */
+	@Override
+	public void update(Move opponentMove, Status boardStatus) throws Exception, RemoteException {
+		if(ponderTask != null){
+			if(ponderMove == Move.encode(opponentMove) && boardStatus.isOk()){
+				ponderHits++;
+			} else {
+				stopPondering();
+			}
+		}
+		super.update(opponentMove, boardStatus);
+	}
+
+	/**
+	 * Starts the search of the position after the expected move of the opponent on the
+	 * pondering thread
+	 * @throws PresetException if the board can not be copied
+	 */
+	private void startPondering() throws PresetException {
+		final Board ponderBoard = board.copy();
+		long entry = searcher.getMainSearcher().getTable().probe(board.getHashKey());
+		ponderMove = entry == TranspositionTable.NONE ? Board.NO_MOVE : TranspositionTable.getMove(entry);
+		if(ponderMove != Board.NO_MOVE){
+			// The move of the table is made only if it is valid here
+			int[] moves = new int[board.getMaxMoves()];
+			int count = board.generateMoves(board.getTurn(), moves);
+			int i = 0;
+			while(i < count && moves[i] != ponderMove){
+				i++;
+			}
+			if(i == count){
+				ponderMove = Board.NO_MOVE;
+			} else {
+				ponderBoard.makeMove(ponderMove);
+				if(!ponderBoard.getStatus().isOk()){
+					return;
+				}
+				ponderings++;
+			}
+		}
+
+		if(ponderThread == null){
+			ponderThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "ponder");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		searcher.resume();
+		ponderTask = ponderThread.submit(new Callable<Integer>() {
+			@Override
+			public Integer call() throws PresetException {
+				return searcher.search(ponderBoard, MAX_PONDER_TIME, Searcher.MAX_PLY);
+			}
+		});
+	}
+
+	/**
+	 * Lets the search of the expected move go on until the soft target of the move and stops it then
+	 * @return the best move of the search, packed
+	 */
+	private int finishPondering() {
+		try{
+			int move = ponderTask.get(timeControl.getSoftTime(), TimeUnit.MILLISECONDS);
+			ponderTask = null;
+			return move;
+		}catch(TimeoutException te){
+			return stopPondering();
+		}catch(InterruptedException ie){
+			Thread.currentThread().interrupt();
+			return stopPondering();
+		}catch(ExecutionException ee){
+			ponderTask = null;
+			throw new IllegalStateException("Pondering failed: " + ee.getCause(), ee.getCause());
+		}
+	}
+
+	/**
+	 * Stops the search during the opponent's turn, if there is one, and waits until it has ended
+	 * @return the best move of the stopped search, packed, or Board.NO_MOVE if there was none
+	 * @throws IllegalStateException if the search failed
+	 */
+	public int stopPondering() throws IllegalStateException {
+		if(ponderTask == null){
+			return Board.NO_MOVE;
+		}
+		searcher.stop();
+		boolean interrupted = false;
+		try{
+			while(true){
+				try{
+					return ponderTask.get();
+				}catch(InterruptedException ie){
+					interrupted = true;
+				}catch(ExecutionException ee){
+					throw new IllegalStateException("Pondering failed: " + ee.getCause(), ee.getCause());
+				}
+			}
+		}finally{
+			ponderTask = null;
+			searcher.resume();
+			if(interrupted){
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Returns the type of the current player
+	 * @see breakthroughPP.players.AbstractPlayer
+	 * @see breakthroughPP.players.PlayerType
+	 */
+	@Override
+	public PlayerType getPlayerType(){
+		return PlayerType.ALPHABETA;
+	}
+}
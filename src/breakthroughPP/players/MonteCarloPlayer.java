@@ -0,0 +1,209 @@
+package breakthroughPP.players;
+
+import java.rmi.RemoteException;
+
+import breakthroughPP.board.Board;
+import breakthroughPP.preset.*;
+import breakthroughPP.gui.Showable;
+import breakthroughPP.search.MonteCarloSearcher;
+import breakthroughPP.search.ParallelMonteCarloSearcher;
+
+/**
+ * Computer player which searches its moves with a Monte Carlo tree search until the time budget
+ * of the move runs out. The tree is kept between the moves: when a move is confirmed or the
+ * opponent's move arrives, the search continues in the subtree of that move.
+ * With more than one thread the threads grow one shared tree whose nodes are kept in a pool of
+ * fixed size.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ *
+ * @author H.A.
+ * @see breakthroughPP.search.MonteCarloSearcher
+ * @see breakthroughPP.search.ParallelMonteCarloSearcher
+ */
+public class MonteCarloPlayer extends AbstractPlayer {
+
+	/** Time budget of a move in ms if none is set */
+	public static final int DEFAULT_TIME_BUDGET = 1000;
+
+	/** Time budget of a move in ms */
+	private int timeBudget = DEFAULT_TIME_BUDGET;
+
+	/** Number of search threads including the thread of the player */
+	private int threads = 1;
+
+	/** Number of nodes of the tree of the parallel search */
+	private int poolSize = ParallelMonteCarloSearcher.DEFAULT_POOL_SIZE;
+
+	/** The search with one thread, which keeps its tree between the moves */
+	private final MonteCarloSearcher searcher = new MonteCarloSearcher();
+
+	/** The search with several threads, created at the first request */
+	private ParallelMonteCarloSearcher parallelSearcher;
+
+	public MonteCarloPlayer(Requestable input, Showable output) {
+		super(input, output);
+	}
+
+	public int getTimeBudget(){
+		return timeBudget;
+	}
+
+	/**
+	 * Sets the time the player may search for one move
+	 * @param newbudget time budget in ms, greater than zero
+	 * @throws IllegalArgumentException if the budget is not greater than zero
+	 */
+	public void setTimeBudget(int newbudget) throws IllegalArgumentException {
+		if(newbudget <= 0){
+			throw new IllegalArgumentException("The time budget must be greater than zero");
+		}
+		timeBudget = newbudget;
+	}
+
+	public int getThreads(){
+		return threads;
+	}
+
+	/**
+	 * Sets the number of threads the player searches with
+	 * @param newthreads number of threads, at least 1
+	 * @throws IllegalArgumentException if the number is less than 1
+	 * @throws IllegalStateException if the player has already searched
+	 */
+	public void setThreads(int newthreads) throws IllegalArgumentException, IllegalStateException {
+		if(newthreads < 1){
+			throw new IllegalArgumentException("The number of threads must be at least 1");
+		}
+		if(parallelSearcher != null){
+			throw new IllegalStateException("The number of threads can not be changed after the first search");
+		}
+		threads = newthreads;
+	}
+
+	public int getPoolSize(){
+		return poolSize;
+	}
+
+	/**
+	 * Sets the number of nodes of the tree of the search with several threads
+	 * @param newsize number of nodes, at least 1
+	 * @throws IllegalArgumentException if the number is less than 1
+	 * @throws IllegalStateException if the player has already searched
+	 */
+	public void setPoolSize(int newsize) throws IllegalArgumentException, IllegalStateException {
+		if(newsize < 1){
+			throw new IllegalArgumentException("The pool size must be at least 1");
+		}
+		if(parallelSearcher != null){
+			throw new IllegalStateException("The pool size can not be changed after the first search");
+		}
+		poolSize = newsize;
+	}
+
+	/**
+	 * @return the playouts per second of the last search
+	 */
+	public long getPlayoutsPerSecond(){
+		if(parallelSearcher != null){
+			return parallelSearcher.getPlayoutsPerSecond();
+		}
+		return searcher.getPlayoutsPerSecond();
+	}
+
+	@Override
+	public String getStatistics(){
+		return "Playouts per second: " + getPlayoutsPerSecond();
+	}
+
+	/**
+	 * Plays the move of the endgame tablebase or the opening book if there is one, else searches
+	 * the best move within the time budget
+	 * @see breakthroughPP.players.AbstractPlayer
+	 * @see breakthroughPP.preset.Player
+	 * @return the selected (best) move
+	 * @throws RemoteException if the remote connection throws an exception
+	 * @throws Exception if another error occurs
+	 */
+	@Override
+	public Move request() throws Exception, RemoteException {
+
+		// Verify state of cycle state machine
+		super.request();
+
+		// The tablebase knows the best move of narrow boards, the opening book the first moves
+		// The search makes moves on a copy, the output shows the board of the player
+		Board position = board.copy();
+		int move = probeTablebase(position);
+		if(move == Board.NO_MOVE){
+			move = probeOpeningBook(position);
+		}
+		if(move == Board.NO_MOVE && threads > 1){
+			if(parallelSearcher == null){
+				parallelSearcher = new ParallelMonteCarloSearcher(poolSize, threads);
+			}
+			move = parallelSearcher.search(position, timeBudget);
+		} else if(move == Board.NO_MOVE){
+			move = searcher.search(position, timeBudget);
+		}
+		if(move == Board.NO_MOVE){
+			throw new PlayerException("No move possible for " + this);
+		}
+		currentMove = Move.decode(move);
+		return currentMove;
+	}
+
+	/**
+	 * Confirms the own move and keeps the subtree of the move
+	 * @param boardStatus commenting on the last move which was requested from this
+	 * @throws RemoteException if the connection with the net fails
+	 * @throws Exception if the status of the internal board with the controls' status disagrees
+	 * @see breakthroughPP.players.AbstractPlayer#confirm(Status)
+	 */
+	@Override
+	public void confirm(Status boardStatus) throws Exception, RemoteException {
+		super.confirm(boardStatus);
+		advance(Move.encode(currentMove));
+	}
+
+	/**
+	 * Makes the opponent's move and keeps the subtree of the move
+	 * @param opponentMove move of the opponent
+	 * @param boardStatus status resulting from the opponent 's move
+	 * @throws RemoteException if the connection with the net fails
+	 * @throws Exception if the status of the internal board with the controls' status disagrees
+	 * @see breakthroughPP.players.AbstractPlayer#update(Move, Status)
+	 */
+	@Override
+	public void update(Move opponentMove, Status boardStatus) throws Exception, RemoteException {
+		super.update(opponentMove, boardStatus);
+		advance(Move.encode(opponentMove));
+	}
+
+	/**
+	 * Moves the root of the tree of the search in use to the child of a move
+	 * @param move the move which has been played, packed
+	 */
+	private void advance(int move){
+		if(threads > 1){
+			if(parallelSearcher != null){
+				parallelSearcher.advance(move, board.getHashKey());
+			}
+		} else {
+			searcher.advance(move, board.getHashKey());
+		}
+	}
+
+	/**
+	 * Returns the type of the current player
+	 * @see breakthroughPP.players.AbstractPlayer
+	 * @see breakthroughPP.players.PlayerType
+	 */
+	@Override
+	public PlayerType getPlayerType(){
+		return PlayerType.MONTECARLO;
+	}
+}
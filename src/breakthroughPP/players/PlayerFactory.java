@@ -34,6 +34,8 @@ public class PlayerFactory implements Setting {
      * @throws PlayerException if in invalid player type was selected.
      * @see breakthroughPP.players.AdvancedPlayer
      * @see breakthroughPP.players.AIPlayer
+     * @see breakthroughPP.players.AlphaBetaPlayer
+     * @see breakthroughPP.players.MonteCarloPlayer
      * @see breakthroughPP.players.InterActivePlayer
      * @see breakthroughPP.players.RandomPlayer
      */
@@ -58,6 +60,10 @@ public class PlayerFactory implements Setting {
             return new RandomPlayer(null,out);
         } else if(playerType == PlayerType.AIPLAYER) {
             return new AIPlayer(null,out);
+        } else if(playerType == PlayerType.ALPHABETA) {
+            return new AlphaBetaPlayer(null,out);
+        } else if(playerType == PlayerType.MONTECARLO) {
+            return new MonteCarloPlayer(null,out);
         } else {
             throw new PlayerException("Invalid player type in file");
         }
@@ -23,7 +23,13 @@ public enum PlayerType {
 	NETPLAYER("NP"),
 	
 	/** Even more intelligent computer player*/
-	AIPLAYER("AI");
+	AIPLAYER("AI"),
+
+	/** Computer player searching with alpha-beta within a time budget */
+	ALPHABETA("AB"),
+
+	/** Computer player searching with Monte Carlo tree search within a time budget */
+	MONTECARLO("MC");
 
     /** String that represents the player type */
     private String typeString;
@@ -38,7 +44,7 @@ public enum PlayerType {
 
     /**
      * Generate a PlayerType object from its string representation
-     * @param str the player string, like AI, AC, SC, IP or NP
+     * @param str the player string, like MC, AB, AI, AC, SC, IP or NP
      * @return the player type.
      * @throws IllegalArgumentException If str is not a valid Player Type string representation.
      */
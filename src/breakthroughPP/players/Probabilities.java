@@ -3,6 +3,7 @@ package breakthroughPP.players;
 import java.util.Arrays;
 
 import breakthroughPP.board.Board;
+import breakthroughPP.board.Geometry;
 import breakthroughPP.preset.PresetException;
 import breakthroughPP.preset.Setting;
 
@@ -95,27 +96,16 @@ public class Probabilities implements Setting {
 	public void updateProbabilities(){
 		initProbabilities();
 		
-		// direction of movement
-		int d = playerInt == RED ? 1 : -1;
+		Geometry geometry = board.getGeometry();
 		
 		for(int number = 0; number < board.getNumbers();number++){
 			for(int letter = 0; letter < board.getLetters(); letter++){
 				
 				// Are there direct predators?
-				if(rightBorder(letter)){
-					if(numberInBoundaries(number,playerInt) && board.getColor(number+1*d,letter-1) == opponent){
-						probabilities[number][letter]-=0.1;
-					}
-				}
-				else if(leftBorder(letter)){
-					if(numberInBoundaries(number,playerInt) && board.getColor(number+1*d,letter+1) == opponent){
-						probabilities[number][letter]-=0.1;
-					}
-				}
-				else {
-					if(numberInBoundaries(number,playerInt) && (board.getColor(number+1*d,letter+1) == opponent
-					|| board.getColor(number+1*d,letter-1) == opponent)){
+				for(int attacker : geometry.getAttackers(playerInt, number * Board.ROW_STRIDE + letter)){
+					if(board.getColor(attacker) == opponent){
 						probabilities[number][letter]-=0.1;
+						break;
 					}
 				}
 				
@@ -127,38 +117,6 @@ public class Probabilities implements Setting {
 		}
 	}
 	
-	/**
-	 * Checks if the opponent side is examined
-	 * @param number the current examined field number
-	 * @param color the color of current player defined in {@link breakthroughPP.preset.Setting}.
-	 * @return boolean, if the number boundary (y-axis) was reached.
-	 */
-	private boolean numberInBoundaries(int number, int color){
-		if(color == RED){
-			return (number< board.getNumbers() -1);
-		}else{
-			return (number > 0);
-		}
-	}
-	
-	/**
-	 * Checks if we examine a field at the left border
-	 * @param letter x position which is checked to be one at the left margin
-	 * @return boolean whether the token is at the left border.
-	 */
-	private boolean leftBorder(int letter){
-		return (letter == 0);
-	}
-	
-	/**
-	 * Checks if we examine a field at the right border
-	 * @param letter y position which is checked to be one at the right margin
-	 * @return boolean whether the token is at the right border.
-	 */
-	private boolean rightBorder( int letter){
-		return (letter == board.getLetters()-1);
-	}
-
 	
 	
 	
@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.Random;
 
 import breakthroughPP.board.Board;
+import breakthroughPP.board.Geometry;
 import breakthroughPP.preset.*;
 
 
@@ -62,15 +63,9 @@ public class Prometheus implements Setting{
 	 */
 	public void viterbi(Board newboard, int playerInt,Move lastMove) throws PresetException{
 		
-		Board runboard=null;
-		Board staticboard = null;
-		try {
-			runboard 	= new Board(newboard);
-			staticboard	= new Board(newboard);
-		} catch (PresetException e) {
-			e.printStackTrace();
-		}	
-		List<Move> validMovesList = new ArrayList<Move>(runboard.getValidMoves(playerInt));
+		// Moves are done on newboard and reverted afterwards, so remember whose turn it is
+		int turn = newboard.getTurn();
+		List<Move> validMovesList = new ArrayList<Move>(newboard.getValidMoves(playerInt));
 		
 		double temp=1;
 		double maximum =1;
@@ -81,23 +76,19 @@ public class Prometheus implements Setting{
 				continue;
 			}
 			
-			runboard.setTurn(playerInt);	
-			//set a Blue Move on a simulated board 
-			try{ 
-				if(!runboard.move(eachmove).isOk() ){
-				}
-			}catch(PresetException presetex){
-				continue;
-			}
+			newboard.setTurn(playerInt);	
+			//set a Blue Move on the board 
+			long undo = newboard.makeMove(Move.encode(eachmove));
 			
-			temp = getScore(lastMove, eachmove,runboard);
-			runboard = new Board(staticboard);
+			temp = getScore(lastMove, eachmove,newboard);
+			newboard.unmakeMove(undo);
 			
 			if(maximum <= temp ){
 				maximum = temp;	
 				maxMove = eachmove;
 			}
 		}
+		newboard.setTurn(turn);
 	}
 	
 	/** Calculate distance of two Moves
@@ -136,27 +127,20 @@ public class Prometheus implements Setting{
 			
 			score += 0.2;
 			
-			//Its a freekill?
-			int diay = killmove.getEnd().getNumber()+d;
-			int yDia = (diay < newboard.getNumbers() && diay >=0) ? diay: 0;	
-			int dia = killmove.getEnd().getLetter();
-			int xDia  = (dia-1 < newboard.getLetters() && dia-1 >=0) ? dia-1 : 0;
-			int xDia2 = (dia+1 < newboard.getLetters() && dia+1 >=0) ? dia+1 : 0;
+			// The color moving in direction d
+			Geometry geometry = newboard.getGeometry();
+			int dColor = d == 1 ? RED : BLUE;
+			int end = killmove.getEnd().getSquare();
 			
-			if (xDia !=0 && !(newboard.getColor(yDia,xDia) == opponent) ||
-					(xDia2 !=0 && !(newboard.getColor(yDia,xDia2) == opponent)) ){		
+			//Its a freekill?
+			if (isNotAllOpponent(newboard, geometry.getAttackers(dColor, end), opponent)){		
 				score +=0.3;
 			}
 			
-			//have i defense?
-			diay = killmove.getEnd().getNumber()+d*(-2);
-			yDia = (diay < newboard.getNumbers() && diay >=0) ? diay: 0;	
-			dia = killmove.getEnd().getLetter();
-			xDia  = (dia-1 < newboard.getLetters() && dia-1 >=0) ? dia-1 : 0;
-			xDia2 = (dia+1 < newboard.getLetters() && dia+1 >=0) ? dia+1 : 0;
-			
-			if (xDia !=0 && !(newboard.getColor(yDia,xDia) == opponent) ||
-					(xDia2 !=0 && !(newboard.getColor(yDia,xDia2) == opponent)) ){		
+			//have i defense? Look at the diagonal fields two numbers behind the end field
+			int behind = end - geometry.getForward(dColor);
+			if (behind >= 0 && behind < newboard.getNumbers() * Board.ROW_STRIDE
+					&& isNotAllOpponent(newboard, geometry.getAttackers(1 - dColor, behind), opponent)){		
 				score -=0.5;
 			}
 			
@@ -165,6 +149,21 @@ public class Prometheus implements Setting{
 		return score; 
 	}
 	
+	/** Checks if one of some fields does not hold a token of the opponent
+	 * @param newboard Board
+	 * @param squares square indices of the fields
+	 * @param opponent Color of Opponent
+	 * @return true if at least one field does not hold a token of the opponent
+	 */
+	private boolean isNotAllOpponent(Board newboard, int[] squares, int opponent){
+		for(int square : squares){
+			if(newboard.getColor(square) != opponent){
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	/** Calculate if move is a diagonal Move
 	 * @param move a Move
 	 * @return true it is diagonal move
@@ -237,19 +236,7 @@ public class Prometheus implements Setting{
 	 * @return score for living token
 	 */
 	public double LivingStones(Board newboard, int playerInt,int opponent){
-		double score=0;
-		
-		
-		for(int i=0; i < newboard.getNumbers(); i++){			// numbers
-			for(int j=0; j < newboard.getLetters(); j++){		// letters
-				if(playerInt==newboard.getColor(i,j) ){
-					score +=1;
-				}				
-				if(opponent == newboard.getColor(i,j) ){
-					score -=1;
-				}
-			}
-		}
+		double score = newboard.getTokenCount(playerInt) - newboard.getTokenCount(opponent);
 		return score;
 	}
 	
@@ -3,8 +3,6 @@ package breakthroughPP.players;
 import breakthroughPP.preset.Move;
 
 import java.rmi.RemoteException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
 
 import breakthroughPP.preset.Requestable;
@@ -24,6 +22,9 @@ public class RandomPlayer extends AbstractPlayer {
 	/** Random number generator for random move selection */
 	private final Random random = new Random();
 
+	/** Buffer for the packed valid moves, see {@link breakthroughPP.board.Board#generateMoves} */
+	private int[] moves;
+
 	/**
 	 * Constructor with input and output instances
 	 * @param input here an instance can be bound to which allows input of moves
@@ -54,10 +55,14 @@ public class RandomPlayer extends AbstractPlayer {
 	public Move request() throws Exception, RemoteException{
 
 		super.request();
-	
-		List<Move> validMoves = new ArrayList<Move>(board.getValidMoves(color));
+
+		// The player may have been initialised again for a larger board
+		if(moves == null || moves.length < board.getMaxMoves()){
+			moves = new int[board.getMaxMoves()];
+		}
+		int count = board.generateMoves(color, moves);
 		
-		currentMove = validMoves.get(random.nextInt(validMoves.size()));
+		currentMove = Move.decode(moves[random.nextInt(count)]);
 		return currentMove;
 	}
 
@@ -15,6 +15,12 @@ public class Move implements java.io.Serializable {
 	this.end = new Position(move.end);
     }
 
+    private Move(Position start, Position end, boolean shared) {
+	this.start = start;
+	this.end = end;
+	this.shared = shared;
+    }
+
     // ----------------------------------------------------------------
     public Position getStart() {
 	return start;
@@ -25,17 +31,114 @@ public class Move implements java.io.Serializable {
     }
 
     public void setStart(Position start) throws PresetException {
+	if (shared)
+	    throw new PresetException("shared move can not be changed");
 	if (start == null) 
 	    throw new PresetException("position null not allowed");
 	this.start = start;
     }
 
     public void setEnd(Position end) throws PresetException {
+	if (shared)
+	    throw new PresetException("shared move can not be changed");
 	if (end == null) 
 	    throw new PresetException("position null not allowed");
 	this.end = end;
     }
 
+    // packed --------------------------------------------------------
+    /**
+     * Packs a move into one int, so moves can be stored without
+     * allocating objects. The start square (see {@link
+     * Position#getSquare()}) is stored in the bits 10 to 19, the end
+     * square in the bits 0 to 9. The packed value is never negative and
+     * differs for different moves.
+     * @param move the move to be packed
+     * @return the packed move
+     */
+    public static int encode(Move move) {
+	return encode(move.start.getSquare(), move.end.getSquare());
+    }
+
+    /**
+     * Packs a move given by its square indices.
+     * @param startSquare square index of the start position
+     * @param endSquare square index of the end position
+     * @return the packed move
+     * @see #encode(Move)
+     */
+    public static int encode(int startSquare, int endSquare) {
+	return (startSquare << SQUARE_BITS) | endSquare;
+    }
+
+    /**
+     * @param packed a move packed by {@link #encode(Move)}
+     * @return the square index of the start position
+     */
+    public static int getStartSquare(int packed) {
+	return packed >>> SQUARE_BITS;
+    }
+
+    /**
+     * @param packed a move packed by {@link #encode(Move)}
+     * @return the square index of the end position
+     */
+    public static int getEndSquare(int packed) {
+	return packed & ((1 << SQUARE_BITS) - 1);
+    }
+
+    /**
+     * Unpacks a move packed by {@link #encode(Move)}.
+     * @param packed the packed move
+     * @return the move
+     * @throws PresetException if a square is not within 26 x 26 fields
+     */
+    public static Move decode(int packed) throws PresetException {
+	return of(getStartSquare(packed), getEndSquare(packed));
+    }
+
+    // interned ------------------------------------------------------
+    /**
+     * Returns the move between two squares. Moves by one number (row)
+     * forward or backward and at most one letter to the side, which
+     * are all moves a token can do, are created once and shared, like
+     * the positions of {@link Position#of(int, int)}. Other moves are
+     * created on every call.
+     * @param startSquare square index of the start position
+     * @param endSquare square index of the end position
+     * @return the move, shared if it is a step of a token
+     * @throws PresetException if a square is not within 26 x 26 fields
+     */
+    public static Move of(int startSquare, int endSquare) throws PresetException {
+	int step = stepIndex(endSquare - startSquare);
+	Position start = Position.fromSquare(startSquare);
+	Position end = Position.fromSquare(endSquare);
+	if (step < 0)
+	    return new Move(start, end);
+	return interned[(start.getNumber() * 26 + start.getLetter()) * STEPS + step];
+    }
+
+    /**
+     * @return true if this is a shared instance returned by {@link #of(int, int)}
+     */
+    public boolean isShared() {
+	return shared;
+    }
+
+    /**
+     * Index of a step of a token in the table of the shared moves.
+     * @param distance difference of the end and start square index
+     * @return the index of the step or -1 if it is not a step of a token
+     */
+    private static int stepIndex(int distance) {
+	int n = Position.SQUARES_PER_NUMBER;
+	if (distance >= n - 1 && distance <= n + 1)
+	    return distance - n + 1;
+	if (distance >= -n - 1 && distance <= -n + 1)
+	    return distance + n + 4;
+	return -1;
+    }
+
     // ----------------------------------------------------------------
     public boolean equals(Object obj) {
 	if (obj == this) return true;
@@ -58,7 +161,34 @@ public class Move implements java.io.Serializable {
 
     // private -------------------------------------------------------
     private Position start, end;
+    private transient boolean shared;
 
     // private static ------------------------------------------------
     private static final long serialVersionUID = 1L;
+    private static final int SQUARE_BITS = 10;
+    private static final int STEPS = 6;
+    private static final Move[] interned = new Move[26 * 26 * STEPS];
+
+    static {
+	int n = Position.SQUARES_PER_NUMBER;
+	int[] distances = { n - 1, n, n + 1, -n - 1, -n, -n + 1 };
+	for (int number = 0; number < 26; number++) {
+	    for (int letter = 0; letter < 26; letter++) {
+		for (int step = 0; step < STEPS; step++) {
+		    int end = number * n + letter + distances[step];
+		    int endNumber = Math.floorDiv(end, n);
+		    int endLetter = Math.floorMod(end, n);
+		    if (endNumber < 0 || endNumber >= 26 || endLetter >= 26)
+			continue;
+		    try {
+			interned[(number * 26 + letter) * STEPS + step] =
+			    new Move(Position.of(letter, number),
+				     Position.of(endLetter, endNumber), true);
+		    } catch (PresetException pe) {
+			// Not reached, both positions are checked above
+		    }
+		}
+	    }
+	}
+    }
 }
@@ -15,6 +15,9 @@ public class Position implements java.io.Serializable {
 	this.number = pos.number;
     }
 
+    private Position() {
+    }
+
     // ----------------------------------------------------------------
     public int getLetter() {
 	return letter;
@@ -25,12 +28,16 @@ public class Position implements java.io.Serializable {
     }
 
     public void setLetter(int letter) throws PresetException {
+	if (shared)
+	    throw new PresetException("shared position can not be changed");
 	if (letter < 0 || letter >= 26) 
 	    throw new PresetException("letter out of bounds");
 	this.letter = letter;
     }
 
     public void setNumber(int number) throws PresetException {
+	if (shared)
+	    throw new PresetException("shared position can not be changed");
 	if (number < 0 || number >= 26) 
 	    throw new PresetException("number out of bounds");
 	this.number = number;
@@ -55,16 +62,77 @@ public class Position implements java.io.Serializable {
 	return "" + alphabet.charAt(letter) + (number + 1); 
     }
 
+    // square --------------------------------------------------------
+    /**
+     * Index of the position if every number of the board is given
+     * SQUARES_PER_NUMBER squares: number * SQUARES_PER_NUMBER + letter.
+     * @return the square index of this position
+     */
+    public int getSquare() {
+	return number * SQUARES_PER_NUMBER + letter;
+    }
+
+    /**
+     * Creates the position of a square index.
+     * @param square square index as returned by {@link #getSquare()}
+     * @return the position of the square
+     * @throws PresetException if the square is not within 26 x 26 fields
+     */
+    public static Position fromSquare(int square) throws PresetException {
+	return of(square % SQUARES_PER_NUMBER, square / SQUARES_PER_NUMBER);
+    }
+
+    // interned ------------------------------------------------------
+    /**
+     * Returns the shared instance of a position. All 26 x 26
+     * positions are created once, so no object is allocated. The
+     * shared instances can not be changed, their setters throw a
+     * PresetException.
+     * @param letter the letter of the position
+     * @param number the number of the position
+     * @return the shared position
+     * @throws PresetException if the position is not within 26 x 26 fields
+     */
+    public static Position of(int letter, int number) throws PresetException {
+	if (letter < 0 || letter >= 26 || number < 0 || number >= 26)
+	    throw new PresetException("position out of bounds");
+	return interned[number * 26 + letter];
+    }
+
+    /**
+     * @return true if this is a shared instance returned by {@link #of(int, int)}
+     */
+    public boolean isShared() {
+	return shared;
+    }
+
     // static --------------------------------------------------------
     public static String getAlphabet() {
 	return alphabet;
     }
 
+    /** Squares reserved for each number (row) in a square index */
+    public static final int SQUARES_PER_NUMBER = 32;
+
     // private -------------------------------------------------------
     private int letter;
     private int number;
+    private transient boolean shared;
 
     // private static ------------------------------------------------
     private static final long serialVersionUID = 1L;
     private static final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final Position[] interned = new Position[26 * 26];
+
+    static {
+	for (int number = 0; number < 26; number++) {
+	    for (int letter = 0; letter < 26; letter++) {
+		Position pos = new Position();
+		pos.letter = letter;
+		pos.number = number;
+		pos.shared = true;
+		interned[number * 26 + letter] = pos;
+	    }
+	}
+    }
 }
@@ -1,6 +1,7 @@
 package breakthroughPP.preset;
 
 import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Interface allowing to receive information from the game board
@@ -59,4 +60,38 @@ public interface Viewer {
 	 * throws an exception
 	 */
 	HashSet<Move> getValidMoves(int color) throws PresetException; 
+	
+	/**
+	 * Returns a cached, unmodifiable view of the valid moves for a player. It is only recalculated
+	 * for the tokens affected by the moves since the last call.
+	 * @param color the color of the player
+	 * @return the valid moves of a player with color "color"
+	 * @throws PresetException when the {@link breakthroughPP.board.Board#getValidMoveSet(int color)}
+	 * throws an exception
+	 */
+	Set<Move> getValidMoveSet(int color) throws PresetException;
+	
+	/**
+	 * Returns the version of the valid moves of a player. It is counted up whenever the moves
+	 * change, so a set of {@link #getValidMoveSet(int)} fetched at the same version is still up
+	 * to date and need not be fetched again.
+	 * @param color the color of the player
+	 * @return the version of the valid moves of the player with color "color"
+	 */
+	long getMovesVersion(int color);
+	
+	/**
+	 * Checks if a move is valid for a player without generating all valid moves.
+	 * @param color the color of the player
+	 * @param move the move to be checked
+	 * @return true if the player with color "color" may do the move
+	 */
+	boolean isLegal(int color, Move move);
+	
+	/**
+	 * Returns a 64 bit Zobrist key identifying the current position: the tokens on the board and
+	 * whose turn it is.
+	 * @return the Zobrist key of the current position
+	 */
+	long getHashKey();
 }
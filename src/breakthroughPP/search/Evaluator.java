@@ -0,0 +1,67 @@
+package breakthroughPP.search;
+
+import breakthroughPP.board.Board;
+import breakthroughPP.preset.*;
+
+/**
+ * Static evaluation of a position for the search. The rating is the difference of the ratings
+ * of both colors, where a color is rated by its number of tokens, the advancement of its tokens
+ * and the distance of its most advanced token to the opponent's home row.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author H.A.
+ */
+public class Evaluator implements Setting {
+
+    /**
+     * Rating of a won position, ratings of positions which are not decided are much smaller
+     */
+    public static final int WIN = 1000000;
+
+    /**
+     * Weight of a token
+     */
+    private static final int TOKEN = 100;
+
+    /**
+     * Weight of a number (row) a token has advanced
+     */
+    private static final int ADVANCEMENT = 4;
+
+    /**
+     * Weight of a number (row) the most advanced token has advanced, squared
+     */
+    private static final int FRONT = 2;
+
+    // ==== Instancemethods ====================================================================================
+    /**
+     * Rates a position from the view of a player.
+     *
+     * @param board the position to rate
+     * @param color the color of the player, RED or BLUE
+     * @return the rating, higher is better for the player
+     */
+    public int evaluate(Board board, int color) {
+        return rate(board, color) - rate(board, 1 - color);
+    }
+
+    /**
+     * Rates the tokens of one color.
+     *
+     * @param board the position to rate
+     * @param color the color of the tokens, RED or BLUE
+     * @return the rating of the tokens
+     */
+    private int rate(Board board, int color) {
+        int front = board.getFrontNumber(color);
+        if (front < 0) {
+            return 0;
+        }
+        int advanced = color == RED ? front : board.getNumbers() - 1 - front;
+        return TOKEN * board.getTokenCount(color) + ADVANCEMENT * board.getAdvancement(color)
+                + FRONT * advanced * advanced;
+    }
+}
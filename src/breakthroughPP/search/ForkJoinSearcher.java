@@ -0,0 +1,649 @@
+package breakthroughPP.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import breakthroughPP.board.Board;
+import breakthroughPP.preset.*;
+
+/**
+ * Parallel alpha-beta search which splits the work after the Young Brothers Wait scheme: the
+ * first move of a node is searched alone, then the other moves are searched in parallel as
+ * tasks of a {@link ForkJoinPool}, each on its own copy of the board. The siblings share the
+ * best score found so far and stop as soon as one of them causes a cutoff. Only nodes with a
+ * remaining depth of at least {@link #SPLIT_DEPTH} are split.
+ * <p>
+ * The search keeps no transposition table and the scores are bounded by the window (fail-hard),
+ * so the score of a move does not depend on the order in which the threads finish. At the root
+ * a move is only compared with the moves before it, so the first of the moves with the best
+ * score gets an exact score and is chosen. Thus the search returns the same
+ * move and score as the {@link Searcher} without table at the same depth, with any number of
+ * threads.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author H.A.
+ */
+public class ForkJoinSearcher implements Setting {
+
+    /**
+     * Minimal remaining depth of a node whose moves are searched in parallel
+     */
+    public static final int SPLIT_DEPTH = 4;
+
+    /**
+     * Bound of all ratings
+     */
+    private static final int INFINITY = Evaluator.WIN + 1;
+
+    /**
+     * Nodes between two looks at the clock and at the cutoffs of the siblings
+     */
+    private static final int CHECK_INTERVAL = 255;
+
+    /**
+     * Rates the leaves of the search, shared by all threads
+     */
+    private final Evaluator evaluator;
+
+    /**
+     * Runs the tasks of the search
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Number of positions visited by the last search
+     */
+    private final LongAdder nodes = new LongAdder();
+
+    /**
+     * Time in ns of System.nanoTime() at which the search is stopped
+     */
+    private volatile long deadline;
+
+    /**
+     * Set if the time budget ran out, the running iteration is thrown away then
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Depth of the last completed iteration of the last search
+     */
+    private volatile int completedDepth;
+
+    /**
+     * Rating of the best move of the last completed iteration
+     */
+    private int score;
+
+    // ==== Constructor ====================================================================================
+    /**
+     * @param newevaluator rates the leaves of the search, it is used by all threads
+     * @param threads      number of threads of the pool, at least 1
+     * @throws IllegalArgumentException if threads is less than 1
+     */
+    public ForkJoinSearcher(Evaluator newevaluator, int threads) throws IllegalArgumentException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1");
+        }
+        evaluator = newevaluator;
+        pool = new ForkJoinPool(threads);
+    }
+
+    // ==== Getter ====================================================================================
+
+    public int getThreads() {
+        return pool.getParallelism();
+    }
+
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    // ==== Instancemethods ====================================================================================
+    /**
+     * Searches the best move of the player whose turn it is, see
+     * {@link Searcher#search(Board, long, int)}.
+     *
+     * @param board    the position to search, it is restored after the search
+     * @param budget   time budget in ms
+     * @param maxdepth the depth after which the search stops even if there is time left
+     * @return the best move, packed, or {@link Board#NO_MOVE} if the player can not move or the
+     * game is over
+     */
+    public int search(Board board, long budget, int maxdepth) {
+        return search(board, budget, null, maxdepth);
+    }
+
+    /**
+     * Searches the best move of the player whose turn it is within the deadlines of a time
+     * control, see {@link Searcher#search(Board, TimeControl, int)}.
+     *
+     * @param board    the position to search, it is restored after the search
+     * @param control  the time control of the move, which has been started
+     * @param maxdepth the depth after which the search stops even if there is time left
+     * @return the best move, packed, or {@link Board#NO_MOVE} if the player can not move or the
+     * game is over
+     */
+    public int search(Board board, TimeControl control, int maxdepth) {
+        return search(board, control.getHardRemaining(), control, maxdepth);
+    }
+
+    /**
+     * @param board    the position to search
+     * @param budget   time budget in ms
+     * @param control  the time control of the move or null
+     * @param maxdepth the depth after which the search stops even if there is time left
+     * @return the best move, see {@link #search(Board, long, int)}
+     */
+    private int search(Board board, long budget, TimeControl control, int maxdepth) {
+        deadline = System.nanoTime() + budget * 1000000L;
+        stopped = false;
+        nodes.reset();
+        completedDepth = 0;
+        score = 0;
+
+        if (!board.getStatus().isOk()) {
+            return Board.NO_MOVE;
+        }
+        int[] rootMoves = new int[board.getMaxMoves()];
+        int count = board.generateMoves(board.getTurn(), rootMoves);
+        if (count == 0) {
+            return Board.NO_MOVE;
+        }
+        MoveOrdering.orderByStage(board, rootMoves, count, Board.NO_MOVE);
+        if (count == 1) {
+            return rootMoves[0];
+        }
+
+        int bestMove = rootMoves[0];
+        for (int depth = 1; depth <= Math.min(maxdepth, Searcher.MAX_PLY); depth++) {
+            RootTask root = new RootTask(board, rootMoves, count, depth);
+            pool.invoke(root);
+            // The moves with exact scores before the time ran out are compared correctly
+            bestMove = rootMoves[root.best];
+            if (stopped) {
+                break;
+            }
+
+            // Search the best move first in the next iteration, like the sequential search
+            System.arraycopy(rootMoves, 0, rootMoves, 1, root.best);
+            rootMoves[0] = bestMove;
+            completedDepth = depth;
+            score = root.value;
+
+            // A won or lost game does not change with a deeper search
+            if (Math.abs(score) >= Evaluator.WIN - Searcher.MAX_PLY) {
+                break;
+            }
+            if (control != null) {
+                if (depth > 1 && root.best != 0) {
+                    control.bestMoveChanged();
+                }
+                if (!control.canStartIteration()) {
+                    break;
+                }
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Ends the threads of the pool, the searcher can not be used afterwards.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Copies a board for a task.
+     *
+     * @param board the board to copy
+     * @return the copy
+     * @throws IllegalStateException if the board can not be copied
+     */
+    private static Board copy(Board board) throws IllegalStateException {
+        try {
+            return board.copy();
+        } catch (PresetException pe) {
+            // The size of a board which exists is valid
+            throw new IllegalStateException(pe.getMessage());
+        }
+    }
+
+    /**
+     * Runs the tasks of the siblings of a split node and waits for them. They are forked in
+     * reverse order, so the thread of the node takes them from its queue in the order of the
+     * moves, while other threads steal the last ones.
+     *
+     * @param children the tasks in the order of the moves
+     */
+    private static void invokeInOrder(List<ChildTask> children) {
+        for (int i = children.size() - 1; i > 0; i--) {
+            children.get(i).fork();
+        }
+        children.get(0).invoke();
+        for (int i = 1; i < children.size(); i++) {
+            children.get(i).join();
+        }
+    }
+
+    /**
+     * Limits a rating to the window of the search.
+     *
+     * @param value the rating
+     * @param alpha the lower bound of the window
+     * @param beta  the upper bound of the window
+     * @return the rating within the window
+     */
+    private static int clamp(int value, int alpha, int beta) {
+        return Math.max(alpha, Math.min(beta, value));
+    }
+
+    // ==== Tasks ====================================================================================
+
+    /**
+     * A node whose moves after the first one are searched in parallel. The siblings share the
+     * lower bound of the window, which rises when a sibling finds a better move.
+     */
+    private static final class Split {
+
+        /** The split node above this one, null at the root */
+        private final Split parent;
+
+        /** The upper bound of the window */
+        private final int beta;
+
+        /** The best score found so far, at least the lower bound of the window */
+        private volatile int alpha;
+
+        /** Set if a sibling reached beta, the others are stopped then */
+        private volatile boolean cutoff;
+
+        private Split(Split newparent, int newalpha, int newbeta) {
+            parent = newparent;
+            alpha = newalpha;
+            beta = newbeta;
+        }
+
+        /**
+         * Reports the score of a sibling.
+         *
+         * @param value the score
+         */
+        private synchronized void update(int value) {
+            if (value > alpha) {
+                alpha = value;
+                if (value >= beta) {
+                    cutoff = true;
+                }
+            }
+        }
+
+        /**
+         * @return whether a cutoff at this node or a node above makes the search useless
+         */
+        private boolean isCancelled() {
+            for (Split split = this; split != null; split = split.parent) {
+                if (split.cutoff) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The move buffers and the board of one task, which searches a subtree alone until it
+     * splits a node.
+     */
+    private final class Context {
+
+        private final Board board;
+
+        /** One move buffer per remaining depth */
+        private final int[][] moves;
+
+        /** Number of positions visited by this task, without the quiescence search */
+        private long count;
+
+        /** Plays out the captures and runner moves at the leaves */
+        private final Quiescence quiescence = new Quiescence(evaluator);
+
+        /** Set if the results of this task are not needed any more */
+        private boolean aborted;
+
+        private Context(Board newboard, int depth) {
+            board = newboard;
+            moves = new int[depth + 1][board.getMaxMoves()];
+            quiescence.setDeadline(deadline);
+        }
+
+        /**
+         * Rates the position on the board from the view of the player whose turn it is,
+         * fail-hard.
+         *
+         * @param depth remaining depth
+         * @param ply   distance to the root of the search
+         * @param alpha the lower bound of the window
+         * @param beta  the upper bound of the window
+         * @param split the split node this task works for, null for the first move of the root
+         * @return the rating within the window, alpha and beta are only bounds
+         */
+        private int search(int depth, int ply, int alpha, int beta, Split split) {
+            if ((++count & CHECK_INTERVAL) == 0) {
+                if (System.nanoTime() >= deadline) {
+                    stopped = true;
+                }
+                aborted = stopped || split != null && split.isCancelled();
+            }
+            if (aborted) {
+                return alpha;
+            }
+
+            // The previous move has ended the game, winning sooner is better
+            if (!board.getStatus().isOk()) {
+                return clamp(-(Evaluator.WIN - ply), alpha, beta);
+            }
+            int color = board.getTurn();
+            if (depth == 0) {
+                int value = quiescence.search(board, ply, alpha, beta);
+                if (quiescence.isStopped()) {
+                    stopped = true;
+                    aborted = true;
+                    return alpha;
+                }
+                return clamp(value, alpha, beta);
+            }
+            if (ply == Searcher.MAX_PLY) {
+                return clamp(evaluator.evaluate(board, color), alpha, beta);
+            }
+            int[] buffer = moves[depth];
+            int n = board.generateMoves(color, buffer);
+            if (n == 0) {
+                return clamp(-(Evaluator.WIN - ply), alpha, beta);
+            }
+            MoveOrdering.orderByStage(board, buffer, n, Board.NO_MOVE);
+
+            for (int i = 0; i < n; i++) {
+                // The young brothers wait until the eldest brother has been searched
+                if (i == 1 && depth >= SPLIT_DEPTH) {
+                    return split(depth, ply, alpha, beta, buffer, n, split);
+                }
+                long undo = board.makeMove(buffer[i]);
+                int value = -search(depth - 1, ply + 1, -beta, -alpha, split);
+                board.unmakeMove(undo);
+                if (aborted) {
+                    return alpha;
+                }
+                if (value >= beta) {
+                    return beta;
+                }
+                if (value > alpha) {
+                    alpha = value;
+                }
+            }
+            return alpha;
+        }
+
+        /**
+         * Searches the moves of a node after the first one in parallel.
+         *
+         * @param depth  remaining depth
+         * @param ply    distance to the root of the search
+         * @param alpha  the lower bound of the window, raised by the first move
+         * @param beta   the upper bound of the window
+         * @param buffer the moves of the node, packed
+         * @param n      the number of moves
+         * @param parent the split node this task works for
+         * @return the rating within the window
+         */
+        private int split(int depth, int ply, int alpha, int beta, int[] buffer, int n, Split parent) {
+            Split node = new Split(parent, alpha, beta);
+            List<ChildTask> children = new ArrayList<>(n - 1);
+            for (int i = 1; i < n; i++) {
+                children.add(new ChildTask(node, copy(board), buffer[i], depth, ply, null, 0));
+            }
+            invokeInOrder(children);
+
+            if (stopped || parent != null && parent.isCancelled()) {
+                aborted = true;
+                return alpha;
+            }
+            return node.cutoff ? beta : node.alpha;
+        }
+    }
+
+    /**
+     * Searches one move of a split node on its own board.
+     */
+    private final class ChildTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Split node;
+        private final Board board;
+        private final int move;
+        private final int depth;
+        private final int ply;
+
+        /** The search of the root if the node is the root, else null */
+        private final RootTask root;
+
+        /** Index of the move at the root */
+        private final int index;
+
+        /** The score of the move, only valid if the task was not aborted */
+        private int value;
+
+        /** Whether the task was stopped before the move was searched completely */
+        private boolean aborted;
+
+        private ChildTask(Split newnode, Board newboard, int newmove, int newdepth, int newply, RootTask newroot,
+                int newindex) {
+            node = newnode;
+            board = newboard;
+            move = newmove;
+            depth = newdepth;
+            ply = newply;
+            root = newroot;
+            index = newindex;
+        }
+
+        @Override
+        protected void compute() {
+            // A task searches too few nodes to rely on the look at the clock of its context
+            if (System.nanoTime() >= deadline) {
+                stopped = true;
+            }
+            if (stopped || node.isCancelled()) {
+                aborted = true;
+                return;
+            }
+            int alpha = root != null ? root.getAlpha(index) : node.alpha;
+            Context context = new Context(board, depth - 1);
+            board.makeMove(move);
+            value = -context.search(depth - 1, ply + 1, -node.beta, -alpha, node);
+            nodes.add(context.count + context.quiescence.getNodes());
+            aborted = context.aborted;
+            if (aborted) {
+                return;
+            }
+            if (root != null) {
+                root.report(index, value, value > alpha);
+            } else {
+                node.update(value);
+            }
+        }
+    }
+
+    /**
+     * Searches all moves of the root: the first one alone, the others in parallel. A move is
+     * searched with the best score of the moves before it which are already finished, so it
+     * gets an exact score if it is better than all moves before it, as in the sequential search.
+     */
+    private final class RootTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Board board;
+        private final int[] rootMoves;
+        private final int count;
+        private final int depth;
+
+        /** Scores of the finished moves and whether they are exact */
+        private final int[] values;
+        private final boolean[] exact;
+
+        /** Index of the best move and its score */
+        private int best;
+        private int value;
+
+        private RootTask(Board newboard, int[] newmoves, int newcount, int newdepth) {
+            board = newboard;
+            rootMoves = newmoves;
+            count = newcount;
+            depth = newdepth;
+            values = new int[count];
+            exact = new boolean[count];
+        }
+
+        /**
+         * @param index the index of a move
+         * @return the best exact score of the finished moves before the move
+         */
+        private synchronized int getAlpha(int index) {
+            int alpha = -INFINITY;
+            for (int i = 0; i < index; i++) {
+                if (exact[i]) {
+                    alpha = Math.max(alpha, values[i]);
+                }
+            }
+            return alpha;
+        }
+
+        /**
+         * Reports the score of a move.
+         *
+         * @param index      the index of the move
+         * @param newvalue   the score
+         * @param exactvalue whether the score is exact and not only an upper bound
+         */
+        private synchronized void report(int index, int newvalue, boolean exactvalue) {
+            values[index] = newvalue;
+            exact[index] = exactvalue;
+        }
+
+        @Override
+        protected void compute() {
+            Context context = new Context(board, depth);
+            long undo = board.makeMove(rootMoves[0]);
+            int first = -context.search(depth - 1, 1, -INFINITY, INFINITY, null);
+            board.unmakeMove(undo);
+            nodes.add(context.count + context.quiescence.getNodes());
+            if (context.aborted) {
+                return;
+            }
+            report(0, first, true);
+
+            Split node = new Split(null, -INFINITY, INFINITY);
+            List<ChildTask> children = new ArrayList<>(count - 1);
+            for (int i = 1; i < count; i++) {
+                children.add(new ChildTask(node, copy(board), rootMoves[i], depth, 0, this, i));
+            }
+            invokeInOrder(children);
+
+            // The first of the moves with the best score, as in the sequential search
+            synchronized (this) {
+                best = 0;
+                value = values[0];
+                for (int i = 1; i < count; i++) {
+                    if (exact[i] && values[i] > value) {
+                        best = i;
+                        value = values[i];
+                    }
+                }
+            }
+        }
+    }
+
+    // ==== Test main ==============================================================================
+    /**
+     * Compares the moves and scores of the sequential and the parallel search at the same depth
+     * on some positions and reports the times.
+     *
+     * @param args letters, numbers, depth, number of threads and number of positions, default
+     *             8 8 6 (available processors) 20
+     * @throws PresetException if the board size is not valid
+     */
+    public static void main(String[] args) throws PresetException {
+        int letters = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int numbers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int positions = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+
+        Searcher sequential = new Searcher(new Evaluator());
+        sequential.getOrdering().setKillers(false);
+        sequential.getOrdering().setHistory(false);
+        ForkJoinSearcher parallel = new ForkJoinSearcher(new Evaluator(), threads);
+        Random random = new Random(1);
+        long sequentialTime = 0;
+        long parallelTime = 0;
+        long sequentialNodes = 0;
+        long parallelNodes = 0;
+        int differences = 0;
+        for (int p = 0; p < positions; p++) {
+            Board board = Board.create(letters, numbers);
+            int[] moves = new int[board.getMaxMoves()];
+            int plies = random.nextInt(4 * numbers);
+            for (int i = 0; i < plies && board.getStatus().isOk(); i++) {
+                board.makeMove(moves[random.nextInt(board.generateMoves(board.getTurn(), moves))]);
+            }
+            if (!board.getStatus().isOk()) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+            int sequentialMove = sequential.search(board, DAY, depth);
+            sequentialTime += System.nanoTime() - start;
+            start = System.nanoTime();
+            int parallelMove = parallel.search(board, DAY, depth);
+            parallelTime += System.nanoTime() - start;
+            sequentialNodes += sequential.getNodes();
+            parallelNodes += parallel.getNodes();
+
+            if (sequentialMove != parallelMove || sequential.getScore() != parallel.getScore()) {
+                differences++;
+                System.out.println("Position " + p + ": sequential " + sequentialMove + " (" + sequential.getScore()
+                        + "), parallel " + parallelMove + " (" + parallel.getScore() + ")");
+            }
+        }
+        parallel.shutdown();
+        System.out.println(positions + " positions at depth " + depth + ", " + differences + " differences, sequential "
+                + sequentialTime / 1000000 + " ms (" + sequentialNodes + " nodes), parallel with " + threads + " threads "
+                + parallelTime / 1000000 + " ms (" + parallelNodes + " nodes)");
+        if (differences > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Time budget in ms of the test, which searches to a fixed depth
+     */
+    private static final long DAY = 24L * 3600 * 1000;
+}
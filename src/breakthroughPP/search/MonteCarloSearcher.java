@@ -0,0 +1,302 @@
+package breakthroughPP.search;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import breakthroughPP.board.Board;
+import breakthroughPP.board.Playout;
+import breakthroughPP.preset.*;
+
+/**
+ * Monte Carlo tree search with the UCT rule. Each iteration descends the tree to a leaf choosing
+ * the child with the best upper confidence bound, expands the leaf, plays the game to the end
+ * with random moves (see {@link Playout}) and counts the result in all nodes on the way. The move visited most often
+ * is played.
+ * <p>
+ * The tree is kept between the moves: {@link #advance(int, long)} makes the child of a move
+ * the new root, so the iterations spent on the moves which are actually played are not lost.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author H.A.
+ */
+public class MonteCarloSearcher implements Setting {
+
+    /**
+     * Weight of the exploration term of the upper confidence bound
+     */
+    public static final double EXPLORATION = 1.0;
+
+    /**
+     * Visits of a leaf before it is expanded
+     */
+    private static final int EXPANSION_VISITS = 1;
+
+    /**
+     * Source of the random children of the selection
+     */
+    private final Random random = new Random();
+
+    /**
+     * Plays the games to the end, a player who can win at once does so
+     */
+    private final Playout playout = new Playout();
+
+    /**
+     * The root of the tree, null if there is no tree
+     */
+    private Node root;
+
+    /**
+     * Hash key of the position of the root
+     */
+    private long rootKey;
+
+    /**
+     * The board which is searched
+     */
+    private Board board;
+
+    /**
+     * Move buffer of the expansion
+     */
+    private int[] moves;
+
+    /**
+     * Undo information of the moves made in an iteration
+     */
+    private long[] undo = new long[256];
+
+    /**
+     * Number of playouts and duration in ns of the last search
+     */
+    private long playouts;
+    private long duration;
+
+    // ==== Constructor ====================================================================================
+
+    public MonteCarloSearcher() {
+        playout.setDecisive(true);
+    }
+
+    // ==== Getter ====================================================================================
+
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    /**
+     * @return the playouts per second of the last search
+     */
+    public long getPlayoutsPerSecond() {
+        return duration == 0 ? 0 : playouts * 1000000000L / duration;
+    }
+
+    /**
+     * @return the number of iterations which went through the root, including the ones of
+     * earlier searches which were kept
+     */
+    public int getRootVisits() {
+        return root == null ? 0 : root.visits;
+    }
+
+    // ==== Instancemethods ====================================================================================
+    /**
+     * Searches the best move of the player whose turn it is. The tree of earlier searches is
+     * used if its root is the position on the board, else a new tree is grown.
+     *
+     * @param newboard the position to search, it is restored after the search
+     * @param budget   time budget in ms
+     * @return the best move, packed (see {@link Move#encode(int, int)}), or
+     * {@link Board#NO_MOVE} if the player can not move or the game is over
+     */
+    public int search(Board newboard, long budget) {
+        board = newboard;
+        if (moves == null || moves.length < board.getMaxMoves()) {
+            moves = new int[board.getMaxMoves()];
+        }
+        if (root == null || rootKey != board.getHashKey()) {
+            root = new Node(null, Board.NO_MOVE, 1 - board.getTurn());
+            rootKey = board.getHashKey();
+        }
+        playouts = 0;
+        duration = 0;
+
+        if (!board.getStatus().isOk()) {
+            return Board.NO_MOVE;
+        }
+        if (root.children == null) {
+            expand(root);
+        }
+        if (root.children.length == 0) {
+            return Board.NO_MOVE;
+        }
+        if (root.children.length == 1) {
+            return root.children[0].move;
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + budget * 1000000L;
+        do {
+            iterate();
+        } while (System.nanoTime() < deadline);
+        duration = System.nanoTime() - start;
+
+        Node best = root.children[0];
+        for (Node child : root.children) {
+            if (child.visits > best.visits) {
+                best = child;
+            }
+        }
+        return best.move;
+    }
+
+    /**
+     * Moves the root of the tree to the child of a move which has been played. The rest of the
+     * tree is thrown away.
+     *
+     * @param move the move, packed
+     * @param key  the hash key of the position after the move
+     */
+    public void advance(int move, long key) {
+        Node next = null;
+        if (root != null && root.children != null) {
+            for (Node child : root.children) {
+                if (child.move == move) {
+                    next = child;
+                    break;
+                }
+            }
+        }
+        if (next != null) {
+            next.parent = null;
+        }
+        root = next;
+        rootKey = key;
+    }
+
+    /**
+     * One iteration: selection, expansion, playout and backpropagation.
+     */
+    private void iterate() {
+        int depth = 0;
+        Node node = root;
+
+        // Selection of a leaf
+        while (node.children != null && node.children.length > 0) {
+            node = select(node);
+            depth = push(depth, board.makeMove(node.move));
+        }
+
+        // Expansion of a leaf which has been visited before
+        if (board.getStatus().isOk() && node.visits >= EXPANSION_VISITS) {
+            expand(node);
+            if (node.children.length > 0) {
+                node = select(node);
+                depth = push(depth, board.makeMove(node.move));
+            }
+        }
+
+        int winner = playout.play(board);
+        playouts++;
+
+        // Backpropagation of the result, a node counts the wins of the player who moved into it
+        for (; node != null; node = node.parent) {
+            node.visits++;
+            if (node.color == winner) {
+                node.wins++;
+            }
+        }
+        while (depth > 0) {
+            board.unmakeMove(undo[--depth]);
+        }
+    }
+
+    /**
+     * Puts the undo information of a move on the stack.
+     *
+     * @param depth number of moves on the stack
+     * @param entry the undo information
+     * @return the new number of moves on the stack
+     */
+    private int push(int depth, long entry) {
+        if (depth == undo.length) {
+            undo = Arrays.copyOf(undo, 2 * undo.length);
+        }
+        undo[depth] = entry;
+        return depth + 1;
+    }
+
+    /**
+     * Creates the children of a node for all moves of the player whose turn it is.
+     *
+     * @param node the node of the position on the board
+     */
+    private void expand(Node node) {
+        int color = board.getTurn();
+        int count = board.getStatus().isOk() ? board.generateMoves(color, moves) : 0;
+        Node[] children = new Node[count];
+        for (int i = 0; i < count; i++) {
+            children[i] = new Node(node, moves[i], color);
+        }
+        node.children = children;
+    }
+
+    /**
+     * Chooses the child with the best upper confidence bound, children which have not been
+     * visited yet come first.
+     *
+     * @param node the node whose child is chosen
+     * @return the chosen child
+     */
+    private Node select(Node node) {
+        Node[] children = node.children;
+        int offset = random.nextInt(children.length);
+        double logVisits = Math.log(Math.max(1, node.visits));
+        Node best = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < children.length; i++) {
+            Node child = children[(i + offset) % children.length];
+            if (child.visits == 0) {
+                return child;
+            }
+            double value = (double) child.wins / child.visits
+                    + EXPLORATION * Math.sqrt(logVisits / child.visits);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * A node of the tree, the position after a move.
+     */
+    private static final class Node {
+
+        /** The node before the move, null at the root */
+        private Node parent;
+
+        /** The move leading to this node, packed */
+        private final int move;
+
+        /** The color of the player who made the move */
+        private final int color;
+
+        /** The nodes after the moves of this position, null if not expanded yet */
+        private Node[] children;
+
+        /** Number of iterations through this node and how many of them the player who made the move won */
+        private int visits;
+        private int wins;
+
+        private Node(Node newparent, int newmove, int newcolor) {
+            parent = newparent;
+            move = newmove;
+            color = newcolor;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package breakthroughPP.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import breakthroughPP.board.Board;
+import breakthroughPP.preset.*;
+
+/**
+ * Orders the moves of the alpha-beta search in stages: the best move of an earlier search of
+ * the position (hash move) first, then the moves which end on the opponent's home row, then the
+ * captures, then the killer moves of the ply (quiet moves which led to a cutoff in a sibling
+ * position) and at last the other quiet moves sorted by the history table, which counts how
+ * often a move led to a cutoff anywhere in the search.
+ * <p>
+ * The moves are generated all at once by the board, so the stages are given by the rank of
+ * each move, and the moves are sorted by rank. The ordering also counts how many cutoffs were
+ * caused by the first move searched, the better the ordering the closer this rate is to one.
+ * Without killer moves and history table the first stages are ordered in place by
+ * {@link #orderByStage(Board, int[], int, int)}, which the {@link ForkJoinSearcher} uses
+ * because its order must not depend on the search so far.
+ * <p>
+ * An ordering belongs to one search, it is not thread-safe.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author H.A.
+ */
+public class MoveOrdering implements Setting {
+
+    /**
+     * Ranks of the stages, the history values of the quiet moves lie below KILLER
+     */
+    private static final int HASH = 1 << 30;
+    private static final int WINNING = 1 << 29;
+    private static final int CAPTURE = 1 << 28;
+    private static final int KILLER = 1 << 27;
+
+    /**
+     * History value above which all values are halved
+     */
+    private static final int HISTORY_LIMIT = 1 << 20;
+
+    /**
+     * Time budget in ms of the test, which searches to a fixed depth
+     */
+    private static final long DAY = 24L * 3600 * 1000;
+
+    /**
+     * Killer moves per ply
+     */
+    private static final int KILLERS = 2;
+
+    /**
+     * Whether the killer moves and the history table are used
+     */
+    private boolean killers = true;
+    private boolean history = true;
+
+    /**
+     * The killer moves of each ply, the newest first
+     */
+    private final int[][] killerMoves = new int[Searcher.MAX_PLY + 1][KILLERS];
+
+    /**
+     * Cutoffs of each color per end square and direction, see {@link #historyIndex(int)}
+     */
+    private final int[][] historyTable = new int[2][26 * Board.ROW_STRIDE * 3];
+
+    /**
+     * Ranks of the moves of each ply
+     */
+    private int[][] ranks;
+
+    /**
+     * Number of cutoffs and how many of them the first move caused
+     */
+    private long cutoffs;
+    private long firstMoveCutoffs;
+
+    // ==== Constructor ====================================================================================
+
+    public MoveOrdering() {
+        clear();
+    }
+
+    // ==== Getter ====================================================================================
+
+    public boolean isKillers() {
+        return killers;
+    }
+
+    public boolean isHistory() {
+        return history;
+    }
+
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    /**
+     * @return the part of the cutoffs which the first move searched caused, 0 if there was no
+     * cutoff
+     */
+    public double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+
+    // ==== Setter ====================================================================================
+
+    /**
+     * @param newkillers whether the killer moves are searched before the other quiet moves
+     */
+    public void setKillers(boolean newkillers) {
+        killers = newkillers;
+    }
+
+    /**
+     * @param newhistory whether the quiet moves are sorted by the history table
+     */
+    public void setHistory(boolean newhistory) {
+        history = newhistory;
+    }
+
+    // ==== Instancemethods ====================================================================================
+    /**
+     * Prepares a new search: the killer moves are forgotten and the history values halved, so
+     * the ones of the last search still count but less than the new ones. The statistics
+     * restart.
+     */
+    public void newSearch() {
+        for (int[] ply : killerMoves) {
+            for (int k = 0; k < KILLERS; k++) {
+                ply[k] = Board.NO_MOVE;
+            }
+        }
+        age();
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+    }
+
+    /**
+     * Forgets all killer moves and history values.
+     */
+    public void clear() {
+        for (int[] table : historyTable) {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = 0;
+            }
+        }
+        newSearch();
+    }
+
+    /**
+     * Sorts the moves of a position by their stage, the hash move first.
+     *
+     * @param board    the position of the moves
+     * @param buffer   the moves, packed
+     * @param count    the number of moves in the buffer
+     * @param hashMove the best move of an earlier search of the position or
+     *                 {@link Board#NO_MOVE}
+     * @param ply      distance of the position to the root of the search
+     */
+    public void order(Board board, int[] buffer, int count, int hashMove, int ply) {
+        if (!killers && !history) {
+            orderByStage(board, buffer, count, hashMove);
+            return;
+        }
+        if (ranks == null || ranks[0].length < buffer.length) {
+            ranks = new int[Searcher.MAX_PLY + 1][buffer.length];
+        }
+        int[] rank = ranks[ply];
+        int color = board.getTurn();
+        int opponent = 1 - color;
+        int goal = opponent == RED ? 0 : board.getNumbers() - 1;
+        int[] killer = killerMoves[ply];
+        int[] table = historyTable[color];
+
+        for (int i = 0; i < count; i++) {
+            int move = buffer[i];
+            int end = Move.getEndSquare(move);
+            if (move == hashMove) {
+                rank[i] = HASH;
+            } else if (end / Board.ROW_STRIDE == goal) {
+                rank[i] = WINNING;
+            } else if (board.getColor(end) == opponent) {
+                rank[i] = CAPTURE;
+            } else if (killers && move == killer[0]) {
+                rank[i] = KILLER + 1;
+            } else if (killers && move == killer[1]) {
+                rank[i] = KILLER;
+            } else {
+                rank[i] = history ? table[historyIndex(move)] : 0;
+            }
+        }
+
+        // Insertion sort, stable so moves of the same rank keep the order of the board
+        for (int i = 1; i < count; i++) {
+            int move = buffer[i];
+            int value = rank[i];
+            int j = i;
+            for (; j > 0 && rank[j - 1] < value; j--) {
+                buffer[j] = buffer[j - 1];
+                rank[j] = rank[j - 1];
+            }
+            buffer[j] = move;
+            rank[j] = value;
+        }
+    }
+
+    /**
+     * Moves the best move of an earlier search and the moves which end on the opponent's home
+     * row or capture a token to the front of the buffer, as they lead to cutoffs most often.
+     *
+     * @param board    the position of the moves
+     * @param buffer   the moves, packed
+     * @param count    the number of moves in the buffer
+     * @param hashMove the best move of an earlier search of the position or
+     *                 {@link Board#NO_MOVE}
+     */
+    static void orderByStage(Board board, int[] buffer, int count, int hashMove) {
+        int opponent = 1 - board.getTurn();
+        int goal = opponent == RED ? 0 : board.getNumbers() - 1;
+        int front = 0;
+        for (int i = 0; i < count; i++) {
+            int end = Move.getEndSquare(buffer[i]);
+            if (end / Board.ROW_STRIDE == goal || board.getColor(end) == opponent) {
+                int move = buffer[i];
+                buffer[i] = buffer[front];
+                buffer[front++] = move;
+            }
+        }
+        if (hashMove != Board.NO_MOVE) {
+            for (int i = 0; i < count; i++) {
+                if (buffer[i] == hashMove) {
+                    System.arraycopy(buffer, 0, buffer, 1, i);
+                    buffer[0] = hashMove;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Learns from a cutoff: a quiet move becomes a killer move of the ply and its history value
+     * grows with the square of the remaining depth.
+     *
+     * @param board the position of the move, before it is made
+     * @param move  the move which caused the cutoff, packed
+     * @param index the index of the move in the order in which the moves were searched
+     * @param depth remaining depth of the position
+     * @param ply   distance of the position to the root of the search
+     */
+    public void cutoff(Board board, int move, int index, int depth, int ply) {
+        cutoffs++;
+        if (index == 0) {
+            firstMoveCutoffs++;
+        }
+        int end = Move.getEndSquare(move);
+        int opponent = 1 - board.getTurn();
+        int goal = opponent == RED ? 0 : board.getNumbers() - 1;
+        if (board.getColor(end) == opponent || end / Board.ROW_STRIDE == goal) {
+            return;
+        }
+
+        int[] killer = killerMoves[ply];
+        if (killer[0] != move) {
+            killer[1] = killer[0];
+            killer[0] = move;
+        }
+        int[] table = historyTable[board.getTurn()];
+        int i = historyIndex(move);
+        table[i] += depth * depth;
+        if (table[i] > HISTORY_LIMIT) {
+            age();
+        }
+    }
+
+    /**
+     * Halves all history values.
+     */
+    private void age() {
+        for (int[] table : historyTable) {
+            for (int i = 0; i < table.length; i++) {
+                table[i] >>= 1;
+            }
+        }
+    }
+
+    /**
+     * @param move a move, packed
+     * @return the index of the end square and the direction (left, straight, right) of the move
+     * in the history table
+     */
+    private static int historyIndex(int move) {
+        int end = Move.getEndSquare(move);
+        int direction = end % Board.ROW_STRIDE - Move.getStartSquare(move) % Board.ROW_STRIDE + 1;
+        return end * 3 + direction;
+    }
+
+    @Override
+    public String toString() {
+        return cutoffs + " cutoffs, first move " + String.format("%.1f%%", 100 * getFirstMoveCutoffRate());
+    }
+
+    // ==== Test main ==============================================================================
+    /**
+     * Searches some positions to a fixed depth with the captures only, with killer moves, with
+     * the history table and with both, and reports the nodes and the first move cutoff rate.
+     *
+     * @param args letters, numbers, depth and number of positions, default 8 8 7 8
+     * @throws PresetException if the board size is not valid
+     */
+    public static void main(String[] args) throws PresetException {
+        int letters = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int numbers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 7;
+        int positions = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+
+        // Positions after some random moves
+        List<Board> boards = new ArrayList<>();
+        Random random = new Random(1);
+        while (boards.size() < positions) {
+            Board board = Board.create(letters, numbers);
+            int[] moves = new int[board.getMaxMoves()];
+            int plies = 2 * boards.size();
+            for (int i = 0; i < plies && board.getStatus().isOk(); i++) {
+                int count = board.generateMoves(board.getTurn(), moves);
+                board.makeMove(moves[random.nextInt(count)]);
+            }
+            if (board.getStatus().isOk()) {
+                boards.add(board);
+            }
+        }
+
+        for (int stages = 0; stages < 4; stages++) {
+            Searcher searcher = new Searcher(new Evaluator(), new TranspositionTable(16));
+            searcher.getOrdering().setKillers((stages & 1) != 0);
+            searcher.getOrdering().setHistory((stages & 2) != 0);
+            long nodes = 0;
+            long cutoffs = 0;
+            double firstMove = 0;
+            long start = System.nanoTime();
+            for (Board board : boards) {
+                searcher.getTable().clear();
+                searcher.getOrdering().clear();
+                searcher.search(board, DAY, depth);
+                nodes += searcher.getNodes();
+                cutoffs += searcher.getOrdering().getCutoffs();
+                firstMove += searcher.getOrdering().getFirstMoveCutoffRate() * searcher.getOrdering().getCutoffs();
+            }
+            long time = (System.nanoTime() - start) / 1000000;
+            System.out.println("killers " + ((stages & 1) != 0) + ", history " + ((stages & 2) != 0) + ": "
+                    + nodes + " nodes in " + time + " ms, first move cutoffs "
+                    + String.format("%.1f%%", 100 * firstMove / Math.max(1, cutoffs)));
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package breakthroughPP.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import breakthroughPP.board.Board;
+import breakthroughPP.preset.*;
+
+/**
+ * Opening book of a board size, which knows good moves for the first positions of a game from
+ * the start position of {@link Board#create(int, int)}. The books are built beforehand by the
+ * {@link OpeningBookGenerator} from games of the alpha-beta search against itself and mapped
+ * into memory read-only, so a lookup is a binary search in the file.
+ * <p>
+ * A file starts with a header of {@link #HEADER_SIZE} bytes (magic number, version, letters,
+ * numbers) followed by records of {@link #RECORD_SIZE} bytes: the Zobrist key of a position
+ * (see {@link Board#getHashKey()}), a packed move and its weight. The records are sorted by key
+ * and then by move, a position has one record for each of its book moves. A move is chosen at
+ * random in proportion to its weight, so the openings vary from game to game.
+ * <p>
+ * The books are shared, see {@link #find(int, int)}.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author H.A.
+ */
+public class OpeningBook implements Setting {
+
+    /**
+     * Directory the opening book files are looked for in
+     */
+    public static final String DEFAULT_DIRECTORY = "books";
+
+    /**
+     * Bytes before the first record in the file
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * Bytes of a record: key, move and weight
+     */
+    public static final int RECORD_SIZE = 16;
+
+    /**
+     * "BTOB", begins each file
+     */
+    static final int MAGIC = 0x42544F42;
+
+    /**
+     * Version of the file format
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Opened books by letters * 32 + numbers, missing files are not remembered
+     */
+    private static final ConcurrentHashMap<Integer, OpeningBook> cache = new ConcurrentHashMap<>();
+
+    private final int letters;
+    private final int numbers;
+
+    /**
+     * Number of records
+     */
+    private final int size;
+
+    /**
+     * The mapped file
+     */
+    private final MappedByteBuffer buffer;
+
+    // ==== Constructor ====================================================================================
+    /**
+     * Maps an opening book file into memory.
+     *
+     * @param file       the file written by the {@link OpeningBookGenerator}
+     * @param newletters number of columns
+     * @param newnumbers number of rows
+     * @throws IOException if the file can not be read or does not belong to the board size
+     */
+    public OpeningBook(File file, int newletters, int newnumbers) throws IOException {
+        letters = newletters;
+        numbers = newnumbers;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            long records = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+            if (channel.size() < HEADER_SIZE || channel.size() != HEADER_SIZE + records * RECORD_SIZE
+                    || records > Integer.MAX_VALUE / RECORD_SIZE) {
+                throw new IOException("Wrong size of the opening book " + file);
+            }
+            size = (int) records;
+            // The mapping stays valid when the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                || buffer.getInt(8) != letters || buffer.getInt(12) != numbers) {
+            throw new IOException("Wrong header of the opening book " + file);
+        }
+    }
+
+    /**
+     * Returns the shared opening book of a board size from the {@link #DEFAULT_DIRECTORY}.
+     *
+     * @param letters number of columns
+     * @param numbers number of rows
+     * @return the opening book, null if there is no valid file
+     */
+    public static OpeningBook find(int letters, int numbers) {
+        Integer key = letters * Board.ROW_STRIDE + numbers;
+        OpeningBook book = cache.get(key);
+        if (book == null) {
+            File file = getFile(new File(DEFAULT_DIRECTORY), letters, numbers);
+            if (!file.isFile()) {
+                return null;
+            }
+            try {
+                book = new OpeningBook(file, letters, numbers);
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                return null;
+            }
+            OpeningBook known = cache.putIfAbsent(key, book);
+            if (known != null) {
+                book = known;
+            }
+        }
+        return book;
+    }
+
+    // ==== Getter ====================================================================================
+
+    public int getLetters() {
+        return letters;
+    }
+
+    public int getNumbers() {
+        return numbers;
+    }
+
+    /**
+     * @return the number of records
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @param directory the directory of the opening books
+     * @param letters   number of columns
+     * @param numbers   number of rows
+     * @return the file of the opening book of a board size
+     */
+    public static File getFile(File directory, int letters, int numbers) {
+        return new File(directory, "book" + letters + "x" + numbers + ".bin");
+    }
+
+    // ==== Instancemethods ====================================================================================
+    /**
+     * Chooses a book move of the current position at random, in proportion to the weights.
+     * Moves which are not valid in the position are left out, so a position with the same key
+     * by chance does not lead to a wrong move.
+     *
+     * @param board  a position of the board size of the book
+     * @param random chooses among the book moves
+     * @return the packed move, {@link Board#NO_MOVE} if the position is not in the book
+     */
+    public int getMove(Board board, Random random) {
+        if (!board.getStatus().isOk()) {
+            return Board.NO_MOVE;
+        }
+        long key = board.getHashKey();
+        int first = findFirst(key);
+        if (first == size || getKey(first) != key) {
+            return Board.NO_MOVE;
+        }
+
+        int[] moves = new int[board.getMaxMoves()];
+        int count = board.generateMoves(board.getTurn(), moves);
+        long total = 0;
+        int chosen = Board.NO_MOVE;
+        for (int i = first; i < size && getKey(i) == key; i++) {
+            int move = getRecordMove(i);
+            int weight = getWeight(i);
+            if (weight <= 0 || !contains(moves, count, move)) {
+                continue;
+            }
+            // Reservoir sampling: the move replaces the chosen one with its part of the weights
+            total += weight;
+            if (random.nextDouble() * total < weight) {
+                chosen = move;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * @param key a Zobrist key
+     * @return the index of the first record with a key of at least the given one, the number of
+     * records if there is none
+     */
+    private int findFirst(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getKey(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private long getKey(int record) {
+        return buffer.getLong(HEADER_SIZE + record * RECORD_SIZE);
+    }
+
+    private int getRecordMove(int record) {
+        return buffer.getInt(HEADER_SIZE + record * RECORD_SIZE + 8);
+    }
+
+    private int getWeight(int record) {
+        return buffer.getInt(HEADER_SIZE + record * RECORD_SIZE + 12);
+    }
+
+    private static boolean contains(int[] moves, int count, int move) {
+        for (int i = 0; i < count; i++) {
+            if (moves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "Opening book " + letters + "x" + numbers + ", " + size + " moves";
+    }
+
+    // ==== Test main ==============================================================================
+    /**
+     * Follows the book from the start position with random choices and prints the lines and how
+     * long a line stays in the book.
+     *
+     * @param args letters, numbers and number of lines, default 8 8 10; the book is read from
+     *             the {@link #DEFAULT_DIRECTORY}
+     * @throws PresetException if the board size is not valid
+     */
+    public static void main(String[] args) throws PresetException {
+        int letters = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int numbers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int lines = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        OpeningBook book = find(letters, numbers);
+        if (book == null) {
+            System.out.println("No opening book for " + letters + "x" + numbers + " in " + DEFAULT_DIRECTORY);
+            return;
+        }
+        System.out.println(book);
+        Random random = new Random(1);
+        long probes = 0;
+        long probeTime = 0;
+        for (int line = 0; line < lines; line++) {
+            Board board = Board.create(letters, numbers);
+            StringBuilder text = new StringBuilder();
+            while (true) {
+                long start = System.nanoTime();
+                int move = book.getMove(board, random);
+                probeTime += System.nanoTime() - start;
+                probes++;
+                if (move == Board.NO_MOVE) {
+                    break;
+                }
+                text.append(' ').append(Move.decode(move));
+                board.makeMove(move);
+            }
+            System.out.println(text.length() == 0 ? " (start position not in the book)" : text);
+        }
+        System.out.println(probeTime / Math.max(1, probes) + " ns per probe");
+    }
+}
@@ -0,0 +1,241 @@
+package breakthroughPP.search;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import breakthroughPP.board.Board;
+import breakthroughPP.preset.*;
+
+/**
+ * Builds the {@link OpeningBook} of a board size from games of the alpha-beta search against
+ * itself. In the first plies of a game a move is sometimes chosen at random instead of searched,
+ * so the games explore different openings. For every position of the first plies the generator
+ * counts how often each move was played, how often it was chosen by the search and how often
+ * the player who played it won the game. A move enters the book if the search chose it or if it
+ * won at least half of its games; its weight is the number of times it was chosen plus the
+ * number of wins, so the choices of the search and the successful moves are played most.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author H.A.
+ */
+public class OpeningBookGenerator implements Setting {
+
+    /**
+     * Probability of a random move in the plies of the book
+     */
+    private static final double EXPLORATION = 0.2;
+
+    /**
+     * The board sizes generated if none are given
+     */
+    private static final int[][] DEFAULT_SIZES = {{6, 6}, {8, 8}};
+
+    private final int letters;
+    private final int numbers;
+
+    /**
+     * Number of plies from the start position which are recorded
+     */
+    private final int plies;
+
+    /**
+     * Time of the search per move in ms
+     */
+    private final long moveTime;
+
+    /**
+     * Searches the moves of both players
+     */
+    private final Searcher searcher = new Searcher(new Evaluator());
+
+    /**
+     * Chooses the random moves
+     */
+    private final Random random;
+
+    /**
+     * Games, wins and choices of the search of each move by key of the position and packed
+     * move, sorted like the file
+     */
+    private final TreeMap<Long, TreeMap<Integer, int[]>> statistics = new TreeMap<>();
+
+    /**
+     * Number of games played and won by RED
+     */
+    private int games;
+    private int redWins;
+
+    // ==== Constructor ====================================================================================
+    /**
+     * Prepares the self-play of a board size.
+     *
+     * @param newletters  number of columns
+     * @param newnumbers  number of rows
+     * @param newplies    number of plies from the start position which are recorded
+     * @param newmovetime time of the search per move in ms
+     * @param seed        seed of the random moves
+     * @throws PresetException if the board size is not valid
+     */
+    public OpeningBookGenerator(int newletters, int newnumbers, int newplies, long newmovetime, long seed)
+            throws PresetException {
+        // Fails early if the size is not valid
+        Board.create(newletters, newnumbers);
+        letters = newletters;
+        numbers = newnumbers;
+        plies = newplies;
+        moveTime = newmovetime;
+        random = new Random(seed);
+    }
+
+    // ==== Instancemethods ====================================================================================
+    /**
+     * Plays a game from the start position and records the moves of its first plies.
+     *
+     * @throws PresetException if the board can not be created
+     */
+    public void playGame() throws PresetException {
+        Board board = Board.create(letters, numbers);
+        int[] moves = new int[board.getMaxMoves()];
+        List<long[]> played = new ArrayList<>();
+        int winner = NONE;
+        while (board.getStatus().isOk()) {
+            int color = board.getTurn();
+            int move;
+            boolean searched = played.size() >= plies || random.nextDouble() >= EXPLORATION;
+            if (searched) {
+                move = searcher.search(board, moveTime, Searcher.MAX_PLY);
+            } else {
+                int count = board.generateMoves(color, moves);
+                move = count == 0 ? Board.NO_MOVE : moves[random.nextInt(count)];
+            }
+            if (move == Board.NO_MOVE) {
+                // A player who can not move has lost
+                winner = 1 - color;
+                break;
+            }
+            if (played.size() < plies) {
+                played.add(new long[]{board.getHashKey(), move, color, searched ? 1 : 0});
+            }
+            board.makeMove(move);
+        }
+        if (winner == NONE) {
+            winner = board.getStatus().isRedWin() ? RED : BLUE;
+        }
+
+        games++;
+        if (winner == RED) {
+            redWins++;
+        }
+        for (long[] record : played) {
+            TreeMap<Integer, int[]> position = statistics.get(record[0]);
+            if (position == null) {
+                position = new TreeMap<>();
+                statistics.put(record[0], position);
+            }
+            int[] counts = position.get((int) record[1]);
+            if (counts == null) {
+                counts = new int[3];
+                position.put((int) record[1], counts);
+            }
+            counts[0]++;
+            if (record[2] == winner) {
+                counts[1]++;
+            }
+            counts[2] += (int) record[3];
+        }
+    }
+
+    /**
+     * @param counts games, wins and choices of the search of a move
+     * @return whether the move enters the book
+     */
+    private static boolean isBookMove(int[] counts) {
+        return counts[2] > 0 || counts[1] > 0 && 2 * counts[1] >= counts[0];
+    }
+
+    /**
+     * Writes the opening book file, see {@link OpeningBook}.
+     *
+     * @param file the file, it is overwritten
+     * @throws IOException if the file can not be written
+     */
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(OpeningBook.VERSION);
+            out.writeInt(letters);
+            out.writeInt(numbers);
+            for (Map.Entry<Long, TreeMap<Integer, int[]>> position : statistics.entrySet()) {
+                for (Map.Entry<Integer, int[]> move : position.getValue().entrySet()) {
+                    if (isBookMove(move.getValue())) {
+                        out.writeLong(position.getKey());
+                        out.writeInt(move.getKey());
+                        out.writeInt(move.getValue()[1] + move.getValue()[2]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        int moves = 0;
+        for (TreeMap<Integer, int[]> position : statistics.values()) {
+            for (int[] counts : position.values()) {
+                if (isBookMove(counts)) {
+                    moves++;
+                }
+            }
+        }
+        return letters + "x" + numbers + ": " + games + " games, " + redWins + " won by red, "
+                + statistics.size() + " positions, " + moves + " book moves";
+    }
+
+    // ==== Main ====================================================================================
+    /**
+     * Builds opening books and writes them into a directory.
+     *
+     * @param args the directory (default {@link OpeningBook#DEFAULT_DIRECTORY}), the number of
+     *             games (default 100), the number of plies (default 10), the time per move in ms
+     *             (default 50) and pairs of letters and numbers (default 6x6 and 8x8)
+     * @throws Exception if a book can not be built or written
+     */
+    public static void main(String[] args) throws Exception {
+        File directory = new File(args.length > 0 ? args[0] : OpeningBook.DEFAULT_DIRECTORY);
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int plies = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        long moveTime = args.length > 3 ? Long.parseLong(args[3]) : 50;
+        int[][] sizes = DEFAULT_SIZES;
+        if (args.length > 5) {
+            sizes = new int[(args.length - 4) / 2][];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = new int[]{Integer.parseInt(args[4 + 2 * i]), Integer.parseInt(args[5 + 2 * i])};
+            }
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create the directory " + directory);
+        }
+
+        for (int[] size : sizes) {
+            long start = System.nanoTime();
+            OpeningBookGenerator generator = new OpeningBookGenerator(size[0], size[1], plies, moveTime, 1);
+            for (int game = 0; game < games; game++) {
+                generator.playGame();
+            }
+            File file = OpeningBook.getFile(directory, size[0], size[1]);
+            generator.write(file);
+            System.out.println(generator + ", " + (System.nanoTime() - start) / 1000000 + " ms, " + file);
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package breakthroughPP.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import breakthroughPP.board.Board;
+import breakthroughPP.board.Playout;
+import breakthroughPP.preset.*;
+
+/**
+ * Monte Carlo tree search on several threads which share one tree (tree parallelisation). Each
+ * thread works on its own copy of the board. A thread counts its visit in the nodes on its way
+ * down before the playout (virtual loss), so the other threads see these nodes as worse until
+ * the result arrives and take other ways.
+ * <p>
+ * The nodes are kept in preallocated arrays instead of one object per node: the move leading to
+ * a node, the index of its first child (the children of a node are stored one after the other),
+ * the number of children and the visit and win counters, which are changed atomically. A node is
+ * expanded by the first thread which claims it, the others do a playout from the leaf meanwhile.
+ * When the arrays are full the tree stops growing, the iterations go on with the existing nodes.
+ * <p>
+ * The tree is kept between the moves as in {@link MonteCarloSearcher}, the unused nodes are
+ * freed when a new tree is started, which happens when the arrays are more than three quarters
+ * full at the start of a search.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author H.A.
+ */
+public class ParallelMonteCarloSearcher implements Setting {
+
+    /**
+     * Number of nodes if none is given
+     */
+    public static final int DEFAULT_POOL_SIZE = 1 << 21;
+
+    /**
+     * Index of the first child of a node which is not expanded yet or which is being expanded
+     */
+    private static final int LEAF = -1;
+    private static final int EXPANDING = -2;
+
+    /**
+     * Visits of a leaf before it is expanded
+     */
+    private static final int EXPANSION_VISITS = 1;
+
+    /**
+     * Seconds an idle helper thread is kept
+     */
+    private static final int KEEP_ALIVE = 10;
+
+    /**
+     * Move leading to each node, packed
+     */
+    private final int[] moves;
+
+    /**
+     * Index of the first child of each node, LEAF or EXPANDING
+     */
+    private final AtomicIntegerArray firstChild;
+
+    /**
+     * Number of children of each node, valid once the first child is set
+     */
+    private final int[] childCount;
+
+    /**
+     * Number of iterations through each node and how many of them the player who made the move
+     * leading to the node won
+     */
+    private final AtomicIntegerArray visits;
+    private final AtomicIntegerArray wins;
+
+    /**
+     * Number of used nodes, at most the length of the arrays
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Set when the children of a node did not fit into the arrays, no node is expanded then
+     * until a new tree is started
+     */
+    private volatile boolean full;
+
+    /**
+     * The search of each thread, index 0 runs on the calling thread
+     */
+    private final Worker[] workers;
+
+    /**
+     * Runs the workers except the first one, null if there is only one thread
+     */
+    private final ThreadPoolExecutor pool;
+
+    /**
+     * The root of the tree and the hash key of its position
+     */
+    private int root;
+    private long rootKey;
+
+    /**
+     * Time in ns of System.nanoTime() at which the search is stopped
+     */
+    private volatile long deadline;
+
+    /**
+     * Number of playouts and duration in ns of the last search
+     */
+    private long playouts;
+    private long duration;
+
+    // ==== Constructor ====================================================================================
+    /**
+     * @param poolSize number of nodes of the tree, at least 1
+     * @param threads  number of threads including the calling thread, at least 1
+     * @throws IllegalArgumentException if the pool size or the number of threads is less than 1
+     */
+    public ParallelMonteCarloSearcher(int poolSize, int threads) throws IllegalArgumentException {
+        if (poolSize < 1 || threads < 1) {
+            throw new IllegalArgumentException("The pool size and the number of threads must be at least 1");
+        }
+        moves = new int[poolSize];
+        firstChild = new AtomicIntegerArray(poolSize);
+        childCount = new int[poolSize];
+        visits = new AtomicIntegerArray(poolSize);
+        wins = new AtomicIntegerArray(poolSize);
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker();
+        }
+        if (threads == 1) {
+            pool = null;
+        } else {
+            pool = new ThreadPoolExecutor(threads - 1, threads - 1, KEEP_ALIVE, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "monte carlo worker");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true);
+        }
+        clear();
+    }
+
+    // ==== Getter ====================================================================================
+
+    public int getThreads() {
+        return workers.length;
+    }
+
+    public int getPoolSize() {
+        return moves.length;
+    }
+
+    /**
+     * @return the number of nodes in use
+     */
+    public int getNodes() {
+        return size.get();
+    }
+
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    /**
+     * @return the playouts per second of all threads in the last search
+     */
+    public long getPlayoutsPerSecond() {
+        return duration == 0 ? 0 : playouts * 1000000000L / duration;
+    }
+
+    /**
+     * @return the number of iterations which went through the root, including the ones of
+     * earlier searches which were kept
+     */
+    public int getRootVisits() {
+        return visits.get(root);
+    }
+
+    // ==== Instancemethods ====================================================================================
+    /**
+     * Searches the best move of the player whose turn it is with all threads. The tree of
+     * earlier searches is used if its root is the position on the board and the arrays are not
+     * too full, else a new tree is grown.
+     *
+     * @param board  the position to search, it is restored after the search
+     * @param budget time budget in ms
+     * @return the best move, packed (see {@link Move#encode(int, int)}), or
+     * {@link Board#NO_MOVE} if the player can not move or the game is over
+     * @throws PresetException if the board can not be copied for the threads
+     */
+    public int search(Board board, long budget) throws PresetException {
+        if (rootKey != board.getHashKey() || size.get() > moves.length / 4 * 3) {
+            clear();
+            rootKey = board.getHashKey();
+        }
+        if (!board.getStatus().isOk()) {
+            return Board.NO_MOVE;
+        }
+        workers[0].prepare(board);
+        if (firstChild.get(root) == LEAF && !workers[0].expand(root)) {
+            // The children of the root did not fit into the kept tree
+            clear();
+            workers[0].expand(root);
+        }
+        int first = firstChild.get(root);
+        int count = first < 0 ? 0 : childCount[root];
+        if (count == 0) {
+            return Board.NO_MOVE;
+        }
+        if (count == 1) {
+            return moves[first];
+        }
+
+        long start = System.nanoTime();
+        deadline = start + budget * 1000000L;
+        List<Future<Long>> helpers = new ArrayList<>();
+        for (int i = 1; i < workers.length; i++) {
+            final Worker worker = workers[i];
+            worker.prepare(board.copy());
+            helpers.add(pool.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return worker.run();
+                }
+            }));
+        }
+        playouts = workers[0].run();
+        for (Future<Long> helper : helpers) {
+            playouts += await(helper);
+        }
+        duration = System.nanoTime() - start;
+
+        int best = first;
+        for (int child = first; child < first + count; child++) {
+            if (visits.get(child) > visits.get(best)) {
+                best = child;
+            }
+        }
+        return moves[best];
+    }
+
+    /**
+     * Waits for a worker.
+     *
+     * @param helper the result of the worker
+     * @return the number of playouts of the worker
+     * @throws IllegalStateException if the worker failed
+     */
+    private long await(Future<Long> helper) throws IllegalStateException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return helper.get();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                } catch (ExecutionException ee) {
+                    throw new IllegalStateException("Monte Carlo worker failed: " + ee.getCause(), ee.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Moves the root of the tree to the child of a move which has been played. The nodes of
+     * the rest of the tree stay in use until a new tree is started.
+     *
+     * @param move the move, packed
+     * @param key  the hash key of the position after the move
+     */
+    public void advance(int move, long key) {
+        int first = firstChild.get(root);
+        if (first >= 0) {
+            for (int child = first; child < first + childCount[root]; child++) {
+                if (moves[child] == move) {
+                    root = child;
+                    rootKey = key;
+                    return;
+                }
+            }
+        }
+        clear();
+        rootKey = key;
+    }
+
+    /**
+     * Starts a new tree with an empty root.
+     */
+    private void clear() {
+        root = 0;
+        moves[0] = Board.NO_MOVE;
+        firstChild.set(0, LEAF);
+        visits.set(0, 0);
+        wins.set(0, 0);
+        size.set(1);
+        full = false;
+    }
+
+    /**
+     * Allocates the nodes for the moves of a position.
+     *
+     * @param node   the node of the position, claimed by setting its first child to EXPANDING
+     * @param buffer the moves, packed
+     * @param count  the number of moves
+     */
+    private void addChildren(int node, int[] buffer, int count) {
+        int first = 0;
+        // The nodes are claimed only if they fit, so the size never grows beyond the arrays
+        while (count > 0) {
+            first = size.get();
+            if (first + count > moves.length) {
+                // The arrays are full, the node stays a leaf
+                full = true;
+                firstChild.set(node, LEAF);
+                return;
+            }
+            if (size.compareAndSet(first, first + count)) {
+                break;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            moves[first + i] = buffer[i];
+            firstChild.set(first + i, LEAF);
+            visits.set(first + i, 0);
+            wins.set(first + i, 0);
+        }
+        childCount[node] = count;
+        firstChild.set(node, first);
+    }
+
+    /**
+     * The board, the buffers and the random numbers of one thread.
+     */
+    private final class Worker {
+
+        private final Random random = new Random();
+        private final Playout playout = new Playout();
+        private Board board;
+        private int[] buffer;
+
+        /** Nodes of the way down and the colors of the players who moved into them */
+        private int[] path = new int[256];
+        private int[] movers = new int[256];
+
+        /** Undo information of the moves made in an iteration */
+        private long[] undo = new long[256];
+
+        private Worker() {
+            playout.setDecisive(true);
+        }
+
+        /**
+         * @param newboard the board this worker searches on
+         */
+        private void prepare(Board newboard) {
+            board = newboard;
+            if (buffer == null || buffer.length < board.getMaxMoves()) {
+                buffer = new int[board.getMaxMoves()];
+            }
+        }
+
+        /**
+         * Runs iterations until the time is over.
+         *
+         * @return the number of playouts
+         */
+        private long run() {
+            long count = 0;
+            do {
+                iterate();
+                count++;
+            } while (System.nanoTime() < deadline);
+            return count;
+        }
+
+        /**
+         * Expands a node if no other thread does.
+         *
+         * @param node the node of the position on the board
+         * @return whether the node has been expanded by this thread
+         */
+        private boolean expand(int node) {
+            if (!firstChild.compareAndSet(node, LEAF, EXPANDING)) {
+                return false;
+            }
+            int count = board.getStatus().isOk() ? board.generateMoves(board.getTurn(), buffer) : 0;
+            addChildren(node, buffer, count);
+            return firstChild.get(node) >= 0;
+        }
+
+        /**
+         * One iteration: selection, expansion, playout and backpropagation.
+         */
+        private void iterate() {
+            int depth = 0;
+            int node = root;
+            visits.incrementAndGet(node);
+
+            // Selection of a leaf, the visits are counted on the way down (virtual loss)
+            int first = firstChild.get(node);
+            while (first >= 0 && childCount[node] > 0) {
+                node = select(node, first);
+                depth = push(depth, node);
+                first = firstChild.get(node);
+            }
+
+            // Expansion of a leaf which has been visited before, while there are free nodes
+            if (first == LEAF && !full && board.getStatus().isOk() && visits.get(node) > EXPANSION_VISITS
+                    && expand(node) && childCount[node] > 0) {
+                node = select(node, firstChild.get(node));
+                depth = push(depth, node);
+            }
+
+            int winner = playout.play(board);
+
+            // Backpropagation of the result, a node counts the wins of the player who moved into it
+            for (int i = depth - 1; i >= 0; i--) {
+                if (movers[i] == winner) {
+                    wins.incrementAndGet(path[i]);
+                }
+                board.unmakeMove(undo[i]);
+            }
+        }
+
+        /**
+         * Makes the move of a node and counts the visit.
+         *
+         * @param depth number of moves made in this iteration
+         * @param node  the node
+         * @return the new number of moves
+         */
+        private int push(int depth, int node) {
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, 2 * depth);
+                movers = Arrays.copyOf(movers, 2 * depth);
+                undo = Arrays.copyOf(undo, 2 * depth);
+            }
+            visits.incrementAndGet(node);
+            path[depth] = node;
+            movers[depth] = board.getTurn();
+            undo[depth] = board.makeMove(moves[node]);
+            return depth + 1;
+        }
+
+        /**
+         * Chooses the child with the best upper confidence bound, children which have not been
+         * visited yet come first.
+         *
+         * @param node  the node whose child is chosen
+         * @param first the index of the first child
+         * @return the chosen child
+         */
+        private int select(int node, int first) {
+            int count = childCount[node];
+            int offset = random.nextInt(count);
+            double logVisits = Math.log(Math.max(1, visits.get(node)));
+            int best = first;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                int child = first + (i + offset) % count;
+                int n = visits.get(child);
+                if (n == 0) {
+                    return child;
+                }
+                double value = (double) wins.get(child) / n
+                        + MonteCarloSearcher.EXPLORATION * Math.sqrt(logVisits / n);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Ends the worker threads, the searcher can not be used afterwards.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    // ==== Test main ==============================================================================
+    /**
+     * Reports the playouts per second from the initial position with 1, 2, 4, ... threads.
+     *
+     * @param args letters, numbers, time in ms per search and maximal number of threads,
+     *             default 8 8 2000 (available processors)
+     * @throws PresetException if the board size is not valid
+     */
+    public static void main(String[] args) throws PresetException {
+        int letters = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int numbers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int budget = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        int maxThreads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ParallelMonteCarloSearcher searcher = new ParallelMonteCarloSearcher(DEFAULT_POOL_SIZE, threads);
+            int move = searcher.search(Board.create(letters, numbers), budget);
+            System.out.println(threads + " threads: " + searcher.getPlayouts() + " playouts, "
+                    + searcher.getPlayoutsPerSecond() + " per second, " + searcher.getNodes() + " nodes, move "
+                    + Move.getStartSquare(move) + "-" + Move.getEndSquare(move));
+            searcher.shutdown();
+        }
+    }
+}
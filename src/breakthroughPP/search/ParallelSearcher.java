@@ -0,0 +1,290 @@
+package breakthroughPP.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import breakthroughPP.board.Board;
+import breakthroughPP.preset.*;
+
+/**
+ * Parallel alpha-beta search after the Lazy SMP scheme: helper threads search the same position
+ * as the main search on their own copies of the board, all searches share one
+ * {@link TranspositionTable}. The helpers fill the table with results the main search can use,
+ * and every second helper searches one ply deeper to make them diverge (see
+ * {@link Searcher#setHelper(int)}). The move of the main search is played, the helpers are
+ * stopped when it ends.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author H.A.
+ */
+public class ParallelSearcher implements Setting {
+
+    /**
+     * Seconds an idle helper thread is kept
+     */
+    private static final int KEEP_ALIVE = 10;
+
+    /**
+     * Time budget in ms of the benchmark, which searches to a fixed depth
+     */
+    private static final long DAY = 24L * 3600 * 1000;
+
+    /**
+     * The main search and the helpers, index 0 is the main search
+     */
+    private final Searcher[] searchers;
+
+    /**
+     * Runs the helpers, null if there are none
+     */
+    private final ThreadPoolExecutor pool;
+
+    // ==== Constructor ====================================================================================
+    /**
+     * @param evaluator rates the leaves of the searches
+     * @param table     the table shared by all searches
+     * @param threads   number of threads including the calling thread, at least 1
+     * @throws IllegalArgumentException if threads is less than 1
+     */
+    public ParallelSearcher(Evaluator evaluator, TranspositionTable table, int threads)
+            throws IllegalArgumentException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1");
+        }
+        searchers = new Searcher[threads];
+        for (int i = 0; i < threads; i++) {
+            searchers[i] = new Searcher(evaluator, table);
+            searchers[i].setHelper(i);
+        }
+        if (threads == 1) {
+            pool = null;
+        } else {
+            pool = new ThreadPoolExecutor(threads - 1, threads - 1, KEEP_ALIVE, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "search helper");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    // ==== Getter ====================================================================================
+
+    /**
+     * @return the number of threads including the calling thread
+     */
+    public int getThreads() {
+        return searchers.length;
+    }
+
+    /**
+     * @return the main search, which holds the depth and score of the last search
+     */
+    public Searcher getMainSearcher() {
+        return searchers[0];
+    }
+
+    /**
+     * @return the number of positions visited by all threads in the last search
+     */
+    public long getNodes() {
+        long nodes = 0;
+        for (Searcher searcher : searchers) {
+            nodes += searcher.getNodes();
+        }
+        return nodes;
+    }
+
+    // ==== Instancemethods ====================================================================================
+    /**
+     * Searches the best move of the player whose turn it is with all threads, see
+     * {@link Searcher#search(Board, long, int)}.
+     *
+     * @param board    the position to search, it is restored after the search
+     * @param budget   time budget in ms
+     * @param maxdepth the depth after which the main search stops even if there is time left
+     * @return the best move of the main search, packed, or {@link Board#NO_MOVE} if the player can
+     * not move or the game is over
+     * @throws PresetException if the board can not be copied for the helpers
+     */
+    public int search(Board board, final long budget, final int maxdepth) throws PresetException {
+        return search(board, budget, null, maxdepth);
+    }
+
+    /**
+     * Searches the best move of the player whose turn it is with all threads within the
+     * deadlines of a time control, see {@link Searcher#search(Board, TimeControl, int)}. The
+     * helpers run until the main search ends.
+     *
+     * @param board    the position to search, it is restored after the search
+     * @param control  the time control of the move, which has been started
+     * @param maxdepth the depth after which the main search stops even if there is time left
+     * @return the best move of the main search, packed, or {@link Board#NO_MOVE} if the player
+     * can not move or the game is over
+     * @throws PresetException if the board can not be copied for the helpers
+     */
+    public int search(Board board, TimeControl control, int maxdepth) throws PresetException {
+        return search(board, control.getHardRemaining(), control, maxdepth);
+    }
+
+    /**
+     * @param board    the position to search
+     * @param budget   time budget in ms
+     * @param control  the time control of the main search or null
+     * @param maxdepth the depth after which the main search stops even if there is time left
+     * @return the best move of the main search, see {@link #search(Board, long, int)}
+     * @throws PresetException if the board can not be copied for the helpers
+     */
+    private int search(Board board, final long budget, TimeControl control, final int maxdepth)
+            throws PresetException {
+        List<Future<Integer>> helpers = new ArrayList<>();
+        for (int i = 1; i < searchers.length; i++) {
+            final Searcher helper = searchers[i];
+            final Board copy = board.copy();
+            helper.resume();
+            helpers.add(pool.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return helper.search(copy, budget, maxdepth);
+                }
+            }));
+        }
+
+        int move;
+        try {
+            move = control == null ? searchers[0].search(board, budget, maxdepth)
+                    : searchers[0].search(board, control, maxdepth);
+        } finally {
+            for (int i = 1; i < searchers.length; i++) {
+                searchers[i].stop();
+            }
+            awaitHelpers(helpers);
+        }
+        return move;
+    }
+
+    /**
+     * Waits until the stopped helpers have ended.
+     *
+     * @param helpers the results of the helpers
+     * @throws IllegalStateException if a helper failed
+     */
+    private void awaitHelpers(List<Future<Integer>> helpers) throws IllegalStateException {
+        boolean interrupted = false;
+        for (Future<Integer> helper : helpers) {
+            while (true) {
+                try {
+                    helper.get();
+                    break;
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                } catch (ExecutionException ee) {
+                    throw new IllegalStateException("Search helper failed: " + ee.getCause(), ee.getCause());
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops the running search from another thread, see {@link Searcher#stop()}. The search
+     * stays stopped until {@link #resume()} is called.
+     */
+    public void stop() {
+        for (Searcher searcher : searchers) {
+            searcher.stop();
+        }
+    }
+
+    /**
+     * Allows the next search to run after {@link #stop()}.
+     */
+    public void resume() {
+        searchers[0].resume();
+    }
+
+    /**
+     * Ends the helper threads, the searcher can not be used afterwards.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    // ==== Test main ==============================================================================
+    /**
+     * Measures the time to depth of the parallel search with 1, 2, 4, ... threads on some
+     * positions and reports the speedup against one thread.
+     *
+     * @param args letters, numbers, depth, maximal number of threads and number of positions,
+     *             default 8 8 8 (available processors) 8
+     * @throws PresetException if the board size is not valid
+     */
+    public static void main(String[] args) throws PresetException {
+        int letters = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int numbers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int maxThreads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int positions = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+
+        // Positions after some random moves, the same for all thread counts
+        List<Board> boards = new ArrayList<>();
+        Random random = new Random(1);
+        while (boards.size() < positions) {
+            Board board = Board.create(letters, numbers);
+            int[] moves = new int[board.getMaxMoves()];
+            int plies = 2 * boards.size();
+            for (int i = 0; i < plies && board.getStatus().isOk(); i++) {
+                int count = board.generateMoves(board.getTurn(), moves);
+                board.makeMove(moves[random.nextInt(count)]);
+            }
+            if (board.getStatus().isOk()) {
+                boards.add(board);
+            }
+        }
+
+        // Warm up, so the first measurement is not slowed down by the compilation of the code
+        ParallelSearcher warmup = new ParallelSearcher(new Evaluator(), new TranspositionTable(64), 1);
+        for (Board board : boards) {
+            warmup.search(board, DAY, depth);
+        }
+
+        long single = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ParallelSearcher searcher = new ParallelSearcher(new Evaluator(), new TranspositionTable(64), threads);
+            long time = 0;
+            long nodes = 0;
+            for (Board board : boards) {
+                long start = System.nanoTime();
+                searcher.search(board, DAY, depth);
+                time += System.nanoTime() - start;
+                nodes += searcher.getNodes();
+            }
+            searcher.shutdown();
+            time = Math.max(1, time / 1000000);
+            if (threads == 1) {
+                single = time;
+            }
+            System.out.println(threads + " threads: depth " + depth + " of " + positions + " positions in "
+                    + time + " ms, " + nodes + " nodes, speedup " + String.format("%.2f", (double) single / time));
+        }
+    }
+}
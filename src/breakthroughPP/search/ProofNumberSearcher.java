@@ -0,0 +1,650 @@
+package breakthroughPP.search;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import breakthroughPP.board.Board;
+import breakthroughPP.preset.*;
+
+/**
+ * Solver for the end of the game, which proves forced wins and losses exactly by depth-first
+ * proof-number search (df-pn). For a player who tries to win (the attacker), the proof number
+ * of a position is the least number of positions which still have to be proved won to prove it
+ * won, the disproof number the same for disproving it. The search always follows the child with
+ * the lowest proof number where the attacker is to move and the one with the lowest disproof
+ * number where the defender is to move, and goes back up as soon as a threshold is exceeded.
+ * <p>
+ * There are no draws, so a first search with the player to move as attacker decides the game.
+ * Then a win is looked for within a number of plies which grows by two each iteration, so the
+ * first win found is the fastest one; if the opponent wins, the move which resists longest is
+ * chosen. If a bound is reached during these iterations, the move of the first
+ * search is kept. Positions with a token before the goal or a runner (see {@link
+ * Board#getRunner(int)}) are decided without search.
+ * <p>
+ * The proof and disproof numbers are kept in a table of fixed size, two entries per bucket, so
+ * the memory is bounded; an entry of an earlier iteration or with less work below it is
+ * replaced first. The number of positions visited and the time per solve are bounded as well.
+ * A solver belongs to one thread.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author H.A.
+ */
+public class ProofNumberSearcher implements Setting {
+
+    /**
+     * Results of {@link #solve(Board, long)}: the player to move wins, loses or it is not known
+     */
+    public static final int WIN = 1;
+    public static final int LOSS = -1;
+    public static final int UNKNOWN = 0;
+
+    /**
+     * Proof or disproof number of a decided position, sums are cut off here
+     */
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    /**
+     * Bytes of one table entry: key, proof and disproof number, iteration and work
+     */
+    private static final int ENTRY_SIZE = 24;
+
+    /**
+     * Hash keys of the entries
+     */
+    private final long[] keys;
+
+    /**
+     * Proof and disproof numbers of the entries
+     */
+    private final int[] proofs;
+    private final int[] disproofs;
+
+    /**
+     * Iteration (upper bits) and remaining plies (lowest 8 bits) of the entries, 0 if empty
+     */
+    private final int[] stamps;
+
+    /**
+     * Positions visited below the entries, the more the more worth keeping
+     */
+    private final int[] works;
+
+    /**
+     * Selects the bucket of a hash key
+     */
+    private final int bucketMask;
+
+    /**
+     * Counts the iterations, entries of earlier ones are not used
+     */
+    private int iteration;
+
+    /**
+     * The most plies a win is looked for within
+     */
+    private int maxPlies = Searcher.MAX_PLY;
+
+    /**
+     * Moves and proof and disproof numbers of the children of each ply
+     */
+    private final int[][] moves = new int[Searcher.MAX_PLY + 1][];
+    private final int[][] childProofs = new int[Searcher.MAX_PLY + 1][];
+    private final int[][] childDisproofs = new int[Searcher.MAX_PLY + 1][];
+
+    /**
+     * Number of moves of the root of the last iteration
+     */
+    private int rootCount;
+
+    /**
+     * Positions visited below each move of the root of the last iteration
+     */
+    private long[] rootWork = new long[0];
+
+    /**
+     * The color which tries to win in the current iteration
+     */
+    private int attacker;
+
+    /**
+     * Positions visited and the bound of the current solve, whether the bound was reached
+     */
+    private long nodes;
+    private long nodeLimit;
+    private boolean aborted;
+
+    /**
+     * Time in ns of System.nanoTime() when the current solve has to stop
+     */
+    private long deadline;
+
+    /**
+     * Whether a position was disproved since no plies were left
+     */
+    private boolean cutoff;
+
+    /**
+     * Proof and disproof number of the position searched last
+     */
+    private int proof;
+    private int disproof;
+
+    /**
+     * Result, best move and number of plies to the end of the last solve
+     */
+    private int result = UNKNOWN;
+    private int bestMove = Board.NO_MOVE;
+    private int distance;
+
+    // ==== Constructor ====================================================================================
+    /**
+     * Creates a solver with an empty table. The number of entries is the largest power of two
+     * which fits into the size.
+     *
+     * @param megabytes size of the table in MB, at least 1
+     * @throws IllegalArgumentException if the size is less than 1 MB or too large for an array
+     */
+    public ProofNumberSearcher(int megabytes) throws IllegalArgumentException {
+        if (megabytes < 1 || megabytes > 8192) {
+            throw new IllegalArgumentException("Size of the proof number table out of range: " + megabytes);
+        }
+        int entries = (int) Long.highestOneBit(((long) megabytes << 20) / ENTRY_SIZE);
+        keys = new long[entries];
+        proofs = new int[entries];
+        disproofs = new int[entries];
+        stamps = new int[entries];
+        works = new int[entries];
+        bucketMask = entries / 2 - 1;
+    }
+
+    // ==== Getter ====================================================================================
+
+    /**
+     * @return the result of the last solve: WIN or LOSS for the player who was to move, or
+     * UNKNOWN if the bound of positions or time was reached first
+     */
+    public int getResult() {
+        return result;
+    }
+
+    /**
+     * @return the packed move of the last solve: the fastest win or the longest resistance,
+     * {@link Board#NO_MOVE} if the result is not known
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * @return the number of plies to the end of the game with best play, 0 if it is not known,
+     * which may also be the case if the result is known
+     */
+    public int getDistance() {
+        return distance;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public int getMaxPlies() {
+        return maxPlies;
+    }
+
+    // ==== Setter ====================================================================================
+
+    /**
+     * @param newmaxplies the most plies a win is looked for within, 1 to {@link Searcher#MAX_PLY}
+     * @throws IllegalArgumentException if the number is out of range
+     */
+    public void setMaxPlies(int newmaxplies) throws IllegalArgumentException {
+        if (newmaxplies < 1 || newmaxplies > Searcher.MAX_PLY) {
+            throw new IllegalArgumentException("Plies of the solver out of range: " + newmaxplies);
+        }
+        maxPlies = newmaxplies;
+    }
+
+    // ==== Instancemethods ====================================================================================
+    /**
+     * Tries to prove that the player to move wins or loses.
+     *
+     * @param board     the position, it is restored afterwards
+     * @param nodelimit the most positions to visit
+     * @return WIN, LOSS or UNKNOWN, see {@link #getResult()}
+     */
+    public int solve(Board board, long nodelimit) {
+        return solve(board, nodelimit, Long.MAX_VALUE / 2000000);
+    }
+
+    /**
+     * Tries to prove that the player to move wins or loses within a time.
+     *
+     * @param board     the position, it is restored afterwards
+     * @param nodelimit the most positions to visit
+     * @param budget    the most time in ms
+     * @return WIN, LOSS or UNKNOWN, see {@link #getResult()}
+     */
+    public int solve(Board board, long nodelimit, long budget) {
+        deadline = System.nanoTime() + budget * 1000000;
+        nodes = 0;
+        nodeLimit = nodelimit;
+        aborted = false;
+        result = UNKNOWN;
+        bestMove = Board.NO_MOVE;
+        distance = 0;
+        if (!board.getStatus().isOk()) {
+            return result;
+        }
+
+        // There are no draws, so a disproof for the player to move proves the opponent's win,
+        // unless the limit of plies cut the search off
+        int turn = board.getTurn();
+        cutoff = false;
+        boolean won = prove(board, turn, maxPlies);
+        if (!won && (aborted || cutoff)) {
+            return result;
+        }
+        result = won ? WIN : LOSS;
+        bestMove = won ? getProvedMove() : getHardestMove();
+
+        // Then the fastest win or the longest resistance, as far as the bound allows
+        int winner = won ? turn : 1 - turn;
+        for (int plies = won ? 1 : 2; plies < maxPlies && !aborted; plies += 2) {
+            if (prove(board, winner, plies)) {
+                distance = plies;
+                if (won) {
+                    bestMove = getProvedMove();
+                } else {
+                    int move = resist(board, plies);
+                    if (move != Board.NO_MOVE) {
+                        bestMove = move;
+                    }
+                }
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the first move of the root of the last iteration which is proved won
+     */
+    private int getProvedMove() {
+        for (int i = 0; i < rootCount; i++) {
+            if (childProofs[0][i] == 0) {
+                return moves[0][i];
+            }
+        }
+        return Board.NO_MOVE;
+    }
+
+    /**
+     * @return the move of the root of the last iteration whose position took the most work
+     */
+    private int getHardestMove() {
+        int hardest = 0;
+        for (int i = 1; i < rootCount; i++) {
+            if (rootWork[i] > rootWork[hardest]) {
+                hardest = i;
+            }
+        }
+        return moves[0][hardest];
+    }
+
+    /**
+     * Finds the move which delays a loss longest: a move after which the opponent can not win
+     * two plies faster than in the position itself.
+     *
+     * @param board the position, it is restored afterwards
+     * @param plies the number of plies in which the opponent wins the position
+     * @return the packed move, {@link Board#NO_MOVE} if a bound was reached first
+     */
+    private int resist(Board board, int plies) {
+        int[] candidates = Arrays.copyOf(moves[0], rootCount);
+        if (plies < 4) {
+            // Every move loses with the next ply
+            return candidates[0];
+        }
+        int opponent = 1 - board.getTurn();
+        for (int move : candidates) {
+            long undo = board.makeMove(move);
+            boolean faster = prove(board, opponent, plies - 3);
+            board.unmakeMove(undo);
+            if (aborted) {
+                break;
+            }
+            if (!faster) {
+                return move;
+            }
+        }
+        return Board.NO_MOVE;
+    }
+
+    /**
+     * Starts an iteration: proves or disproves a position for an attacker within a number of
+     * plies.
+     *
+     * @param board  the position
+     * @param winner the attacker
+     * @param plies  the most plies the attacker may need
+     * @return whether the attacker wins within the plies
+     */
+    private boolean prove(Board board, int winner, int plies) {
+        iteration++;
+        attacker = winner;
+        search(board, 0, plies, INFINITY, INFINITY);
+        return proof == 0;
+    }
+
+    /**
+     * Searches a position until it is decided or its proof or disproof number reaches the
+     * threshold, and stores the numbers in the table and in proof and disproof.
+     *
+     * @param board       the position
+     * @param ply         distance of the position to the root
+     * @param remaining   the plies left to the attacker for a win
+     * @param proofThreshold    bound of the proof number
+     * @param disproofThreshold bound of the disproof number
+     */
+    private void search(Board board, int ply, int remaining, int proofThreshold, int disproofThreshold) {
+        nodes++;
+        if (nodes >= nodeLimit || ((nodes & 0x3FF) == 0 && System.nanoTime() - deadline > 0)) {
+            aborted = true;
+        }
+        // The root is always expanded, so its moves are known
+        if (ply > 0 && decide(board, remaining)) {
+            return;
+        }
+        long startNodes = nodes;
+        long key = board.getHashKey();
+        int color = board.getTurn();
+
+        if (moves[ply] == null || moves[ply].length < board.getMaxMoves()) {
+            moves[ply] = new int[board.getMaxMoves()];
+            childProofs[ply] = new int[board.getMaxMoves()];
+            childDisproofs[ply] = new int[board.getMaxMoves()];
+        }
+        int[] buffer = moves[ply];
+        int[] proofNumbers = childProofs[ply];
+        int[] disproofNumbers = childDisproofs[ply];
+        int count = board.generateMoves(color, buffer);
+        if (count == 0) {
+            // A player who can not move loses
+            setNumbers(color != attacker);
+            return;
+        }
+        MoveOrdering.orderByStage(board, buffer, count, Board.NO_MOVE);
+        if (ply == 0) {
+            rootCount = count;
+            if (rootWork.length < count) {
+                rootWork = new long[count];
+            }
+            Arrays.fill(rootWork, 0);
+        }
+
+        // The children are looked up once, the numbers of the searched child are kept up to date
+        for (int i = 0; i < count; i++) {
+            long undo = board.makeMove(buffer[i]);
+            if (!decide(board, remaining - 1) && !lookUp(board.getHashKey(), remaining - 1)) {
+                proof = 1;
+                disproof = 1;
+            }
+            board.unmakeMove(undo);
+            proofNumbers[i] = proof;
+            disproofNumbers[i] = disproof;
+        }
+
+        boolean attacking = color == attacker;
+        int[] own = attacking ? proofNumbers : disproofNumbers;
+        int[] other = attacking ? disproofNumbers : proofNumbers;
+        int ownNumber;
+        int otherNumber;
+        while (true) {
+            // The own number is the least of the children, the other number their sum
+            int best = 0;
+            int second = INFINITY;
+            otherNumber = 0;
+            for (int i = 0; i < count; i++) {
+                if (own[i] < own[best]) {
+                    second = own[best];
+                    best = i;
+                } else if (i != best && own[i] < second) {
+                    second = own[i];
+                }
+                otherNumber = Math.min(INFINITY, otherNumber + other[i]);
+            }
+            ownNumber = own[best];
+            int ownThreshold = attacking ? proofThreshold : disproofThreshold;
+            int otherThreshold = attacking ? disproofThreshold : proofThreshold;
+            if (ownNumber >= ownThreshold || otherNumber >= otherThreshold || aborted) {
+                break;
+            }
+
+            int childOwn = Math.min(ownThreshold, second + 1 + second / 4);
+            int childOther = otherThreshold - otherNumber + other[best];
+            long before = nodes;
+            long undo = board.makeMove(buffer[best]);
+            if (attacking) {
+                search(board, ply + 1, remaining - 1, childOwn, childOther);
+            } else {
+                search(board, ply + 1, remaining - 1, childOther, childOwn);
+            }
+            board.unmakeMove(undo);
+            proofNumbers[best] = proof;
+            disproofNumbers[best] = disproof;
+            if (ply == 0) {
+                rootWork[best] += nodes - before;
+            }
+        }
+
+        proof = attacking ? ownNumber : otherNumber;
+        disproof = attacking ? otherNumber : ownNumber;
+        store(key, remaining, (int) Math.min(Integer.MAX_VALUE, nodes - startNodes));
+    }
+
+    /**
+     * Decides a position without search if the game is over, no plies are left or a token
+     * reaches the goal unstoppably, and sets proof and disproof then.
+     *
+     * @param board     the position
+     * @param remaining the plies left to the attacker for a win
+     * @return whether the position is decided
+     */
+    private boolean decide(Board board, int remaining) {
+        Status status = board.getStatus();
+        if (!status.isOk()) {
+            setNumbers((status.isRedWin() ? RED : BLUE) == attacker);
+            return true;
+        }
+        if (remaining == 0) {
+            cutoff = true;
+            setNumbers(false);
+            return true;
+        }
+
+        // The player to move wins in one ply from the row before the goal, a runner walks
+        // straight to the goal in 2 * rows - 1 plies and one of the opponent in 2 * rows plies
+        int color = board.getTurn();
+        int winner = color;
+        int plies = 1;
+        if (Quiescence.distanceToGoal(board, color) != 1) {
+            int runner = board.getRunner(color);
+            if (runner >= 0) {
+                plies = 2 * Quiescence.rowsToGoal(board, color, runner) - 1;
+            } else {
+                winner = 1 - color;
+                runner = board.getRunner(winner);
+                if (runner < 0) {
+                    return false;
+                }
+                plies = 2 * Quiescence.rowsToGoal(board, winner, runner);
+            }
+        }
+        if (winner != attacker) {
+            setNumbers(false);
+            return true;
+        }
+        if (plies <= remaining) {
+            setNumbers(true);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param won whether the position is proved (true) or disproved (false)
+     */
+    private void setNumbers(boolean won) {
+        proof = won ? 0 : INFINITY;
+        disproof = won ? INFINITY : 0;
+    }
+
+    /**
+     * Looks up a position of the current iteration and sets proof and disproof if it is found.
+     *
+     * @param key       the hash key of the position
+     * @param remaining the plies left to the attacker for a win
+     * @return whether the position was found
+     */
+    private boolean lookUp(long key, int remaining) {
+        int stamp = iteration << 8 | remaining;
+        int index = ((int) key & bucketMask) << 1;
+        for (int i = index; i < index + 2; i++) {
+            if (keys[i] == key && stamps[i] == stamp) {
+                proof = proofs[i];
+                disproof = disproofs[i];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stores proof and disproof of a position. The entry of the same position is replaced, else
+     * an entry of an earlier iteration or the one with less work.
+     *
+     * @param key       the hash key of the position
+     * @param remaining the plies left to the attacker for a win
+     * @param work      the positions visited below the position
+     */
+    private void store(long key, int remaining, int work) {
+        int stamp = iteration << 8 | remaining;
+        int index = ((int) key & bucketMask) << 1;
+        int victim = index;
+        for (int i = index; i < index + 2; i++) {
+            if (keys[i] == key && stamps[i] == stamp) {
+                victim = i;
+                break;
+            }
+            if (stamps[i] >>> 8 != iteration) {
+                victim = i;
+            } else if (stamps[victim] >>> 8 == iteration && works[i] < works[victim]) {
+                victim = i;
+            }
+        }
+        keys[victim] = key;
+        proofs[victim] = proof;
+        disproofs[victim] = disproof;
+        stamps[victim] = stamp;
+        works[victim] = work;
+    }
+
+    @Override
+    public String toString() {
+        String text = result == WIN ? "win" : result == LOSS ? "loss" : "unknown";
+        if (distance > 0) {
+            text += " in " + distance + " plies";
+        }
+        return text + " after " + nodes + " nodes";
+    }
+
+    // ==== Test main ==============================================================================
+    /**
+     * Solves positions near the end of random games and checks the results which are short
+     * enough with a plain search of all moves.
+     *
+     * @param args letters, numbers, number of positions and positions per solve, default
+     *             6 6 50 1000000
+     * @throws PresetException if the board size is not valid
+     */
+    public static void main(String[] args) throws PresetException {
+        int letters = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int numbers = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        int positions = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        long limit = args.length > 3 ? Long.parseLong(args[3]) : 1000000;
+
+        ProofNumberSearcher solver = new ProofNumberSearcher(16);
+        Random random = new Random(1);
+        int solved = 0;
+        int checked = 0;
+        int errors = 0;
+        long nodes = 0;
+        long start = System.nanoTime();
+        for (int p = 0; p < positions; p++) {
+            // Random moves until a quarter of the tokens is captured
+            Board board = Board.create(letters, numbers);
+            int[] buffer = new int[board.getMaxMoves()];
+            while (board.getTokenCount(RED) + board.getTokenCount(BLUE) > 3 * letters) {
+                board.makeMove(buffer[random.nextInt(board.generateMoves(board.getTurn(), buffer))]);
+                if (!board.getStatus().isOk()) {
+                    board = Board.create(letters, numbers);
+                }
+            }
+            int result = solver.solve(board, limit);
+            nodes += solver.getNodes();
+            if (result == UNKNOWN) {
+                continue;
+            }
+            solved++;
+            int winner = result == WIN ? board.getTurn() : 1 - board.getTurn();
+            int plies = solver.getDistance();
+            if (plies > 0 && plies <= 7) {
+                checked++;
+                long undo = board.makeMove(solver.getBestMove());
+                boolean exact = wins(board, winner, plies - 1) && (plies < 3 || !wins(board, winner, plies - 3));
+                board.unmakeMove(undo);
+                exact &= plies < 3 || !wins(board, winner, plies - 2);
+                if (!exact) {
+                    errors++;
+                    System.out.println("Wrong result " + solver + " in\n" + board);
+                }
+            }
+        }
+        long time = (System.nanoTime() - start) / 1000000;
+        System.out.println(solved + " of " + positions + " positions solved, " + checked + " checked, "
+                + errors + " wrong, " + nodes + " nodes in " + time + " ms");
+    }
+
+    /**
+     * @param board  the position
+     * @param winner the color which has to win
+     * @param plies  the most plies
+     * @return whether the color wins within the plies whatever the other player does
+     */
+    private static boolean wins(Board board, int winner, int plies) {
+        if (!board.getStatus().isOk()) {
+            return board.getStatus().isRedWin() == (winner == RED);
+        }
+        if (plies <= 0) {
+            return false;
+        }
+        int[] buffer = new int[board.getMaxMoves()];
+        int count = board.generateMoves(board.getTurn(), buffer);
+        boolean attacking = board.getTurn() == winner;
+        if (count == 0) {
+            return !attacking;
+        }
+        for (int i = 0; i < count; i++) {
+            long undo = board.makeMove(buffer[i]);
+            boolean won = wins(board, winner, plies - 1);
+            board.unmakeMove(undo);
+            if (won == attacking) {
+                return won;
+            }
+        }
+        return !attacking;
+    }
+}
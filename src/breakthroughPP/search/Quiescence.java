@@ -0,0 +1,290 @@
+package breakthroughPP.search;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import breakthroughPP.board.Board;
+import breakthroughPP.preset.*;
+
+/**
+ * Quiescence search at the leaves of the alpha-beta search. A leaf in the middle of an exchange
+ * of tokens or just before a token breaks through is rated wrongly by the {@link Evaluator}, so
+ * the search goes on with the captures and the moves into the last rows before the opponent's
+ * home row (runner moves) until the position is quiet.
+ * <p>
+ * The player to move may also stop (stand pat) and take the rating of the position, unless the
+ * opponent has a token on the row before its goal: such a token breaks through with the next
+ * move, so all moves are searched then. A player with such a token of its own has won, and so
+ * has a player with a runner which can not be stopped any more (see {@link Board#getRunner(int)}).
+ * <p>
+ * A quiescence search belongs to one search thread. On small boards many moves are runner moves,
+ * so they are searched only in the first {@link #RUNNER_PLIES} plies, and the search stops at
+ * the deadline of the alpha-beta search, see {@link #setDeadline(long)}.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author H.A.
+ */
+public class Quiescence implements Setting {
+
+    /**
+     * Moves ending at most this many numbers (rows) before the opponent's home row are searched
+     * as runner moves
+     */
+    public static final int RUNNER_ROWS = 2;
+
+    /**
+     * Runner moves are searched only this many plies after the leaf, later only captures, else
+     * the search spreads over the whole board on small boards
+     */
+    public static final int RUNNER_PLIES = 2;
+
+    /**
+     * The clock is read after this many positions (a power of two minus one)
+     */
+    private static final int CHECK_INTERVAL = 255;
+
+    /**
+     * Rates the quiet positions
+     */
+    private final Evaluator evaluator;
+
+    /**
+     * One move buffer per ply of the quiescence search, created when needed
+     */
+    private int[][] moves = new int[0][];
+
+    /**
+     * Number of positions visited since the last reset
+     */
+    private long nodes;
+
+    /**
+     * Time in ns of System.nanoTime() at which the search is stopped
+     */
+    private long deadline = Long.MAX_VALUE;
+
+    /**
+     * Set if the deadline has passed, the ratings are not valid then
+     */
+    private boolean stopped;
+
+    // ==== Constructor ====================================================================================
+    /**
+     * @param newevaluator rates the quiet positions
+     */
+    public Quiescence(Evaluator newevaluator) {
+        evaluator = newevaluator;
+    }
+
+    // ==== Getter ====================================================================================
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return whether the deadline has passed, the ratings since then are not valid
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    // ==== Setter ====================================================================================
+
+    /**
+     * Sets the deadline and allows the search to run until it has passed.
+     *
+     * @param newdeadline time in ns of System.nanoTime(), Long.MAX_VALUE for no deadline
+     */
+    public void setDeadline(long newdeadline) {
+        deadline = newdeadline;
+        stopped = false;
+    }
+
+    // ==== Instancemethods ====================================================================================
+
+    public void resetNodes() {
+        nodes = 0;
+    }
+
+    /**
+     * Rates a leaf of the alpha-beta search from the view of the player whose turn it is, after
+     * the captures and runner moves have been played out.
+     *
+     * @param board the position, it is restored afterwards
+     * @param ply   distance of the position to the root of the search
+     * @param alpha the rating the player has already reached
+     * @param beta  the rating the opponent has already reached, negated
+     * @return the rating, fail-soft: a rating of at most alpha or at least beta is only a bound
+     */
+    public int search(Board board, int ply, int alpha, int beta) {
+        return search(board, ply, 0, alpha, beta);
+    }
+
+    /**
+     * @param board the position
+     * @param ply   distance of the position to the root of the search
+     * @param qply  distance of the position to the leaf of the alpha-beta search
+     * @param alpha the rating the player has already reached
+     * @param beta  the rating the opponent has already reached, negated
+     * @return the rating, see {@link #search(Board, int, int, int)}
+     */
+    private int search(Board board, int ply, int qply, int alpha, int beta) {
+        if ((++nodes & CHECK_INTERVAL) == 0 && System.nanoTime() >= deadline) {
+            stopped = true;
+        }
+        if (stopped) {
+            return 0;
+        }
+
+        // The previous move has ended the game, winning sooner is better
+        if (!board.getStatus().isOk()) {
+            return -(Evaluator.WIN - ply);
+        }
+        int color = board.getTurn();
+        if (distanceToGoal(board, color) == 1) {
+            // A token on the row before the goal always has a diagonal move into it
+            return Evaluator.WIN - ply - 1;
+        }
+        // A runner walks straight to the goal, the own one in 2 * rows - 1 plies, the opponent's in 2 * rows
+        int runner = board.getRunner(color);
+        if (runner >= 0) {
+            return Evaluator.WIN - ply - (2 * rowsToGoal(board, color, runner) - 1);
+        }
+        runner = board.getRunner(1 - color);
+        if (runner >= 0) {
+            return -(Evaluator.WIN - ply - 2 * rowsToGoal(board, 1 - color, runner));
+        }
+        if (ply >= Searcher.MAX_PLY) {
+            return evaluator.evaluate(board, color);
+        }
+
+        // Without a threat the player may keep the rating of the position
+        boolean threatened = distanceToGoal(board, 1 - color) == 1;
+        int best = -Evaluator.WIN - 1;
+        if (!threatened) {
+            best = evaluator.evaluate(board, color);
+            if (best >= beta) {
+                return best;
+            }
+            if (best > alpha) {
+                alpha = best;
+            }
+        }
+
+        if (qply == moves.length) {
+            moves = Arrays.copyOf(moves, qply + 1);
+            moves[qply] = new int[board.getMaxMoves()];
+        }
+        int[] buffer = moves[qply];
+        int count = board.generateMoves(color, buffer);
+        if (count == 0) {
+            return -(Evaluator.WIN - ply);
+        }
+        MoveOrdering.orderByStage(board, buffer, count, Board.NO_MOVE);
+
+        int opponent = 1 - color;
+        int goal = color == RED ? board.getNumbers() - 1 : 0;
+        int runnerRows = qply < RUNNER_PLIES ? RUNNER_ROWS : -1;
+        for (int i = 0; i < count; i++) {
+            int end = Move.getEndSquare(buffer[i]);
+            if (!threatened && board.getColor(end) != opponent
+                    && Math.abs(goal - end / Board.ROW_STRIDE) > runnerRows) {
+                continue;
+            }
+            long undo = board.makeMove(buffer[i]);
+            int value = -search(board, ply + 1, qply + 1, -beta, -alpha);
+            board.unmakeMove(undo);
+            if (value > best) {
+                best = value;
+                if (value > alpha) {
+                    alpha = value;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param board the position
+     * @param color the color of the tokens
+     * @return the number of rows between the most advanced token of a color and the opponent's
+     * home row, 0 if it has reached it and more than the rows of the board if there is no token
+     */
+    static int distanceToGoal(Board board, int color) {
+        int front = board.getFrontNumber(color);
+        if (front < 0) {
+            return board.getNumbers() + 1;
+        }
+        return color == RED ? board.getNumbers() - 1 - front : front;
+    }
+
+    /**
+     * @param board  the position
+     * @param color  the color of the token
+     * @param square the square index of the token
+     * @return the number of rows between a token and the opponent's home row
+     */
+    static int rowsToGoal(Board board, int color, int square) {
+        int number = square / Board.ROW_STRIDE;
+        return color == RED ? board.getNumbers() - 1 - number : number;
+    }
+
+    // ==== Test main ==============================================================================
+    /**
+     * Plays games between a search with and one without quiescence search to the same fixed
+     * depth and reports the wins of the search with quiescence search. Each opening of some
+     * random moves is played with both colors.
+     *
+     * @param args letters, numbers, depth and number of games, default 8 8 3 20
+     * @throws PresetException if the board size is not valid
+     */
+    public static void main(String[] args) throws PresetException {
+        int letters = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int numbers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int games = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+        Searcher with = new Searcher(new Evaluator());
+        Searcher without = new Searcher(new Evaluator());
+        without.setQuiescence(false);
+        Random random = new Random(1);
+        int wins = 0;
+        long[] nodes = new long[2];
+        for (int game = 0; game < games; game++) {
+            Board board = Board.create(letters, numbers);
+            int[] moves = new int[board.getMaxMoves()];
+            random.setSeed(game / 2);
+            for (int i = 0; i < 4; i++) {
+                board.makeMove(moves[random.nextInt(board.generateMoves(board.getTurn(), moves))]);
+            }
+            int withColor = game % 2 == 0 ? RED : BLUE;
+            int winner = NONE;
+            while (board.getStatus().isOk()) {
+                boolean quiet = board.getTurn() == withColor;
+                Searcher searcher = quiet ? with : without;
+                int move = searcher.search(board, 24L * 3600 * 1000, depth);
+                nodes[quiet ? 0 : 1] += searcher.getNodes();
+                if (move == Board.NO_MOVE) {
+                    winner = 1 - board.getTurn();
+                    break;
+                }
+                board.makeMove(move);
+            }
+            if (winner == NONE) {
+                winner = board.getStatus().isRedWin() ? RED : BLUE;
+            }
+            if (winner == withColor) {
+                wins++;
+            }
+        }
+        System.out.println("Depth " + depth + ": with quiescence search " + wins + " of " + games + " games won, "
+                + nodes[0] + " nodes, without " + nodes[1] + " nodes");
+    }
+}
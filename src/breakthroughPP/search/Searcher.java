@@ -0,0 +1,436 @@
+package breakthroughPP.search;
+
+import breakthroughPP.board.Board;
+import breakthroughPP.preset.*;
+
+/**
+ * Negamax search with alpha-beta pruning and iterative deepening. The search deepens one ply
+ * after the other until a time budget runs out and returns the best move of the deepest search
+ * which was completed. The moves are made and taken back on the given board with
+ * {@link Board#makeMove(int)} and {@link Board#unmakeMove(long)}, so no boards are copied.
+ * If a {@link TranspositionTable} is given, the results of searched positions are stored in it
+ * and reused when a position is reached again. Several searches can share one table and search
+ * the same position in parallel, see {@link ParallelSearcher}. The moves are searched in the
+ * order of a {@link MoveOrdering}, the leaves are rated after a {@link Quiescence} search.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author H.A.
+ */
+public class Searcher implements Setting {
+
+    /**
+     * Maximal depth of a search
+     */
+    public static final int MAX_PLY = 64;
+
+    /**
+     * Bound of all ratings
+     */
+    private static final int INFINITY = Evaluator.WIN + 1;
+
+    /**
+     * Nodes between two looks at the clock
+     */
+    private static final int CHECK_INTERVAL = 255;
+
+    /**
+     * Rates the leaves of the search
+     */
+    private final Evaluator evaluator;
+
+    /**
+     * Results of searched positions, null if none are kept
+     */
+    private final TranspositionTable table;
+
+    /**
+     * Sorts the moves and learns from the cutoffs
+     */
+    private final MoveOrdering ordering = new MoveOrdering();
+
+    /**
+     * Plays out the captures and runner moves at the leaves
+     */
+    private final Quiescence quiescence;
+
+    /**
+     * Whether the leaves are rated after a quiescence search
+     */
+    private boolean useQuiescence = true;
+
+    /**
+     * The board which is searched
+     */
+    private Board board;
+
+    /**
+     * One move buffer per ply
+     */
+    private int[][] moves;
+
+    /**
+     * Time in ns of System.nanoTime() at which the search is stopped
+     */
+    private long deadline;
+
+    /**
+     * Set if the time budget ran out, the running iteration is thrown away then
+     */
+    private boolean stopped;
+
+    /**
+     * Set by another thread to stop the search at once, see {@link #stop()}
+     */
+    private volatile boolean stopRequested;
+
+    /**
+     * Number of plies the iterations of this search are deeper than the ones of the main search
+     * if it helps another search, see {@link #setHelper(int)}
+     */
+    private int depthOffset;
+
+    /**
+     * Whether this search helps another search, which owns the age of the table
+     */
+    private boolean helper;
+
+    /**
+     * Number of positions visited by the last search
+     */
+    private long nodes;
+
+    /**
+     * Depth of the last completed iteration of the last search
+     */
+    private int completedDepth;
+
+    /**
+     * Rating of the best move of the last completed iteration
+     */
+    private int score;
+
+    // ==== Constructor ====================================================================================
+    /**
+     * Creates a search which keeps no results of searched positions.
+     *
+     * @param newevaluator rates the leaves of the search
+     */
+    public Searcher(Evaluator newevaluator) {
+        this(newevaluator, null);
+    }
+
+    /**
+     * @param newevaluator rates the leaves of the search
+     * @param newtable     keeps the results of searched positions, may be shared with other
+     *                     searches of the same board size, null if none are kept
+     */
+    public Searcher(Evaluator newevaluator, TranspositionTable newtable) {
+        evaluator = newevaluator;
+        table = newtable;
+        quiescence = new Quiescence(newevaluator);
+    }
+
+    // ==== Getter ====================================================================================
+
+    /**
+     * @return the number of positions visited by the last search, including the quiescence search
+     */
+    public long getNodes() {
+        return nodes + quiescence.getNodes();
+    }
+
+    public boolean isQuiescence() {
+        return useQuiescence;
+    }
+
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * @return the move ordering, which holds the cutoff statistics of the last search
+     */
+    public MoveOrdering getOrdering() {
+        return ordering;
+    }
+
+    // ==== Setter ====================================================================================
+
+    /**
+     * @param newquiescence whether the leaves are rated after a quiescence search or at once
+     */
+    public void setQuiescence(boolean newquiescence) {
+        useQuiescence = newquiescence;
+    }
+
+    /**
+     * Makes this search a helper of another search of the same position which shares its table.
+     * Helpers with an odd index search one ply deeper in each iteration, so the searches
+     * diverge and fill the table with different positions.
+     *
+     * @param index the index of the helper, 0 for the main search
+     */
+    public void setHelper(int index) {
+        helper = index > 0;
+        depthOffset = index % 2;
+    }
+
+    // ==== Instancemethods ====================================================================================
+    /**
+     * Searches the best move of the player whose turn it is. If the time budget runs out in the
+     * first iteration, the best of the moves searched so far is returned, or the first move of
+     * the ordering if none has been searched.
+     *
+     * @param newboard the position to search, it is restored after the search
+     * @param budget   time budget in ms
+     * @param maxdepth the depth after which the search stops even if there is time left
+     * @return the best move, packed (see {@link Move#encode(int, int)}), or
+     * {@link Board#NO_MOVE} if the player can not move or the game is over
+     */
+    public int search(Board newboard, long budget, int maxdepth) {
+        return search(newboard, budget, null, maxdepth);
+    }
+
+    /**
+     * Searches the best move of the player whose turn it is within the deadlines of a time
+     * control: the search ends at the hard deadline, and no new iteration is started when the
+     * soft target comes near. If the best move changes between two iterations, the soft target
+     * is extended.
+     *
+     * @param newboard the position to search, it is restored after the search
+     * @param control  the time control of the move, which has been started
+     * @param maxdepth the depth after which the search stops even if there is time left
+     * @return the best move, packed, or {@link Board#NO_MOVE} if the player can not move or the
+     * game is over
+     */
+    public int search(Board newboard, TimeControl control, int maxdepth) {
+        return search(newboard, control.getHardRemaining(), control, maxdepth);
+    }
+
+    /**
+     * @param newboard the position to search
+     * @param budget   time budget in ms
+     * @param control  the time control of the move or null
+     * @param maxdepth the depth after which the search stops even if there is time left
+     * @return the best move, see {@link #search(Board, long, int)}
+     */
+    private int search(Board newboard, long budget, TimeControl control, int maxdepth) {
+        board = newboard;
+        if (moves == null || moves[0].length < board.getMaxMoves()) {
+            moves = new int[MAX_PLY + 1][board.getMaxMoves()];
+        }
+        deadline = System.nanoTime() + budget * 1000000L;
+        stopped = false;
+        nodes = 0;
+        quiescence.resetNodes();
+        quiescence.setDeadline(deadline);
+        completedDepth = 0;
+        score = 0;
+        if (table != null && !helper) {
+            table.newSearch();
+        }
+        ordering.newSearch();
+
+        if (!board.getStatus().isOk()) {
+            return Board.NO_MOVE;
+        }
+        int[] rootMoves = moves[0];
+        int count = board.generateMoves(board.getTurn(), rootMoves);
+        if (count == 0) {
+            return Board.NO_MOVE;
+        }
+        ordering.order(board, rootMoves, count, Board.NO_MOVE, 0);
+        if (count == 1) {
+            return rootMoves[0];
+        }
+
+        int bestMove = rootMoves[0];
+        for (int depth = 1 + depthOffset; depth <= Math.min(maxdepth, MAX_PLY); depth++) {
+            int alpha = -INFINITY;
+            int best = 0;
+            for (int i = 0; i < count; i++) {
+                long undo = board.makeMove(rootMoves[i]);
+                int value = -negamax(depth - 1, 1, -INFINITY, -alpha);
+                board.unmakeMove(undo);
+                if (stopped) {
+                    break;
+                }
+                if (value > alpha) {
+                    alpha = value;
+                    best = i;
+                }
+            }
+            // The moves searched before the time ran out were compared with the first one
+            bestMove = rootMoves[best];
+            if (stopped) {
+                break;
+            }
+
+            // Search the best move first in the next iteration
+            System.arraycopy(rootMoves, 0, rootMoves, 1, best);
+            rootMoves[0] = bestMove;
+            completedDepth = depth;
+            score = alpha;
+            if (table != null) {
+                table.store(board.getHashKey(), bestMove, alpha, depth, TranspositionTable.EXACT);
+            }
+
+            // A won or lost game does not change with a deeper search
+            if (Math.abs(alpha) >= Evaluator.WIN - MAX_PLY) {
+                break;
+            }
+            if (control != null) {
+                if (depth > 1 + depthOffset && best != 0) {
+                    control.bestMoveChanged();
+                }
+                if (!control.canStartIteration()) {
+                    break;
+                }
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Stops the running search from another thread. The search returns the best move found so
+     * far, see {@link #search(Board, long, int)}. A stopped search stays stopped
+     * until {@link #resume()} is called.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Allows the next search to run after {@link #stop()}.
+     */
+    public void resume() {
+        stopRequested = false;
+    }
+
+    /**
+     * Rates the position on the board from the view of the player whose turn it is.
+     *
+     * @param depth remaining depth
+     * @param ply   distance to the root of the search
+     * @param alpha the rating the player has already reached
+     * @param beta  the rating the opponent has already reached, negated
+     * @return the rating, a rating of at most alpha or at least beta is only a bound
+     */
+    private int negamax(int depth, int ply, int alpha, int beta) {
+        if (((++nodes & CHECK_INTERVAL) == 0 && System.nanoTime() >= deadline) || stopRequested) {
+            stopped = true;
+        }
+        if (stopped) {
+            return 0;
+        }
+
+        // The previous move has ended the game, winning sooner is better
+        if (!board.getStatus().isOk()) {
+            return -(Evaluator.WIN - ply);
+        }
+        int color = board.getTurn();
+        if (depth == 0 && useQuiescence) {
+            int value = quiescence.search(board, ply, alpha, beta);
+            if (quiescence.isStopped()) {
+                stopped = true;
+            }
+            return value;
+        }
+        if (depth == 0 || ply == MAX_PLY) {
+            return evaluator.evaluate(board, color);
+        }
+
+        // A result of an earlier search of this position may already decide it
+        int hashMove = Board.NO_MOVE;
+        if (table != null) {
+            long entry = table.probe(board.getHashKey());
+            if (entry != TranspositionTable.NONE) {
+                hashMove = TranspositionTable.getMove(entry);
+                if (TranspositionTable.getDepth(entry) >= depth) {
+                    int value = fromTable(TranspositionTable.getScore(entry), ply);
+                    int bound = TranspositionTable.getBound(entry);
+                    if (bound == TranspositionTable.EXACT
+                            || bound == TranspositionTable.LOWER && value >= beta
+                            || bound == TranspositionTable.UPPER && value <= alpha) {
+                        return value;
+                    }
+                }
+            }
+        }
+
+        int[] buffer = moves[ply];
+        int count = board.generateMoves(color, buffer);
+        if (count == 0) {
+            return -(Evaluator.WIN - ply);
+        }
+        ordering.order(board, buffer, count, hashMove, ply);
+
+        int originalAlpha = alpha;
+        int best = -INFINITY;
+        int bestMove = Board.NO_MOVE;
+        for (int i = 0; i < count; i++) {
+            long undo = board.makeMove(buffer[i]);
+            int value = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            board.unmakeMove(undo);
+            if (value > best) {
+                best = value;
+                bestMove = buffer[i];
+                if (value > alpha) {
+                    alpha = value;
+                    if (alpha >= beta) {
+                        if (!stopped) {
+                            ordering.cutoff(board, buffer[i], i, depth, ply);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (table != null && !stopped) {
+            int bound = best >= beta ? TranspositionTable.LOWER
+                    : best > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+            table.store(board.getHashKey(), bound == TranspositionTable.UPPER ? Board.NO_MOVE : bestMove,
+                    toTable(best, ply), depth, bound);
+        }
+        return best;
+    }
+
+    /**
+     * Converts a score for the table: won and lost scores are counted from the position instead
+     * of from the root, so they are valid wherever the position is reached.
+     *
+     * @param value the score relative to the root
+     * @param ply   distance of the position to the root
+     * @return the score relative to the position
+     */
+    private static int toTable(int value, int ply) {
+        if (value >= Evaluator.WIN - MAX_PLY) return value + ply;
+        if (value <= -Evaluator.WIN + MAX_PLY) return value - ply;
+        return value;
+    }
+
+    /**
+     * Converts a score of the table back, see {@link #toTable(int, int)}.
+     *
+     * @param value the score relative to the position
+     * @param ply   distance of the position to the root
+     * @return the score relative to the root
+     */
+    private static int fromTable(int value, int ply) {
+        if (value >= Evaluator.WIN - MAX_PLY) return value - ply;
+        if (value <= -Evaluator.WIN + MAX_PLY) return value + ply;
+        return value;
+    }
+}
@@ -0,0 +1,412 @@
+package breakthroughPP.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+
+import breakthroughPP.board.Board;
+import breakthroughPP.preset.*;
+
+/**
+ * Endgame tablebase of a narrow board, which knows for every position the result with best
+ * play and the number of plies to the end of the game. The tables are computed beforehand by
+ * the {@link TablebaseGenerator} and mapped into memory read-only, so a lookup reads one byte
+ * of the file and the table is never loaded onto the heap.
+ * <p>
+ * A file starts with a header of {@link #HEADER_SIZE} bytes (magic number, version, letters,
+ * numbers) followed by one byte per position: 0 if the position is not valid, else the number
+ * of plies to the end of the game plus one. The player to move wins if the number of plies is
+ * odd, as the last move is its own, and loses if it is even. The index of a position counts
+ * the fields in base 3 (empty, red, blue), except on the home rows, where only the own tokens
+ * of the row can stand during a game (base 2), and the player to move is the lowest digit.
+ * Only sizes with at most {@link #MAX_ENTRIES} positions are supported.
+ * <p>
+ * The tablebases are shared, see {@link #find(int, int)}.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author H.A.
+ */
+public class Tablebase implements Setting {
+
+    /**
+     * Directory the tablebase files are looked for in
+     */
+    public static final String DEFAULT_DIRECTORY = "tablebases";
+
+    /**
+     * Most positions of a supported board size, the files have at most this many bytes
+     */
+    public static final long MAX_ENTRIES = 1L << 28;
+
+    /**
+     * Bytes before the first position in the file
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * "BTTB", begins each file
+     */
+    static final int MAGIC = 0x42545442;
+
+    /**
+     * Version of the file format
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Opened tablebases by letters * 32 + numbers, missing files are not remembered
+     */
+    private static final ConcurrentHashMap<Integer, Tablebase> cache = new ConcurrentHashMap<>();
+
+    /**
+     * The index of the positions of the board size
+     */
+    private final Index index;
+
+    /**
+     * The mapped file
+     */
+    private final MappedByteBuffer buffer;
+
+    // ==== Constructor ====================================================================================
+    /**
+     * Maps a tablebase file into memory.
+     *
+     * @param file    the file written by the {@link TablebaseGenerator}
+     * @param letters number of columns
+     * @param numbers number of rows
+     * @throws IOException if the file can not be read or does not belong to the board size
+     */
+    public Tablebase(File file, int letters, int numbers) throws IOException {
+        if (!isSupported(letters, numbers)) {
+            throw new IOException("No tablebase for " + letters + "x" + numbers);
+        }
+        index = new Index(letters, numbers);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            if (channel.size() != HEADER_SIZE + index.size) {
+                throw new IOException("Wrong size of the tablebase " + file);
+            }
+            // The mapping stays valid when the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                || buffer.getInt(8) != letters || buffer.getInt(12) != numbers) {
+            throw new IOException("Wrong header of the tablebase " + file);
+        }
+    }
+
+    /**
+     * Returns the shared tablebase of a board size from the {@link #DEFAULT_DIRECTORY}.
+     *
+     * @param letters number of columns
+     * @param numbers number of rows
+     * @return the tablebase, null if the size is not supported or there is no valid file
+     */
+    public static Tablebase find(int letters, int numbers) {
+        if (!isSupported(letters, numbers)) {
+            return null;
+        }
+        Integer key = letters * Board.ROW_STRIDE + numbers;
+        Tablebase tablebase = cache.get(key);
+        if (tablebase == null) {
+            File file = getFile(new File(DEFAULT_DIRECTORY), letters, numbers);
+            if (!file.isFile()) {
+                return null;
+            }
+            try {
+                tablebase = new Tablebase(file, letters, numbers);
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                return null;
+            }
+            Tablebase known = cache.putIfAbsent(key, tablebase);
+            if (known != null) {
+                tablebase = known;
+            }
+        }
+        return tablebase;
+    }
+
+    // ==== Getter ====================================================================================
+
+    public int getLetters() {
+        return index.letters;
+    }
+
+    public int getNumbers() {
+        return index.numbers;
+    }
+
+    /**
+     * @param directory the directory of the tablebases
+     * @param letters   number of columns
+     * @param numbers   number of rows
+     * @return the file of the tablebase of a board size
+     */
+    public static File getFile(File directory, int letters, int numbers) {
+        return new File(directory, "tb" + letters + "x" + numbers + ".bin");
+    }
+
+    /**
+     * @param letters number of columns
+     * @param numbers number of rows
+     * @return whether a tablebase of the board size has at most {@link #MAX_ENTRIES} positions
+     */
+    public static boolean isSupported(int letters, int numbers) {
+        if (numbers < 6 || numbers > 26 || letters < 2 || letters > 26) {
+            return false;
+        }
+        long size = 2;
+        for (int i = 0; i < letters * numbers; i++) {
+            size *= i < letters || i >= letters * (numbers - 1) ? 2 : 3;
+            if (size > MAX_ENTRIES) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ==== Instancemethods ====================================================================================
+    /**
+     * Looks up the number of plies to the end of the game with best play. The player to move
+     * wins if it is odd and loses if it is even.
+     *
+     * @param board a position of the board size of the tablebase
+     * @return the number of plies, -1 if the game is over or the position is not valid
+     */
+    public int probe(Board board) {
+        if (!board.getStatus().isOk()) {
+            return -1;
+        }
+        long red = 0L;
+        long blue = 0L;
+        for (int num = 0; num < index.numbers; num++) {
+            for (int let = 0; let < index.letters; let++) {
+                int color = board.getColor(num, let);
+                if (color == RED) {
+                    red |= 1L << (num * index.letters + let);
+                } else if (color == BLUE) {
+                    blue |= 1L << (num * index.letters + let);
+                }
+            }
+        }
+        long position = index.of(red, blue, board.getTurn());
+        if (position < 0) {
+            return -1;
+        }
+        return (buffer.get(HEADER_SIZE + (int) position) & 0xFF) - 1;
+    }
+
+    /**
+     * Finds the best move: the fastest win or the longest resistance.
+     *
+     * @param board a position of the board size of the tablebase, it is restored afterwards
+     * @return the packed move, {@link Board#NO_MOVE} if the position is not in the tablebase
+     */
+    public int getBestMove(Board board) {
+        int plies = probe(board);
+        if (plies <= 0) {
+            return Board.NO_MOVE;
+        }
+        int[] moves = new int[board.getMaxMoves()];
+        int count = board.generateMoves(board.getTurn(), moves);
+        for (int i = 0; i < count; i++) {
+            long undo = board.makeMove(moves[i]);
+            // A move ending the game is the fastest win
+            int next = board.getStatus().isOk() ? probe(board) : 0;
+            board.unmakeMove(undo);
+            if (next == plies - 1) {
+                return moves[i];
+            }
+        }
+        return Board.NO_MOVE;
+    }
+
+    @Override
+    public String toString() {
+        return "Tablebase " + index.letters + "x" + index.numbers + ", " + index.size + " positions";
+    }
+
+    // ==== Test main ==============================================================================
+    /**
+     * Compares the tablebase with the {@link ProofNumberSearcher} in positions of random games,
+     * the results and the numbers of plies must be the same.
+     *
+     * @param args letters, numbers and number of positions, default 2 6 1000; the tablebase is
+     *             read from the {@link #DEFAULT_DIRECTORY}
+     * @throws PresetException if the board size is not valid
+     */
+    public static void main(String[] args) throws PresetException {
+        int letters = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int numbers = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        int positions = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        Tablebase tablebase = find(letters, numbers);
+        if (tablebase == null) {
+            System.out.println("No tablebase for " + letters + "x" + numbers + " in " + DEFAULT_DIRECTORY);
+            return;
+        }
+        ProofNumberSearcher solver = new ProofNumberSearcher(16);
+        java.util.Random random = new java.util.Random(1);
+        int compared = 0;
+        int errors = 0;
+        long probeTime = 0;
+        for (int p = 0; p < positions; p++) {
+            Board board = Board.create(letters, numbers);
+            int[] moves = new int[board.getMaxMoves()];
+            int plies = random.nextInt(letters * numbers);
+            for (int i = 0; i < plies && board.getStatus().isOk(); i++) {
+                board.makeMove(moves[random.nextInt(board.generateMoves(board.getTurn(), moves))]);
+            }
+            if (!board.getStatus().isOk()) {
+                continue;
+            }
+            long start = System.nanoTime();
+            int distance = tablebase.probe(board);
+            int move = tablebase.getBestMove(board);
+            probeTime += System.nanoTime() - start;
+            if (solver.solve(board, 1000000) == ProofNumberSearcher.UNKNOWN || solver.getDistance() == 0) {
+                continue;
+            }
+            compared++;
+            if (distance != solver.getDistance() || move == Board.NO_MOVE) {
+                errors++;
+                System.out.println("Tablebase " + distance + " plies, solver " + solver + " in\n" + board);
+            }
+        }
+        System.out.println(tablebase + ": " + compared + " positions compared, " + errors + " different, "
+                + probeTime / Math.max(1, positions) + " ns per probe and best move");
+    }
+
+    // ==== Index ====================================================================================
+
+    /**
+     * Numbers the positions of a board size. The tokens are given as bitboards with densely
+     * numbered fields (number * letters + letter).
+     */
+    static final class Index {
+
+        final int letters;
+        final int numbers;
+
+        /**
+         * Number of positions, including both players to move
+         */
+        final long size;
+
+        /**
+         * Bits of the letters of one number (row)
+         */
+        final int rowMask;
+
+        /**
+         * Value of the first field of each number (row) in the index, without the player to move
+         */
+        final long[] rowBase;
+
+        /**
+         * Digits of the tokens of one number (row) for the red home row, the middle rows and the
+         * blue home row, indexed by [kind][red tokens][blue tokens], -1 if not valid
+         */
+        final int[][][] rowCodes;
+
+        Index(int newletters, int newnumbers) {
+            letters = newletters;
+            numbers = newnumbers;
+            rowMask = (1 << letters) - 1;
+            rowCodes = new int[3][1 << letters][1 << letters];
+            int[] radix = {2, 3, 2};
+            for (int kind = 0; kind < 3; kind++) {
+                for (int red = 0; red <= rowMask; red++) {
+                    for (int blue = 0; blue <= rowMask; blue++) {
+                        int code = 0;
+                        for (int let = letters - 1; let >= 0 && code >= 0; let--) {
+                            boolean r = (red >>> let & 1) != 0;
+                            boolean b = (blue >>> let & 1) != 0;
+                            int digit = r ? 1 : b ? (kind == 1 ? 2 : 1) : 0;
+                            if ((r && b) || (kind == 0 && b) || (kind == 2 && r)) {
+                                code = -1;
+                            } else {
+                                code = code * radix[kind] + digit;
+                            }
+                        }
+                        rowCodes[kind][red][blue] = code;
+                    }
+                }
+            }
+            rowBase = new long[numbers];
+            long base = 1;
+            for (int num = 0; num < numbers; num++) {
+                rowBase[num] = base;
+                int radixOfRow = num == 0 || num == numbers - 1 ? 2 : 3;
+                for (int let = 0; let < letters; let++) {
+                    base *= radixOfRow;
+                }
+            }
+            size = 2 * base;
+        }
+
+        /**
+         * @param num a number (row)
+         * @return the kind of the row in rowCodes
+         */
+        private int kind(int num) {
+            return num == 0 ? 0 : num == numbers - 1 ? 2 : 1;
+        }
+
+        /**
+         * @param red  the red tokens, dense
+         * @param blue the blue tokens, dense
+         * @param turn the player to move
+         * @return the index of the position, -1 if a token is on the opponent's home row
+         */
+        long of(long red, long blue, int turn) {
+            long index = 0;
+            for (int num = 0; num < numbers; num++) {
+                int shift = num * letters;
+                int code = rowCodes[kind(num)][(int) (red >>> shift) & rowMask][(int) (blue >>> shift) & rowMask];
+                if (code < 0) {
+                    return -1;
+                }
+                index += code * rowBase[num];
+            }
+            return 2 * index + turn;
+        }
+
+        /**
+         * Sets up the tokens of a position.
+         *
+         * @param position the index of the position
+         * @param tokens   receives the red and the blue tokens, dense
+         * @return the player to move
+         */
+        int decode(long position, long[] tokens) {
+            int turn = (int) (position & 1);
+            long rest = position >>> 1;
+            tokens[RED] = 0L;
+            tokens[BLUE] = 0L;
+            for (int num = 0; num < numbers; num++) {
+                int kind = kind(num);
+                for (int let = 0; let < letters; let++) {
+                    int digit = (int) (rest % (kind == 1 ? 3 : 2));
+                    rest /= kind == 1 ? 3 : 2;
+                    long bit = 1L << (num * letters + let);
+                    if (digit == 1 && kind != 2) {
+                        tokens[RED] |= bit;
+                    } else if (digit != 0) {
+                        tokens[BLUE] |= bit;
+                    }
+                }
+            }
+            return turn;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package breakthroughPP.search;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import breakthroughPP.preset.*;
+
+/**
+ * Computes the {@link Tablebase} of a narrow board offline. Every move advances a token, so the
+ * positions form a directed graph without cycles whose sinks are the ends of the game, and the
+ * retrograde analysis can go back from the ends in the order of a depth-first search: a
+ * position is decided when all positions after its moves are. The player to move wins in the
+ * least number of plies after which the opponent loses, else it loses in the most number of
+ * plies it can hold out.
+ * <p>
+ * The positions are enumerated in parallel: the threads take blocks of indices and share the
+ * table, and a position which two threads decide at the same time gets the same value from
+ * both, so no locks are needed. The tokens are kept as bitboards with densely numbered fields,
+ * as in {@link breakthroughPP.board.SmallBoard}.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author H.A.
+ */
+public class TablebaseGenerator implements Setting {
+
+    /**
+     * Positions per block of indices a thread takes at once
+     */
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    /**
+     * The board sizes generated if none are given: the narrow ones which fit
+     */
+    private static final int[][] DEFAULT_SIZES = {{2, 6}, {2, 7}, {2, 8}, {3, 6}};
+
+    /**
+     * The index of the positions
+     */
+    private final Tablebase.Index index;
+
+    /**
+     * Number of plies plus one for each position, 0 while it is not decided or not valid
+     */
+    private final byte[] table;
+
+    /**
+     * Fields of the board, fields not on the first or last letter and the home rows each color
+     * has to reach (index RED and BLUE)
+     */
+    private final long boardMask;
+    private final long notFirstLetter;
+    private final long notLastLetter;
+    private final long[] goalMask = new long[2];
+
+    // ==== Constructor ====================================================================================
+    /**
+     * Prepares the generation of a tablebase.
+     *
+     * @param letters number of columns
+     * @param numbers number of rows
+     * @throws IllegalArgumentException if there is no tablebase of the size, see
+     *                                  {@link Tablebase#isSupported(int, int)}
+     */
+    public TablebaseGenerator(int letters, int numbers) throws IllegalArgumentException {
+        if (!Tablebase.isSupported(letters, numbers)) {
+            throw new IllegalArgumentException("No tablebase for " + letters + "x" + numbers);
+        }
+        index = new Tablebase.Index(letters, numbers);
+        table = new byte[(int) index.size];
+
+        int fields = letters * numbers;
+        boardMask = (1L << fields) - 1;
+        long firstLetter = 0L;
+        for (int num = 0; num < numbers; num++) {
+            firstLetter |= 1L << (num * letters);
+        }
+        notFirstLetter = boardMask & ~firstLetter;
+        notLastLetter = boardMask & ~(firstLetter << (letters - 1));
+        goalMask[RED] = (long) index.rowMask << ((numbers - 1) * letters);
+        goalMask[BLUE] = index.rowMask;
+    }
+
+    // ==== Instancemethods ====================================================================================
+    /**
+     * Decides all valid positions: each player has at most two rows of tokens and the player who
+     * is not to move has a token.
+     *
+     * @param threads the number of threads, at least 1
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * @throws ExecutionException   if a thread fails
+     */
+    public void generate(int threads) throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> blocks = new ArrayList<>();
+            for (long first = 0; first < index.size; first += BLOCK_SIZE) {
+                final long from = first;
+                final long to = Math.min(index.size, first + BLOCK_SIZE);
+                blocks.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        long[] tokens = new long[2];
+                        for (long position = from; position < to; position++) {
+                            int turn = index.decode(position, tokens);
+                            if (Long.bitCount(tokens[RED]) <= 2 * index.letters
+                                    && Long.bitCount(tokens[BLUE]) <= 2 * index.letters
+                                    && tokens[1 - turn] != 0) {
+                                solve(tokens[RED], tokens[BLUE], turn);
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> block : blocks) {
+                block.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Decides a position and the positions after its moves which are not decided yet.
+     *
+     * @param red  the red tokens, dense
+     * @param blue the blue tokens, dense
+     * @param turn the player to move
+     * @return the number of plies to the end of the game, odd if the player to move wins
+     */
+    private int solve(long red, long blue, int turn) {
+        int position = (int) index.of(red, blue, turn);
+        int entry = table[position] & 0xFF;
+        if (entry != 0) {
+            return entry - 1;
+        }
+
+        long own = turn == RED ? red : blue;
+        long other = turn == RED ? blue : red;
+        int forward = turn == RED ? index.letters : -index.letters;
+        long free = boardMask & ~own;
+        long[] targets = {
+                shift(own & notFirstLetter, forward - 1) & free,
+                shift(own, forward) & free & ~other,
+                shift(own & notLastLetter, forward + 1) & free};
+
+        int plies;
+        if (((targets[0] | targets[1] | targets[2]) & goalMask[turn]) != 0) {
+            plies = 1;
+        } else {
+            // The fastest win and the longest loss, a player who can not move has lost
+            int win = Integer.MAX_VALUE;
+            int loss = 0;
+            for (int direction = 0; direction < 3 && win > 1; direction++) {
+                int distance = forward + direction - 1;
+                for (long bits = targets[direction]; bits != 0; bits &= bits - 1) {
+                    long end = Long.lowestOneBit(bits);
+                    long moved = own & ~shift(end, -distance) | end;
+                    long captured = other & ~end;
+                    if (captured == 0) {
+                        win = 1;
+                        break;
+                    }
+                    int next = turn == RED ? solve(moved, captured, BLUE) : solve(captured, moved, RED);
+                    if (next % 2 == 0) {
+                        win = Math.min(win, next + 1);
+                    } else {
+                        loss = Math.max(loss, next + 1);
+                    }
+                }
+            }
+            plies = win != Integer.MAX_VALUE ? win : loss;
+        }
+        table[position] = (byte) (plies + 1);
+        return plies;
+    }
+
+    /**
+     * @param bits     a bitboard
+     * @param distance the shift distance, positive towards higher numbers
+     * @return the shifted bitboard
+     */
+    private static long shift(long bits, int distance) {
+        return distance > 0 ? bits << distance : bits >>> -distance;
+    }
+
+    /**
+     * Writes the tablebase file, see {@link Tablebase}.
+     *
+     * @param file the file, it is overwritten
+     * @throws IOException if the file can not be written
+     */
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(Tablebase.MAGIC);
+            out.writeInt(Tablebase.VERSION);
+            out.writeInt(index.letters);
+            out.writeInt(index.numbers);
+            out.write(table);
+        }
+    }
+
+    @Override
+    public String toString() {
+        long wins = 0;
+        long losses = 0;
+        int longest = 0;
+        for (byte entry : table) {
+            int plies = (entry & 0xFF) - 1;
+            if (plies < 0) {
+                continue;
+            }
+            if (plies % 2 == 1) {
+                wins++;
+            } else {
+                losses++;
+            }
+            longest = Math.max(longest, plies);
+        }
+        return index.letters + "x" + index.numbers + ": " + wins + " won and " + losses
+                + " lost positions of the player to move, longest game " + longest + " plies";
+    }
+
+    // ==== Main ====================================================================================
+    /**
+     * Generates tablebases and writes them into a directory.
+     *
+     * @param args the directory (default {@link Tablebase#DEFAULT_DIRECTORY}), the number of
+     *             threads (default the number of processors) and pairs of letters and numbers
+     *             (default 2x6, 2x7, 2x8 and 3x6)
+     * @throws Exception if a tablebase can not be generated or written
+     */
+    public static void main(String[] args) throws Exception {
+        File directory = new File(args.length > 0 ? args[0] : Tablebase.DEFAULT_DIRECTORY);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int[][] sizes = DEFAULT_SIZES;
+        if (args.length > 3) {
+            sizes = new int[(args.length - 2) / 2][];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = new int[]{Integer.parseInt(args[2 + 2 * i]), Integer.parseInt(args[3 + 2 * i])};
+            }
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create the directory " + directory);
+        }
+
+        for (int[] size : sizes) {
+            long start = System.nanoTime();
+            TablebaseGenerator generator = new TablebaseGenerator(size[0], size[1]);
+            generator.generate(threads);
+            File file = Tablebase.getFile(directory, size[0], size[1]);
+            generator.write(file);
+            System.out.println(generator + ", " + (System.nanoTime() - start) / 1000000 + " ms, " + file);
+        }
+    }
+}
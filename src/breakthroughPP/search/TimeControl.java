@@ -0,0 +1,240 @@
+package breakthroughPP.search;
+
+import breakthroughPP.board.Board;
+import breakthroughPP.preset.*;
+
+/**
+ * Divides the time of a computer player among its moves. For each move there is a soft target,
+ * after which no new piece of work (an iteration of the search) should be started, and a hard
+ * deadline, before which the move must be found. The time comes from a clock, either a fixed
+ * time per move or a time for the whole game with an increment per move.
+ * <p>
+ * With a time per move the soft target is half of it and the hard deadline the time itself. With
+ * a clock for the whole game the soft target is the remaining time divided by the estimated
+ * number of own moves to go plus most of the increment; the hard deadline is a multiple of the
+ * soft target but keeps a safety margin on the clock. In critical positions, when the best move
+ * of the search changes, the soft target is extended up to the hard deadline.
+ * <p>
+ * Usage: {@link #startMove(Board)} when the move is requested, then the search consults the
+ * deadlines, then {@link #endMove()} when the move is found.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author H.A.
+ */
+public class TimeControl implements Setting {
+
+    /**
+     * Time in ms kept back from the clock for the transmission of the move
+     */
+    public static final long SAFETY_MARGIN = 50;
+
+    /**
+     * Least estimated number of own moves to go
+     */
+    private static final int MIN_MOVES_TO_GO = 10;
+
+    /**
+     * Hard deadline as multiple of the soft target with a clock for the whole game
+     */
+    private static final int MAX_EXTENSION = 4;
+
+    /**
+     * Factor the soft target grows with when the best move changes
+     */
+    private static final double INSTABILITY_EXTENSION = 1.5;
+
+    /**
+     * Part of the soft target after which a new iteration is not started, as it would take
+     * longer than the time elapsed so far
+     */
+    private static final double ITERATION_FRACTION = 0.6;
+
+    /**
+     * Time per move in ms, 0 with a clock for the whole game
+     */
+    private final long moveTime;
+
+    /**
+     * Time in ms added to the clock after each move
+     */
+    private final long increment;
+
+    /**
+     * Time in ms left on the clock for the rest of the game
+     */
+    private long remaining;
+
+    /**
+     * Number of moves made with this clock
+     */
+    private int moves;
+
+    /**
+     * Start of the current move in ns of System.nanoTime()
+     */
+    private long start;
+
+    /**
+     * Soft target and hard deadline of the current move in ms after its start
+     */
+    private long softTime;
+    private long hardTime;
+
+    // ==== Constructor ====================================================================================
+    /**
+     * Creates a time control with a fixed time per move.
+     *
+     * @param newmovetime time per move in ms, greater than zero
+     * @throws IllegalArgumentException if the time is not greater than zero
+     */
+    public TimeControl(long newmovetime) throws IllegalArgumentException {
+        if (newmovetime <= 0) {
+            throw new IllegalArgumentException("The time per move must be greater than zero");
+        }
+        moveTime = newmovetime;
+        increment = 0;
+        softTime = Math.max(1, moveTime / 2);
+        hardTime = moveTime;
+    }
+
+    /**
+     * Creates a time control with a clock for the whole game.
+     *
+     * @param gametime     time in ms for all moves of the game, greater than zero
+     * @param newincrement time in ms added to the clock after each move, at least zero
+     * @throws IllegalArgumentException if the game time is not greater than zero or the
+     *                                  increment is negative
+     */
+    public TimeControl(long gametime, long newincrement) throws IllegalArgumentException {
+        if (gametime <= 0 || newincrement < 0) {
+            throw new IllegalArgumentException("The game time must be greater than zero and the increment at least zero");
+        }
+        moveTime = 0;
+        increment = newincrement;
+        remaining = gametime;
+        softTime = 1;
+        hardTime = 1;
+    }
+
+    // ==== Getter ====================================================================================
+
+    /**
+     * @return the time per move in ms, 0 with a clock for the whole game
+     */
+    public long getMoveTime() {
+        return moveTime;
+    }
+
+    /**
+     * @return the time left on the clock in ms, 0 with a time per move
+     */
+    public long getRemaining() {
+        return remaining;
+    }
+
+    /**
+     * @return the number of moves made with this clock
+     */
+    public int getMoves() {
+        return moves;
+    }
+
+    /**
+     * @return the soft target of the current move in ms after its start
+     */
+    public long getSoftTime() {
+        return softTime;
+    }
+
+    /**
+     * @return the hard deadline of the current move in ms after its start
+     */
+    public long getHardTime() {
+        return hardTime;
+    }
+
+    /**
+     * @return the time in ms since the start of the current move
+     */
+    public long getElapsed() {
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * @return the time in ms left until the hard deadline, at least 1
+     */
+    public long getHardRemaining() {
+        return Math.max(1, hardTime - getElapsed());
+    }
+
+    /**
+     * @return whether the soft target of the current move has passed
+     */
+    public boolean isSoftTimeUp() {
+        return getElapsed() >= softTime;
+    }
+
+    /**
+     * @return whether the hard deadline of the current move has passed
+     */
+    public boolean isHardTimeUp() {
+        return getElapsed() >= hardTime;
+    }
+
+    /**
+     * @return whether there is time for another iteration of the search
+     */
+    public boolean canStartIteration() {
+        return getElapsed() < softTime * ITERATION_FRACTION;
+    }
+
+    // ==== Instancemethods ====================================================================================
+    /**
+     * Starts the clock of a move and sets its deadlines.
+     *
+     * @param board the position of the move, it tells how long the game may last
+     */
+    public void startMove(Board board) {
+        start = System.nanoTime();
+        if (moveTime > 0) {
+            softTime = Math.max(1, moveTime / 2);
+            hardTime = moveTime;
+            return;
+        }
+
+        // The game lasts longer on bigger boards, and the estimate shrinks with every move made
+        int movesToGo = Math.max(MIN_MOVES_TO_GO, board.getLetters() * board.getNumbers() / 2 - moves);
+        long available = Math.max(1, remaining - SAFETY_MARGIN);
+        softTime = Math.max(1, Math.min(available, available / movesToGo + increment * 3 / 4));
+        hardTime = Math.max(softTime, Math.min(available, Math.min(available / 2 + increment, softTime * MAX_EXTENSION)));
+    }
+
+    /**
+     * Reports that the best move of the search has changed. The position is critical then, so
+     * the soft target grows, but not beyond the hard deadline.
+     */
+    public void bestMoveChanged() {
+        softTime = Math.min(hardTime, (long) (softTime * INSTABILITY_EXTENSION));
+    }
+
+    /**
+     * Stops the clock of the move: its time is taken from the clock and the increment is added.
+     */
+    public void endMove() {
+        moves++;
+        if (moveTime == 0) {
+            remaining = Math.max(0, remaining - getElapsed()) + increment;
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (moveTime > 0) {
+            return moveTime + " ms per move";
+        }
+        return remaining + " ms left after " + moves + " moves, increment " + increment + " ms";
+    }
+}
@@ -0,0 +1,276 @@
+package breakthroughPP.search;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import breakthroughPP.board.Board;
+
+/**
+ * Table of the results of searched positions, indexed by the hash key of the position (see
+ * {@link Board#getHashKey()}). The entries are kept in two flat arrays of longs: the data of an
+ * entry (move, score, depth, bound and age) packed into one long and the hash key XOR the data
+ * in the other. An entry is only accepted when both fit together, so the table can be read and
+ * written by several search threads without locks: an entry which is torn by a concurrent write
+ * looks like a missing entry.
+ * <p>
+ * Two entries form a bucket. A new entry replaces the entry of the same position or else the
+ * entry of the bucket which is least worth keeping: entries of older searches first, then the
+ * ones with the lower depth.
+ * <p>
+ * Georg-August University Goettingen
+ * APP breakthroughPP
+ * SoSe 2016
+ * Gr CodeSalat
+ * @author H.A.
+ */
+public class TranspositionTable {
+
+    /**
+     * Bound types of a score: the score is at most, at least or exactly the rating of the position
+     */
+    public static final int UPPER = 1;
+    public static final int LOWER = 2;
+    public static final int EXACT = 3;
+
+    /**
+     * Returned by {@link #probe(long)} if the position is not in the table
+     */
+    public static final long NONE = 0L;
+
+    /**
+     * Layout of the data of an entry: move (20 bits), score (22 bits), depth (7 bits), bound
+     * (2 bits), age (8 bits)
+     */
+    private static final int MOVE_BITS = 20;
+    private static final int SCORE_SHIFT = 20;
+    private static final int SCORE_OFFSET = 1 << 21;
+    private static final int DEPTH_SHIFT = 42;
+    private static final int BOUND_SHIFT = 49;
+    private static final int AGE_SHIFT = 51;
+    private static final int NO_MOVE = (1 << MOVE_BITS) - 1;
+
+    /**
+     * Bytes of one entry
+     */
+    private static final int ENTRY_SIZE = 16;
+
+    /**
+     * Hash keys XOR data of the entries
+     */
+    private final long[] keys;
+
+    /**
+     * Packed data of the entries, 0 if the entry is empty
+     */
+    private final long[] data;
+
+    /**
+     * Selects the bucket of a hash key
+     */
+    private final int bucketMask;
+
+    /**
+     * Age of the current search, see {@link #newSearch()}
+     */
+    private volatile int age;
+
+    /**
+     * Counters of found and missing positions and of replaced entries of other positions
+     */
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder overwrites = new LongAdder();
+
+    // ==== Constructor ====================================================================================
+    /**
+     * Creates an empty table. The number of entries is the largest power of two which fits into
+     * the size.
+     *
+     * @param megabytes size of the table in MB, at least 1
+     * @throws IllegalArgumentException if the size is less than 1 MB or too large for an array
+     */
+    public TranspositionTable(int megabytes) throws IllegalArgumentException {
+        if (megabytes < 1 || megabytes > 16384) {
+            throw new IllegalArgumentException("Size of the transposition table out of range: " + megabytes);
+        }
+        long entries = Long.highestOneBit(((long) megabytes << 20) / ENTRY_SIZE);
+        keys = new long[(int) entries];
+        data = new long[(int) entries];
+        bucketMask = (int) (entries / 2) - 1;
+    }
+
+    // ==== Getter ====================================================================================
+
+    /**
+     * @return the number of entries of the table
+     */
+    public int getSize() {
+        return data.length;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getOverwrites() {
+        return overwrites.sum();
+    }
+
+    /**
+     * @param entry the data of an entry returned by {@link #probe(long)}
+     * @return the packed best move of the entry or {@link Board#NO_MOVE}
+     */
+    public static int getMove(long entry) {
+        int move = (int) entry & NO_MOVE;
+        return move == NO_MOVE ? Board.NO_MOVE : move;
+    }
+
+    /**
+     * @param entry the data of an entry returned by {@link #probe(long)}
+     * @return the score of the entry
+     */
+    public static int getScore(long entry) {
+        return (int) (entry >>> SCORE_SHIFT & ((1 << 22) - 1)) - SCORE_OFFSET;
+    }
+
+    /**
+     * @param entry the data of an entry returned by {@link #probe(long)}
+     * @return the depth the score was searched with
+     */
+    public static int getDepth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & 0x7F;
+    }
+
+    /**
+     * @param entry the data of an entry returned by {@link #probe(long)}
+     * @return the bound type of the score, UPPER, LOWER or EXACT
+     */
+    public static int getBound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & 0x3;
+    }
+
+    // ==== Instancemethods ====================================================================================
+    /**
+     * Looks up a position.
+     *
+     * @param key the hash key of the position
+     * @return the data of the entry, which can be read with the static getters, or
+     * {@link #NONE} if the position is not in the table
+     */
+    public long probe(long key) {
+        int index = ((int) key & bucketMask) << 1;
+        for (int i = index; i < index + 2; i++) {
+            long entry = data[i];
+            if (entry != NONE && (keys[i] ^ entry) == key) {
+                hits.increment();
+                return entry;
+            }
+        }
+        misses.increment();
+        return NONE;
+    }
+
+    /**
+     * Stores the result of a search of a position.
+     *
+     * @param key   the hash key of the position
+     * @param move  the best move, packed, or {@link Board#NO_MOVE}
+     * @param score the score of the position, between -{@link Evaluator#WIN} and
+     *              {@link Evaluator#WIN}
+     * @param depth the depth the position was searched with, 0 to 127
+     * @param bound the bound type of the score, UPPER, LOWER or EXACT
+     */
+    public void store(long key, int move, int score, int depth, int bound) {
+        int currentAge = age;
+        long entry = (move == Board.NO_MOVE ? NO_MOVE : move & NO_MOVE)
+                | (long) (score + SCORE_OFFSET) << SCORE_SHIFT
+                | (long) depth << DEPTH_SHIFT
+                | (long) bound << BOUND_SHIFT
+                | (long) currentAge << AGE_SHIFT;
+
+        int index = ((int) key & bucketMask) << 1;
+        int victim = index;
+        int victimWorth = Integer.MAX_VALUE;
+        for (int i = index; i < index + 2; i++) {
+            long old = data[i];
+            if (old == NONE) {
+                victim = i;
+                victimWorth = -1;
+                break;
+            }
+            if ((keys[i] ^ old) == key) {
+                // Keep the move of a deeper search if this search found none
+                if (move == Board.NO_MOVE) {
+                    entry = entry & ~(long) NO_MOVE | old & NO_MOVE;
+                }
+                data[i] = entry;
+                keys[i] = key ^ entry;
+                return;
+            }
+            int worth = worth(old, currentAge);
+            if (worth < victimWorth) {
+                victim = i;
+                victimWorth = worth;
+            }
+        }
+        if (victimWorth >= 0) {
+            overwrites.increment();
+        }
+        data[victim] = entry;
+        keys[victim] = key ^ entry;
+    }
+
+    /**
+     * Rates how much an entry is worth keeping.
+     *
+     * @param entry      the data of the entry
+     * @param currentAge the age of the current search
+     * @return the depth of the entry, entries of the current search get a bonus
+     */
+    private static int worth(long entry, int currentAge) {
+        int entryAge = (int) (entry >>> AGE_SHIFT) & 0xFF;
+        return getDepth(entry) + (entryAge == currentAge ? 256 : 0);
+    }
+
+    /**
+     * Marks the start of a new search, the entries of older searches are replaced first
+     * afterwards.
+     */
+    public void newSearch() {
+        age = (age + 1) & 0xFF;
+    }
+
+    /**
+     * Removes all entries and resets the counters.
+     */
+    public void clear() {
+        for (int i = 0; i < data.length; i++) {
+            data[i] = NONE;
+            keys[i] = 0L;
+        }
+        resetStatistics();
+    }
+
+    /**
+     * Resets the counters of hits, misses and overwrites.
+     */
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        overwrites.reset();
+    }
+
+    /**
+     * @return the counters and the size as text for tuning
+     */
+    @Override
+    public String toString() {
+        long probes = getHits() + getMisses();
+        return "TranspositionTable: " + getSize() + " entries, " + getHits() + " hits, " + getMisses()
+                + " misses (" + (probes == 0 ? 0 : 100 * getHits() / probes) + "% hits), "
+                + getOverwrites() + " overwrites";
+    }
+}